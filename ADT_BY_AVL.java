@@ -0,0 +1,2692 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+import java.util.stream.*;
+
+/* ================================================================
+   This is BST with balancing "height" (= AVL)
+
+   Each node has a height to determine if the BST is balanced
+   ================================================================ */
+
+class ADT_BY_AVL
+{
+	public Node root;	// References the root node of the BST
+
+	public RebalanceListener listener;	// null ==> quiet mode (no I/O)
+
+	public final boolean prefixKeys;	// Compare key prefixes before Strings
+
+	public int lastCmp;	// k.compareTo(key) of the node findNode(k) returned
+	public int lastConfig;	// Configuration (#1 - #4) of the last tri_node_restructure
+
+	boolean orderStats;	// Keep SizedNode.size up to date (see setOrderStats)
+	AvlMonoid monoid;	// Keep AggNode.agg up to date (see setMonoid), null = off
+
+	int kind;		// Class of the nodes: PLAIN .. PREFIX (see newNode)
+
+	boolean bounded;	// LRU mode: evict when full (see setCapacity)
+	int maxEntries;		// 0 = no limit
+	long maxBytes;		// 0 = no limit
+	LruNode newest;		// Ends of the access-order list (LRU mode)
+	LruNode oldest;
+
+	public int entries;	// Number of (k,v) pairs (LRU mode)
+	public long bytes;	// Estimated memory of the pairs (LRU mode, see entryBytes)
+
+	public long hits;	// get() found the key (LRU mode)
+	public long misses;	// get() did not find the key (LRU mode)
+	public long evictions;	// Pairs removed to make room (LRU mode)
+
+	Node[] hotNodes;	// Hot key cache (see setHotCache), null = off
+	int[] hotHash;		// hashCode() of the key in hotNodes[i]
+	int hotMask;
+
+	public long hotHits;	// Lookups answered by the hot key cache
+	public long hotMisses;	// Lookups that had to walk down the BST
+
+	AvlMetrics metrics;	// Operation counters (see enableMetrics), null = off
+
+	public ForkJoinPool pool;	// Set operations run here (null = common pool)
+
+	public ADT_BY_AVL()
+	{
+		this( false );
+	}
+
+	public ADT_BY_AVL(boolean usePrefix)
+	{
+		root = null;
+		prefixKeys = usePrefix;
+		kind = wantedKind();
+	}
+
+	/* ================================================================
+		newNode(k, v): a node of the smallest class that has the
+		fields of every extra that is on (see Node)
+
+		Switching an extra on or off may need another class: then
+		retype() replaces all nodes of the BST, O(n). Nodes held
+		outside (cursors, select() results) are stale after that.
+	================================================================ */
+	static final int PLAIN = 0;
+	static final int SIZED = 1;
+	static final int AGG = 2;
+	static final int LRU = 3;
+	static final int PREFIX = 4;
+
+	int wantedKind()
+	{
+		if ( prefixKeys )
+			return PREFIX;
+		if ( bounded )
+			return LRU;
+		if ( monoid != null )
+			return AGG;
+		if ( orderStats )
+			return SIZED;
+
+		return PLAIN;
+	}
+
+	Node newNode(String k, Integer v)
+	{
+		switch ( kind )
+		{
+			case SIZED:	return new SizedNode( k, v );
+			case AGG:	return new AggNode( k, v );
+			case LRU:	return new LruNode( k, v );
+			case PREFIX:	return new PrefixNode( k, v );
+			default:	return new Node( k, v );
+		}
+	}
+
+	/* ---------------------------------------
+		retype(): make all nodes of the class
+		the extras need now (if it changed).
+		Sizes and aggregates are copied where
+		both classes have them
+	--------------------------------------- */
+	void retype()
+	{
+		int want = wantedKind();
+
+		if ( want == kind )
+			return;
+
+		kind = want;
+		root = copyNodes( root, null );
+
+		if ( hotNodes != null )
+			Arrays.fill( hotNodes, null );	// All nodes are new
+	}
+
+	Node copyNodes(Node t, Node parent)
+	{
+		if ( t == null )
+			return null;
+
+		Node x = newNode( t.key, t.value );
+
+		x.parent = parent;
+		x.height = t.height;
+
+		if ( t instanceof SizedNode && x instanceof SizedNode )
+			((SizedNode) x).size = ((SizedNode) t).size;
+		if ( t instanceof AggNode && x instanceof AggNode )
+			((AggNode) x).agg = ((AggNode) t).agg;
+
+		x.left = copyNodes( t.left, x );
+		x.right = copyNodes( t.right, x );
+		return x;
+	}
+
+	/* ================================================================
+		keyPrefix(k): the first 4 chars of k packed in a long
+
+		Compared as unsigned longs, 2 prefixes are ordered like
+		the Strings themselves, unless they are equal (then the
+		whole Strings must be compared). Missing chars are 0.
+	================================================================ */
+	public static long keyPrefix(String k)
+	{
+		long p = 0;
+		int n = Math.min( k.length(), 4 );
+
+		for ( int i = 0; i < n; i++ )
+			p |= (long) k.charAt( i ) << (48 - 16 * i);
+
+		return p;
+	}
+
+	/* ================================================================
+		findNode(k): find node with key k 
+
+		Return:  reference to (k,v) IF k is in BST
+			reference to parent(k,v) IF k is NOT in BST (for put)
+			null IF the BST is empty
+
+		Keys are compared only ONCE per level. The result of the
+		last compare is left in lastCmp, so callers do not have
+		to compare k with the returned node again:
+
+			lastCmp == 0 ==> k is in BST
+			lastCmp <  0 ==> k goes left of the returned node
+			lastCmp >  0 ==> k goes right of the returned node
+	================================================================ */
+	public Node findNode(String k)
+	{
+		Node current;   // Help variable
+		Node previous;   // Help variable
+		int cmp;         // Result of the key compare at this level
+		long kp = 0;     // Prefix of k (prefixKeys mode)
+
+		if ( prefixKeys )
+			kp = keyPrefix( k );
+
+		/* --------------------------------------------
+			Find the node with key == "k" in the BST
+		-------------------------------------------- */
+		current = root;  // Always start at the root node
+		previous = root;  // Remember the previous node for insertion
+		cmp = 1;          // Empty BST ==> not found
+
+		while ( current != null )
+		{
+			if ( prefixKeys )
+			{
+				cmp = Long.compareUnsigned( kp, ((PrefixNode) current).prefix );
+
+				if ( cmp == 0 )
+					cmp = k.compareTo( current.key );   // Same prefix
+			}
+			else
+				cmp = k.compareTo( current.key );
+
+			if ( cmp < 0 )
+			{
+				previous = current;       // Remember prev. node
+				current = current.left;  // Continue search in left subtree
+			}
+			else if ( cmp > 0 )
+			{
+				previous = current;       // Remember prev. node
+				current = current.right; // Continue search in right subtree
+			}
+			else 
+			{
+				// Found key in BST 
+				lastCmp = 0;
+				return current;
+			}
+		}
+
+		/* ======================================
+			When we reach here, k is NOT in BST
+		====================================== */
+		lastCmp = cmp;
+		return previous;		// Return the previous (parent) node
+	}
+
+	/* ================================================================
+		get(k): find key k and return assoc. value
+
+		(doGet/doPut/doRemove do the work, get/put/remove add
+		the metrics around it when they are on)
+	================================================================ */
+	public Integer get(String k)
+	{
+		if ( metrics == null )
+			return doGet( k );
+
+		long t0 = metrics.start();
+		Integer v = doGet( k );
+
+		metrics.got( t0 );
+		return v;
+	}
+
+	Integer doGet(String k)
+	{
+		Node p;   // Help variable
+
+		/* --------------------------------------------
+			Find the node with key == "key" in the BST
+		-------------------------------------------- */
+		p = ( hotNodes != null ) ? hotFind(k) : findNode(k);
+
+		if ( lastCmp != 0 )
+		{
+			if ( bounded )
+				misses++;
+			return null;
+		}
+
+		if ( bounded )
+		{
+			hits++;
+			touch( p );			// Most recently used now
+		}
+
+		return p.value;
+	}
+
+	/* ================================================================
+		put(k, v): store the (k,v) pair into the BST
+
+		1. if the key "k" is found in the BST, we replace the val
+		that is associated with the key "k"
+		1. if the key "k" is NOT found in the BST, we insert
+		a new node containing (k, v)
+	================================================================ */
+	public void put(String k, Integer v)
+	{
+		if ( metrics == null )
+		{
+			doPut( k, v );
+			return;
+		}
+
+		long t0 = metrics.start();
+		doPut( k, v );
+		metrics.put( t0 );
+	}
+
+	void doPut(String k, Integer v)
+	{
+		Node p;   // Help variable
+
+		/* ----------------------------------------------------------
+			Just like linked list, insert in an EMPTY BST
+			must be taken care off separately by an if-statement
+		---------------------------------------------------------- */
+		if ( root == null )
+		{  // Insert into an empty BST
+
+			root = newNode( k, v );
+			root.height = 1;
+
+			if ( monoid != null )
+				fixAgg( root );
+
+			if ( bounded )
+				added( root );
+
+			if ( metrics != null )
+				metrics.nodes++;
+			return;
+		}
+
+		/* --------------------------------------------
+			Find the node with key == "key" in the BST
+		-------------------------------------------- */
+		p = ( hotNodes != null ) ? hotFind(k) : findNode(k);
+
+		if ( lastCmp == 0 )
+		{
+			p.value = v;			// Update value
+
+			if ( monoid != null )
+				updateUp( p, 0 );
+
+			if ( bounded )
+				touch( p );
+			return;
+		}
+
+		/* --------------------------------------------
+			Insert a new node (k,v) under p !!!
+		-------------------------------------------- */
+		Node q = newNode( k, v );
+		q.height = 1;
+
+		if ( monoid != null )
+			fixAgg( q );
+
+		if ( bounded )
+			added( q );
+
+		if ( metrics != null )
+			metrics.nodes++;
+
+		q.parent = p;
+
+		if ( lastCmp < 0 )
+			p.left = q;            	// Add q as left child
+		else 
+			p.right = q;           	// Add q as right child
+
+		updateUp( p, 1 );		// 1 more node below p (sizes go up to the root)
+
+		/* --------------------------------------------
+			1 pass up from p: recompute the height and
+			check for height violation at each node.
+
+			Stops as soon as a height does not change
+			(nothing above it changes either), or at
+			the first node out of balance: after the
+			restructure its subtree has its old height
+			again. O(1) nodes on average
+		-------------------------------------------- */
+		Node x, y, z;
+		x = p;
+		y = q;
+		z = null;
+
+		int steps = 0;
+
+		while ( x != null )
+		{
+			int old = x.height;
+
+			steps++;
+			x.height = getMaxHeight( x.left, x.right ) + 1;
+
+			if ( getDiffOfHeight( x.left, x.right ) > 1 )
+			{
+				/* --------------------------------------------
+					Quiet by default: only a listener does I/O
+					(and sees the heights of the unbalanced
+					BST all the way up, like before)
+				-------------------------------------------- */
+				if ( listener != null )
+				{
+					getHeight( x.parent );
+					listener.beforeRestructure( this, RebalanceListener.INSERT );
+				}
+
+				Node b = tri_node_restructure( x, y, z );
+
+				if ( listener != null )
+					getHeight( b.parent );	// Back to the old heights
+
+				if ( metrics != null )
+					metrics.insertRestructures[lastConfig]++;
+
+				restructured( b );
+				break;
+			}
+
+			if ( x.height == old )
+				break;			// Nothing changes above x
+
+			z = y;
+			y = x;
+			x = x.parent;
+		}
+
+		if ( metrics != null )
+		{
+			metrics.inserts++;
+			metrics.insertFixupSteps += steps;
+		}
+
+		if ( bounded )
+			evict();		// Only an insert can overflow
+	}
+
+	/* =======================================================
+		tri_node_restructure(x, y, z):
+
+		x = parent(y)
+		y = parent(z)
+
+		Only the heights of a, b and c are recomputed: the
+		caller fixes the heights above b.
+
+		Return: b (the new root of the subtree)
+	======================================================= */
+	public Node tri_node_restructure( Node x, Node y, Node z)
+	{
+		/* *******************************************************************
+			Determine the parent child relationships between (y,z) and (x,y))
+			******************************************************************* */
+		boolean zIsLeftChild = (z == y.left);
+		boolean yIsLeftChild = (y == x.left);
+
+		/* =======================================================
+		Determine the configuration:
+
+		   find out which nodes are in positions a, b and c
+		   given in the following legend:
+
+				        b
+				      /   \
+				     a     c
+		======================================================= */
+		Node a, b, c;
+		Node T0, T1, T2, T3;
+		int config;       // Which of the 4 configurations was used
+
+		if (zIsLeftChild && yIsLeftChild) 
+		{ /* Configuration 1 */
+			config = 1;
+
+			a = z;                     //          x=c
+			b = y;                     //         /  \
+			c = x;                               //       y=b  T3 
+			T0 = z.left;              //      /  \ 
+			T1 = z.right;            //    z=a  T2
+			T2 = y.right;            //   /  \
+			T3 = x.right;                  //  T0  T1
+		}
+		else if (!zIsLeftChild && yIsLeftChild) 
+		{ /* Configuration 2 */
+			config = 2;
+
+			a = y;                     //       x=c
+			b = z;                     //      /  \
+			c = x;                               //    y=a  T3
+			T0 = y.left;             //   /    \
+			T1 = z.left;                    //  T0   z=b
+			T2 = z.right;          //  /  \ 
+			T3 = x.right;         // T1  T2
+		}
+		else if (zIsLeftChild && !yIsLeftChild) 
+		{ /* Configuration 4 */
+			config = 4;
+
+			a = x;                     //      x=a
+			b = z;                     //     /  \
+			c = y;                              //    T0  y=c
+			T0 = x.left;               //       /  \ 
+			T1 = z.left;               //      z=b  T3
+			T2 = z.right;              //     /  \  
+			T3 = y.right;              //    T1  T2 
+		}
+		else 
+		{ /* Configuration 3 */
+			config = 3;
+
+			a = x;                      //       x=a
+			b = y;                      //      /   \
+			c = z;                                //     T0   y=b
+			T0 = x.left;              //     	 /    \
+			T1 = y.left;                     //         T1     z=c
+			T2 = z.left;             //                  /   \
+			T3 = z.right;                 //               T2     T3
+		}
+	      
+		/* ------------------------------------------------------------------
+			Put b at x's place (make b the root of the new subtree !)
+			------------------------------------------------------------------ */
+		if ( x.parent == null )
+		{  /* If x is the root node (of the BST or of a detached subtree),
+		      handle the replacement  differently.... */
+
+			if ( x == root )
+				root = b;                   // b is now root
+			b.parent = null;
+		}
+		else 
+		{
+			Node xParent;
+
+			xParent = x.parent;   // Find x's parent
+
+			if ( x == xParent.left ) 
+			{ /* Link b to the left branch of x's parent */
+				b.parent = xParent;
+				xParent.left = b;
+			}
+			else 
+			{ /* Link b to the right branch of x's parent */
+				b.parent = xParent;
+				xParent.right = b;
+			}
+		}
+	 
+		     /* ------------------
+			Make:   b
+			       / \
+			      a   c
+			------------------ */
+		b.left = a;
+		a.parent = b;
+		b.right = c;
+		c.parent = b;
+	 
+	 
+		     /* ------------------
+			Make:   b
+			       / \
+			      a   c
+			     / \
+			    T0 T1
+			------------------ */	
+			a.left = T0;
+			if ( T0 != null ) 
+				T0.parent = a;
+			a.right = T1;
+			if ( T1 != null ) 
+				T1.parent = a;
+		 
+		     /* ------------------
+			Make:   b
+			       / \
+			      a   c
+				 / \
+				T2 T3
+			------------------ */
+			c.left = T2;
+			if ( T2 != null ) 
+				T2.parent= c;
+			c.right= T3;
+			if ( T3 != null ) 
+				T3.parent= c;
+	 
+			a.height = getMaxHeight( a.left, a.right ) + 1;
+			c.height = getMaxHeight( c.left, c.right ) + 1;
+			b.height = getMaxHeight( a, c ) + 1;
+
+			if ( orderStats )
+			{
+				fixSize( a );
+				fixSize( c );
+				fixSize( b );
+			}
+
+			if ( monoid != null )
+			{
+				fixAgg( a );
+				fixAgg( c );
+				fixAgg( b );
+			}
+
+		lastConfig = config;
+
+		return b;
+	}
+
+	/* ================================================================
+		restructured(b): tell the listener about the restructure
+		that made b a subtree root (once the heights are fixed)
+	================================================================ */
+	void restructured(Node b)
+	{
+		if ( listener != null )
+			listener.onRestructure( this, lastConfig, b.key, getDepth( b ) );
+	}
+
+	/* =======================================================
+		remove(k): delete node containg key k
+
+		Iterative (no recursion), uses the parent links, and
+		rebalances on the way up (see fixAfterRemove)
+	======================================================= */
+	public void remove(String k)
+	{
+		if ( metrics == null )
+		{
+			doRemove( k );
+			return;
+		}
+
+		long t0 = metrics.start();
+		doRemove( k );
+		metrics.removed( t0 );
+	}
+
+	void doRemove(String k)
+	{
+		/* --------------------------------------------
+			Find the node with key == "key" in the BST
+		-------------------------------------------- */
+		Node p = findNode(k);
+
+		if ( lastCmp != 0 )
+			return;			// Not found ==> nothing to delete....
+
+		removeNode( p );
+	}
+
+	/* =======================================================
+		removeNode(p): delete node p (which is in this BST)
+	======================================================= */
+	void removeNode(Node p)
+	{
+		Node parent;   // parent node
+		Node child;    // the only child of p (or null)
+		Node succ;     // successor node
+
+		if ( bounded )
+			removed( p );
+
+		if ( hotNodes != null )
+			hotRemove( p.key );
+
+		if ( metrics != null )
+		{
+			metrics.nodes--;
+			metrics.deletes++;
+		}
+
+
+		/* ================================================================
+			Tough case: node has 2 children - find successor of p
+
+			succ(p) is as as follows:  1 step right, all the way left
+
+			Note: succ(p) has NOT left child ! So copy succ into p
+			and delete succ instead (Hibbard's Algorithm)
+		================================================================ */
+		if ( p.left != null && p.right != null )
+		{
+			succ = p.right;
+
+			while ( succ.left != null )
+				succ = succ.left;
+
+			p.key = succ.key;		// Replace p with successor
+			p.value = succ.value;
+
+			if ( prefixKeys )
+				((PrefixNode) p).prefix = ((PrefixNode) succ).prefix;
+
+			if ( bounded )
+				replaceLru( (LruNode) succ, (LruNode) p );	// p is succ's pair now: its age too
+
+			if ( hotNodes != null )
+				hotRemove( succ.key );	// The node of succ.key is p now
+
+			p = succ;
+		}
+
+		/* ================================================================
+			Case 0/1: p has at most 1 child
+
+			Link p's child (or null) to p's parent (or make it the root)
+		================================================================ */
+		child = ( p.left != null ) ? p.left : p.right;
+		parent = p.parent;
+
+		if ( child != null )
+			child.parent = parent;
+
+		if ( parent == null )
+			root = child;			// p was the root
+		else if ( parent.left == p )
+			parent.left = child;
+		else
+			parent.right = child;
+
+		p.parent = p.left = p.right = null;
+
+		updateUp( parent, -1 );		// 1 node less below parent
+
+		fixAfterRemove( parent );
+	}
+
+	/* ================================================================
+		fixAfterRemove(x): recompute heights from x up, and
+		restructure every node that is out of balance on the way
+
+		Stops as soon as a subtree keeps its old height: nothing
+		above it changes. O(log n) (at most 1 restructure per level)
+
+		With a listener, the heights above x are recomputed before
+		and after each restructure, like on insert. The stored
+		heights above then no longer tell whether anything
+		changed, so the walk goes on to the root.
+	================================================================ */
+	void fixAfterRemove(Node x)
+	{
+		int steps = 0;
+		boolean upToDate = false;	// Heights above x already recomputed
+
+		while ( x != null )
+		{
+			int old = x.height;
+
+			steps++;
+			x.height = getMaxHeight( x.left, x.right ) + 1;
+
+			if ( getDiffOfHeight( x.left, x.right ) > 1 )
+			{
+				if ( listener != null )
+				{
+					getHeight( x.parent );
+					listener.beforeRestructure( this, RebalanceListener.REMOVE );
+				}
+
+				x = rebalance( x );	// x = new root of the subtree
+
+				if ( listener != null )
+				{
+					getHeight( x.parent );	// The heights after the restructure
+					upToDate = true;
+				}
+
+				if ( metrics != null )
+				{
+					metrics.removeRestructures[lastConfig]++;
+
+					if ( x.height == old )
+						metrics.removeHeightKept++;
+				}
+
+				restructured( x );
+			}
+
+			if ( x.height == old && ! upToDate )
+				break;			// Nothing changes above x
+
+			x = x.parent;
+		}
+
+		if ( metrics != null )
+			metrics.removeFixupSteps += steps;
+	}
+
+
+
+	/* ================================================================
+		floor(k), ceiling(k), lower(k), higher(k):
+
+		   floor(k)   = node with the largest key  <= k
+		   ceiling(k) = node with the smallest key >= k
+		   lower(k)   = node with the largest key  <  k
+		   higher(k)  = node with the smallest key >  k
+
+		Return null if there is no such node. O(log n)
+
+		findNode(k) ends at k, or at the node where k would be
+		inserted, which is either k's floor or its ceiling. The
+		other one is 1 step away in key order (predecessor or
+		successor).
+	================================================================ */
+	public Node floor(String k)
+	{
+		Node p = findNode(k);
+
+		return ( lastCmp < 0 ) ? predecessor( p ) : p;
+	}
+
+	public Node ceiling(String k)
+	{
+		Node p = findNode(k);
+
+		return ( lastCmp > 0 ) ? successor( p ) : p;
+	}
+
+	public Node lower(String k)
+	{
+		Node p = findNode(k);
+
+		return ( lastCmp <= 0 ) ? predecessor( p ) : p;
+	}
+
+	public Node higher(String k)
+	{
+		Node p = findNode(k);
+
+		return ( lastCmp >= 0 ) ? successor( p ) : p;
+	}
+
+	/* ================================================================
+		first(t), last(t): node with the smallest (largest) key
+		in subtree t (null if t is empty)
+	================================================================ */
+	public static Node first(Node t)
+	{
+		if ( t != null )
+			while ( t.left != null )
+				t = t.left;
+
+		return t;
+	}
+
+	public static Node last(Node t)
+	{
+		if ( t != null )
+			while ( t.right != null )
+				t = t.right;
+
+		return t;
+	}
+
+	/* ================================================================
+		successor(x): next node in key order (null if x is last,
+		or x is null)
+
+		   x has a right subtree ==> 1 step right, all the way left
+		   else ==> go up until we come from a left child
+
+		Uses the parent links: no stack, no recursion. Walking
+		over all n nodes this way costs O(n) in total.
+	================================================================ */
+	public static Node successor(Node x)
+	{
+		if ( x == null )
+			return null;
+
+		if ( x.right != null )
+			return first( x.right );
+
+		Node p = x.parent;
+
+		while ( p != null && x == p.right )
+		{
+			x = p;
+			p = p.parent;
+		}
+
+		return p;
+	}
+
+	/* ================================================================
+		predecessor(x): previous node in key order (mirror image
+		of successor)
+	================================================================ */
+	public static Node predecessor(Node x)
+	{
+		if ( x == null )
+			return null;
+
+		if ( x.left != null )
+			return last( x.left );
+
+		Node p = x.parent;
+
+		while ( p != null && x == p.left )
+		{
+			x = p;
+			p = p.parent;
+		}
+
+		return p;
+	}
+
+	/* ================================================================
+		rangeScan(from, to, action): action(k, v) for every pair
+		with from <= k < to, in key order
+
+		from == null ==> from the smallest key
+		to   == null ==> up to (and including) the largest key
+
+		Nothing is copied or allocated: the scan walks the BST
+		with successor(). The BST must not be changed by action.
+	================================================================ */
+	public void rangeScan(String from, String to, BiConsumer<String,Integer> action)
+	{
+		Node x = ( from == null ) ? first( root ) : ceiling( from );
+
+		while ( x != null && ( to == null || x.key.compareTo( to ) < 0 ) )
+		{
+			action.accept( x.key, x.value );
+			x = successor( x );
+		}
+	}
+
+	/* ================================================================
+		setOrderStats(on): keep the size of every subtree in its
+		root node (SizedNode.size), needed by rank, select and
+		countInRange
+
+		put and remove then also update the sizes of the nodes
+		above the changed node (O(log n) more work). Switching it
+		on for a BST that is not empty recomputes all sizes, O(n)
+		(and may replace the nodes, see newNode)
+	================================================================ */
+	public void setOrderStats(boolean on)
+	{
+		boolean was = orderStats;
+
+		orderStats = on;
+		retype();
+
+		if ( on && ! was )
+			computeSizes( root );
+	}
+
+	public boolean hasOrderStats()
+	{
+		return orderStats;
+	}
+
+	static int computeSizes(Node t)
+	{
+		if ( t == null )
+			return 0;
+
+		int n = computeSizes( t.left ) + computeSizes( t.right ) + 1;
+
+		((SizedNode) t).size = n;
+		return n;
+	}
+
+	void checkOrderStats()
+	{
+		if ( ! orderStats )
+			throw new IllegalStateException( "order statistics are off (see setOrderStats)" );
+	}
+
+	/* ================================================================
+		rank(k): number of keys < k (= index of k, if k is in BST)
+
+		Going right at node x skips x and its left subtree.
+		O(log n)
+	================================================================ */
+	public int rank(String k)
+	{
+		checkOrderStats();
+
+		Node x = root;
+		int r = 0;
+
+		while ( x != null )
+		{
+			int cmp = k.compareTo( x.key );
+
+			if ( cmp <= 0 )
+				x = x.left;
+			else
+			{
+				r += subtreeSize( x.left ) + 1;
+				x = x.right;
+			}
+		}
+
+		return r;
+	}
+
+	/* ================================================================
+		select(i): node with the i-th smallest key (i = 0, 1, ...)
+
+		Return null if i < 0 or i >= number of keys. O(log n)
+	================================================================ */
+	public Node select(int i)
+	{
+		checkOrderStats();
+
+		Node x = root;
+
+		if ( i < 0 || i >= subtreeSize( x ) )
+			return null;
+
+		while ( true )
+		{
+			int l = subtreeSize( x.left );
+
+			if ( i < l )
+				x = x.left;
+			else if ( i > l )
+			{
+				i -= l + 1;
+				x = x.right;
+			}
+			else
+				return x;
+		}
+	}
+
+	/* ================================================================
+		countInRange(from, to): number of keys with from <= k < to
+		(null = no limit, as in rangeScan). O(log n)
+	================================================================ */
+	public int countInRange(String from, String to)
+	{
+		checkOrderStats();
+
+		int lo = ( from == null ) ? 0 : rank( from );
+		int hi = ( to == null ) ? subtreeSize( root ) : rank( to );
+
+		return Math.max( hi - lo, 0 );
+	}
+
+	/* ================================================================
+		updateUp(x, d): add d to the size of x and of every node
+		above it, and recompute their aggregates (only what is
+		switched on: orderStats, monoid)
+	================================================================ */
+	void updateUp(Node x, int d)
+	{
+		if ( ! orderStats && monoid == null )
+			return;
+
+		for ( ; x != null; x = x.parent )
+		{
+			if ( orderStats )
+				((SizedNode) x).size += d;
+
+			if ( monoid != null )
+				fixAgg( x );
+		}
+	}
+
+	/* ================================================================
+		setMonoid(m): keep the aggregate (under monoid m) of the
+		values of every subtree in its root node (AggNode.agg),
+		used by aggregate(from, to). null = switch it off
+
+		The aggregates are (re)computed for the whole BST, O(n).
+		After that they are kept up to date on the same paths as
+		the heights, O(log n) per put/remove. Switching it on or
+		off may replace the nodes (see newNode).
+	================================================================ */
+	public void setMonoid(AvlMonoid m)
+	{
+		monoid = m;
+		retype();
+
+		if ( m != null )
+			computeAggs( root );
+	}
+
+	public AvlMonoid getMonoid()
+	{
+		return monoid;
+	}
+
+	void computeAggs(Node t)
+	{
+		if ( t == null )
+			return;
+
+		computeAggs( t.left );
+		computeAggs( t.right );
+		fixAgg( t );
+	}
+
+	/* ================================================================
+		agg(t): aggregate of subtree t (identity if t is empty)
+		aggOf(x): agg(x.left) + x.value + agg(x.right), in key order
+		fixAgg(x): x.agg = aggOf(x)
+	================================================================ */
+	long agg(Node t)
+	{
+		return (t == null) ? monoid.identity() : ((AggNode) t).agg;
+	}
+
+	void fixAgg(Node x)
+	{
+		((AggNode) x).agg = aggOf( x );
+	}
+
+	long aggOf(Node x)
+	{
+		return monoid.combine( monoid.combine( agg( x.left ), monoid.lift( x.value ) ),
+				       agg( x.right ) );
+	}
+
+	/* ================================================================
+		aggregate(from, to): aggregate of the values of all keys
+		with from <= k < to (null = no limit, as in rangeScan)
+
+		Walk down to the first node s inside the range (the
+		"split" node). The keys in the range are then:
+
+		   (part of s.left) s (part of s.right)
+
+		On the left path every node >= from is in the range with
+		its whole right subtree (1 combine with its agg), on the
+		right path every node < to with its whole left subtree.
+		O(log n)
+	================================================================ */
+	public long aggregate(String from, String to)
+	{
+		if ( monoid == null )
+			throw new IllegalStateException( "aggregates are off (see setMonoid)" );
+
+		/* --------------------------------------------
+			Find the split node
+		-------------------------------------------- */
+		Node s = root;
+
+		while ( s != null )
+		{
+			if ( from != null && s.key.compareTo( from ) < 0 )
+				s = s.right;
+			else if ( to != null && s.key.compareTo( to ) >= 0 )
+				s = s.left;
+			else
+				break;
+		}
+
+		if ( s == null )
+			return monoid.identity();	// Empty range
+
+		/* --------------------------------------------
+			Left path: from <= k < s.key
+		-------------------------------------------- */
+		long L = monoid.identity();
+
+		for ( Node x = s.left; x != null; )
+		{
+			if ( from == null || x.key.compareTo( from ) >= 0 )
+			{
+				L = monoid.combine( monoid.combine( monoid.lift( x.value ), agg( x.right ) ), L );
+				x = x.left;
+			}
+			else
+				x = x.right;
+		}
+
+		/* --------------------------------------------
+			Right path: s.key < k < to
+		-------------------------------------------- */
+		long R = monoid.identity();
+
+		for ( Node x = s.right; x != null; )
+		{
+			if ( to == null || x.key.compareTo( to ) < 0 )
+			{
+				R = monoid.combine( R, monoid.combine( agg( x.left ), monoid.lift( x.value ) ) );
+				x = x.right;
+			}
+			else
+				x = x.left;
+		}
+
+		return monoid.combine( monoid.combine( L, monoid.lift( s.value ) ), R );
+	}
+
+	/* ================================================================
+		setCapacity(maxEntries, maxBytes): LRU mode, the BST is
+		used as an ordered cache of at most maxEntries pairs and
+		about maxBytes of memory (0 = no limit). Both 0 = switch
+		LRU mode off
+
+		The pairs are kept in an access-order list threaded
+		through the nodes (LruNode.newer/older). get() and put()
+		move their pair to the newest end; when an insert makes
+		the BST too big, the oldest pairs are deleted with the
+		normal remove (so the BST stays an AVL tree), O(log n)
+		each.
+
+		Switching it on puts the pairs already in the BST in the
+		list in key order (they have no access history), O(n),
+		and evicts at once if there are too many. Switching it on
+		or off may replace the nodes (see newNode).
+
+		Only get() and put() count as an access. floor(), rangeScan()
+		etc. do not change the order. putAll() and bulkLoad() become
+		1 put() per pair.
+	================================================================ */
+	public void setCapacity(int maxEntries, long maxBytes)
+	{
+		if ( maxEntries < 0 || maxBytes < 0 )
+			throw new IllegalArgumentException( "negative capacity: "
+						+ maxEntries + ", " + maxBytes );
+
+		if ( maxEntries == 0 && maxBytes == 0 )
+		{
+			/* --------------------------------------------
+				Off: unlink the list (no garbage kept alive)
+			-------------------------------------------- */
+			if ( bounded )
+				for ( Node x = first( root ); x != null; x = successor( x ) )
+					((LruNode) x).newer = ((LruNode) x).older = null;
+
+			bounded = false;
+			newest = oldest = null;
+			entries = 0;
+			bytes = 0;
+			retype();
+		}
+		else if ( ! bounded )
+		{
+			bounded = true;
+			retype();
+
+			for ( Node x = first( root ); x != null; x = successor( x ) )
+				added( x );
+		}
+
+		this.maxEntries = maxEntries;
+		this.maxBytes = maxBytes;
+
+		if ( bounded )
+			evict();
+	}
+
+	public boolean isBounded()
+	{
+		return bounded;
+	}
+
+	public int getMaxEntries()
+	{
+		return maxEntries;
+	}
+
+	public long getMaxBytes()
+	{
+		return maxBytes;
+	}
+
+	public void resetCounters()
+	{
+		hits = misses = evictions = 0;
+	}
+
+	/* ================================================================
+		entryBytes(k): estimated memory of 1 pair with key k
+
+		Node + Integer + String object headers and fields (64 bit
+		JVM, compressed references), plus 2 bytes per char
+	================================================================ */
+	static final int ENTRY_BYTES = 128;
+
+	public static long entryBytes(String k)
+	{
+		return ENTRY_BYTES + 2L * k.length();
+	}
+
+	/* ================================================================
+		evict(): remove the oldest pairs until the limits hold
+		again (the newest pair always stays)
+	================================================================ */
+	void evict()
+	{
+		while ( entries > 1 && ( ( maxEntries > 0 && entries > maxEntries )
+					|| ( maxBytes > 0 && bytes > maxBytes ) ) )
+		{
+			removeNode( oldest );
+			evictions++;
+		}
+	}
+
+	/* ---------------------------------------
+		added(x): new pair x, newest in the list
+	--------------------------------------- */
+	void added(Node x)
+	{
+		linkNewest( (LruNode) x );
+		entries++;
+		bytes += entryBytes( x.key );
+	}
+
+	/* ---------------------------------------
+		removed(x): pair x leaves the BST
+	--------------------------------------- */
+	void removed(Node x)
+	{
+		unlinkLru( (LruNode) x );
+		entries--;
+		bytes -= entryBytes( x.key );
+	}
+
+	/* ---------------------------------------
+		touch(x): x was used, make it the newest
+	--------------------------------------- */
+	void touch(Node x)
+	{
+		if ( x != newest )
+		{
+			unlinkLru( (LruNode) x );
+			linkNewest( (LruNode) x );
+		}
+	}
+
+	void linkNewest(LruNode x)
+	{
+		x.older = newest;
+		x.newer = null;
+
+		if ( newest != null )
+			newest.newer = x;
+		else
+			oldest = x;
+
+		newest = x;
+	}
+
+	void unlinkLru(LruNode x)
+	{
+		if ( x.newer != null )
+			x.newer.older = x.older;
+		else
+			newest = x.older;
+
+		if ( x.older != null )
+			x.older.newer = x.newer;
+		else
+			oldest = x.newer;
+
+		x.newer = x.older = null;
+	}
+
+	/* ---------------------------------------
+		replaceLru(x, y): y takes x's place in
+		the list (y must not be in the list)
+	--------------------------------------- */
+	void replaceLru(LruNode x, LruNode y)
+	{
+		y.newer = x.newer;
+		y.older = x.older;
+
+		if ( y.newer != null )
+			y.newer.older = y;
+		else
+			newest = y;
+
+		if ( y.older != null )
+			y.older.newer = y;
+		else
+			oldest = y;
+
+		x.newer = x.older = null;
+	}
+
+	/* ================================================================
+		setHotCache(slots): keep a small hash table key -> Node in
+		front of findNode(), for skewed loads where most lookups
+		are for a few thousand keys (0 = switch it off)
+
+		slots is rounded up to a power of 2. Open addressing: a
+		key can be in HOT_PROBES slots from its home slot; a key
+		found in the BST takes a free one of them, or else its
+		home slot. A lookup looks at all HOT_PROBES slots (no
+		tombstones needed when an entry is removed) and compares
+		the cached hashCode() before the key.
+
+		get() and put() use it. Rotations do not change which node
+		holds a key, so only remove needs to invalidate (the key,
+		and the successor key that moves into another node).
+	================================================================ */
+	static final int HOT_PROBES = 4;
+
+	public void setHotCache(int slots)
+	{
+		if ( slots < 0 )
+			throw new IllegalArgumentException( "negative cache size: " + slots );
+
+		if ( slots == 0 )
+		{
+			hotNodes = null;
+			hotHash = null;
+			return;
+		}
+
+		int n = Math.max( Integer.highestOneBit( slots - 1 ) << 1, HOT_PROBES );
+
+		hotNodes = new Node[n];
+		hotHash = new int[n];
+		hotMask = n - 1;
+	}
+
+	public int getHotCache()
+	{
+		return ( hotNodes == null ) ? 0 : hotNodes.length;
+	}
+
+	/* ================================================================
+		hotHitRatio(): fraction of lookups answered by the hot key
+		cache (0 if there were none)
+	================================================================ */
+	public double hotHitRatio()
+	{
+		long n = hotHits + hotMisses;
+
+		return ( n == 0 ) ? 0 : (double) hotHits / n;
+	}
+
+	/* ---------------------------------------
+		hotSlot(h): home slot of hash h (high
+		bits mixed in, like HashMap)
+	--------------------------------------- */
+	int hotSlot(int h)
+	{
+		return (h ^ (h >>> 16)) & hotMask;
+	}
+
+	/* ================================================================
+		hotFind(k): findNode(k) through the hot key cache (same
+		result, and lastCmp set the same way)
+	================================================================ */
+	Node hotFind(String k)
+	{
+		int h = k.hashCode();
+		int s = hotSlot( h );
+
+		for ( int i = 0; i < HOT_PROBES; i++ )
+		{
+			int j = (s + i) & hotMask;
+			Node x = hotNodes[j];
+
+			if ( x != null && hotHash[j] == h && k.equals( x.key ) )
+			{
+				hotHits++;
+				lastCmp = 0;
+				return x;
+			}
+		}
+
+		hotMisses++;
+
+		Node p = findNode(k);
+
+		if ( lastCmp == 0 )
+		{
+			/* --------------------------------------------
+				Cache it: a free slot, else the home slot
+			-------------------------------------------- */
+			int j = s;
+
+			for ( int i = 0; i < HOT_PROBES; i++ )
+				if ( hotNodes[(s + i) & hotMask] == null )
+				{
+					j = (s + i) & hotMask;
+					break;
+				}
+
+			hotNodes[j] = p;
+			hotHash[j] = h;
+		}
+
+		return p;
+	}
+
+	/* ---------------------------------------
+		hotRemove(k): k is not in its node any
+		more, drop it from the cache
+	--------------------------------------- */
+	void hotRemove(String k)
+	{
+		int h = k.hashCode();
+		int s = hotSlot( h );
+
+		for ( int i = 0; i < HOT_PROBES; i++ )
+		{
+			int j = (s + i) & hotMask;
+
+			if ( hotNodes[j] != null && hotHash[j] == h && k.equals( hotNodes[j].key ) )
+			{
+				hotNodes[j] = null;
+				return;
+			}
+		}
+	}
+
+	/* ================================================================
+		enableMetrics(histograms): count operations, restructures
+		and nodes from now on (see AvlMetrics), with latency
+		histograms if asked for. Counting the nodes already in
+		the BST is O(n) (O(1) with orderStats)
+
+		disableMetrics(): stop counting
+	================================================================ */
+	public AvlMetrics enableMetrics(boolean histograms)
+	{
+		metrics = new AvlMetrics( this, histograms );
+		metrics.nodes = orderStats ? subtreeSize( root ) : size( root );
+		return metrics;
+	}
+
+	public void disableMetrics()
+	{
+		metrics = null;
+	}
+
+	public AvlMetrics getMetrics()
+	{
+		return metrics;
+	}
+
+	/* ================================================================
+		spliterator(), stream(), parallelStream(): all (k,v) pairs
+		in key order (see AvlSpliterator)
+
+		The BST must not change while a stream runs.
+	================================================================ */
+	public Spliterator<Map.Entry<String,Integer>> spliterator()
+	{
+		return new AvlSpliterator( this );
+	}
+
+	public Stream<Map.Entry<String,Integer>> stream()
+	{
+		return StreamSupport.stream( spliterator(), false );
+	}
+
+	public Stream<Map.Entry<String,Integer>> parallelStream()
+	{
+		return StreamSupport.stream( spliterator(), true );
+	}
+
+	/* ================================================================
+		freeze(): read-only copy of this BST in flat arrays, for
+		data that is loaded once and then only read (see
+		FrozenAvlMap). O(n)
+	================================================================ */
+	public FrozenAvlMap freeze()
+	{
+		return new FrozenAvlMap( this );
+	}
+
+	/* ================================================================
+		cursor(): a new cursor on this BST (see AvlCursor)
+	================================================================ */
+	public AvlCursor cursor()
+	{
+		return new AvlCursor( this );
+	}
+
+	/* ================================================================
+		bulkLoad(it): put all (k,v) pairs of "it" into the BST
+
+		Instead of 1 put() per pair (O(n log n), with rotations),
+		the pairs are sorted (parallel sort for big inputs), merged
+		with the pairs already in the BST, and the BST is rebuilt
+		perfectly balanced in O(n).
+
+		If a key occurs more than once, the last value wins
+		(like calling put() in order).
+
+		(getAll/putAll/bulkLoad count in the metrics as 1 batch,
+		and every pair as 1 get / put)
+	================================================================ */
+	public void bulkLoad(Iterator<Map.Entry<String,Integer>> it)
+	{
+		if ( metrics == null )
+		{
+			doBulkLoad( it );
+			return;
+		}
+
+		long t0 = metrics.start();
+		long n = doBulkLoad( it );
+
+		metrics.putAll( n, t0 );
+	}
+
+	/* ---------------------------------------
+		doBulkLoad(it): return the number of
+		pairs read from it
+	--------------------------------------- */
+	long doBulkLoad(Iterator<Map.Entry<String,Integer>> it)
+	{
+		if ( bounded )
+		{
+			/* ---------------------------------------------
+				LRU mode: the access order must be kept
+			--------------------------------------------- */
+			long n = 0;
+
+			while ( it.hasNext() )
+			{
+				Map.Entry<String,Integer> e = it.next();
+
+				doPut( e.getKey(), e.getValue() );
+				n++;
+			}
+			return n;
+		}
+
+		ArrayList<Map.Entry<String,Integer>> in = new ArrayList<Map.Entry<String,Integer>>();
+		boolean sorted = true;
+
+		while ( it.hasNext() )
+		{
+			Map.Entry<String,Integer> e = it.next();
+
+			if ( sorted && ! in.isEmpty()
+					&& in.get( in.size() - 1 ).getKey().compareTo( e.getKey() ) >= 0 )
+				sorted = false;
+
+			in.add( e );
+		}
+
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		Map.Entry<String,Integer>[] a = in.toArray( new Map.Entry[in.size()] );
+
+		if ( ! sorted )
+		{
+			/* ---------------------------------------------
+				Stable sort, so the last of equal keys
+				is still the last one
+			--------------------------------------------- */
+			Comparator<Map.Entry<String,Integer>> byKey = Map.Entry.comparingByKey();
+
+			if ( a.length >= PARALLEL_SORT_MIN )
+				Arrays.parallelSort( a, byKey );
+			else
+				Arrays.sort( a, byKey );
+		}
+
+		/* ---------------------------------------------
+			Merge the old pairs (in order) and the new
+			ones into keys[]/vals[], dropping duplicates
+		--------------------------------------------- */
+		Node[] old = new Node[orderStats ? subtreeSize( root ) : size( root )];
+		inOrder( root, old, 0 );
+
+		String[] keys = new String[old.length + a.length];
+		Integer[] vals = new Integer[old.length + a.length];
+		int n = 0, i = 0, j = 0;
+
+		while ( i < old.length || j < a.length )
+		{
+			int cmp;
+
+			if ( j == a.length )
+				cmp = -1;
+			else if ( i == old.length )
+				cmp = 1;
+			else
+				cmp = old[i].key.compareTo( a[j].getKey() );
+
+			if ( cmp < 0 )
+			{
+				keys[n] = old[i].key;
+				vals[n++] = old[i++].value;
+			}
+			else
+			{
+				if ( cmp == 0 )
+					i++;		// New value replaces old value
+
+				while ( j + 1 < a.length && a[j].getKey().equals( a[j+1].getKey() ) )
+					j++;		// Only the last of equal keys counts
+
+				keys[n] = a[j].getKey();
+				vals[n++] = a[j++].getValue();
+			}
+		}
+
+		root = build( keys, vals, 0, n - 1, null );
+
+		if ( hotNodes != null )
+			Arrays.fill( hotNodes, null );	// All nodes are new
+
+		if ( metrics != null )
+			metrics.nodes = n;
+
+		return a.length;
+	}
+
+	static final int PARALLEL_SORT_MIN = 1 << 13;	// Smaller: plain sort
+
+	/* ================================================================
+		fromSorted(keys, vals, n): new BST with the n (k,v) pairs,
+		keys[] must be strictly increasing. O(n)
+
+		(The new BST has no metrics yet: enableMetrics() counts
+		its nodes, there are no operations to count before that)
+	================================================================ */
+	public static ADT_BY_AVL fromSorted(String[] keys, Integer[] vals, int n)
+	{
+		for ( int i = 1; i < n; i++ )
+			if ( keys[i-1].compareTo( keys[i] ) >= 0 )
+				throw new IllegalArgumentException( "keys not sorted at " + i
+						+ ": " + keys[i-1] + " >= " + keys[i] );
+
+		ADT_BY_AVL t = new ADT_BY_AVL();
+
+		t.root = t.build( keys, vals, 0, n - 1, null );
+		return t;
+	}
+
+	/* ================================================================
+		build(keys, vals, lo, hi, parent): perfectly balanced BST
+		of keys[lo..hi], with parent links and heights set
+	================================================================ */
+	Node build(String[] keys, Integer[] vals, int lo, int hi, Node parent)
+	{
+		if ( lo > hi )
+			return null;
+
+		int mid = (lo + hi) >>> 1;		// Middle key becomes the root
+		Node x = newNode( keys[mid], vals[mid] );
+
+		x.parent = parent;
+		x.left = build( keys, vals, lo, mid - 1, x );
+		x.right = build( keys, vals, mid + 1, hi, x );
+		x.height = getMaxHeight( x.left, x.right ) + 1;
+
+		if ( orderStats )
+			((SizedNode) x).size = hi - lo + 1;
+		if ( monoid != null )
+			fixAgg( x );
+
+		return x;
+	}
+
+	/* ================================================================
+		size(t): number of nodes in (sub)tree t
+	================================================================ */
+	public static int size(Node t)
+	{
+		if ( t == null )
+			return 0;
+
+		return size( t.left ) + 1 + size( t.right );
+	}
+
+	/* ================================================================
+		inOrder(t, a, i): store the nodes of t in a[i], a[i+1], ...
+		in key order, return the next free index
+	================================================================ */
+	static int inOrder(Node t, Node[] a, int i)
+	{
+		if ( t == null )
+			return i;
+
+		i = inOrder( t.left, a, i );
+		a[i++] = t;
+		return inOrder( t.right, a, i );
+	}
+
+	/* ================================================================
+		getAll(keys): get() of every key, in 1 walk over the BST
+
+		The keys are visited in sorted order. Each search starts
+		where the previous key was found (see fingerSearch),
+		instead of at the root.
+
+		Return:  vals[i] = get( keys[i] )
+	================================================================ */
+	public Integer[] getAll(String[] keys)
+	{
+		if ( metrics == null )
+			return doGetAll( keys );
+
+		long t0 = metrics.start();
+		Integer[] vals = doGetAll( keys );
+
+		metrics.gotAll( keys.length, t0 );
+		return vals;
+	}
+
+	Integer[] doGetAll(String[] keys)
+	{
+		Integer[] vals = new Integer[keys.length];
+
+		if ( root == null )
+		{
+			if ( bounded )
+				misses += keys.length;
+			return vals;
+		}
+
+		Integer[] order = sortedOrder( keys, keys.length );
+		Node p = root;
+
+		for ( int i = 0; i < keys.length; i++ )
+		{
+			int j = (order == null) ? i : order[i];
+
+			p = fingerSearch( keys[j], p );
+
+			if ( lastCmp == 0 )
+				vals[j] = p.value;
+
+			if ( bounded )
+			{
+				if ( lastCmp == 0 )
+				{
+					hits++;
+					touch( p );
+				}
+				else
+					misses++;
+			}
+		}
+
+		return vals;
+	}
+
+	/* ================================================================
+		putAll(keys, vals, n): put() of the n pairs (keys[i],vals[i])
+
+		1. the pairs are sorted (if a key occurs more than once,
+		   the last value wins, like calling put() in order)
+		2. 1 walk over the BST (as in getAll) finds each key or
+		   the empty spot (gap) where it must go. Nothing is
+		   rebalanced yet: the new keys of each gap become one
+		   balanced subtree hanging in that gap, and the nodes
+		   above it are marked dirty (height = 0)
+		3. 1 bottom-up pass over the dirty nodes rebalances
+		   the BST with join()
+	================================================================ */
+	public void putAll(String[] keys, Integer[] vals, int n)
+	{
+		if ( metrics == null )
+		{
+			doPutAll( keys, vals, n );
+			return;
+		}
+
+		long t0 = metrics.start();
+		doPutAll( keys, vals, n );
+		metrics.putAll( n, t0 );
+	}
+
+	void doPutAll(String[] keys, Integer[] vals, int n)
+	{
+		if ( bounded )
+		{
+			for ( int i = 0; i < n; i++ )	// LRU mode (see bulkLoad)
+				doPut( keys[i], vals[i] );
+			return;
+		}
+
+		Integer[] order = sortedOrder( keys, n );
+
+		/* --------------------------------------------
+			Sorted pairs, only the last of equal keys
+		-------------------------------------------- */
+		String[] sk = new String[n];
+		Integer[] sv = new Integer[n];
+		int m = 0;
+
+		for ( int i = 0; i < n; i++ )
+		{
+			int j = (order == null) ? i : order[i];
+
+			if ( m > 0 && sk[m-1].equals( keys[j] ) )
+				m--;		// Later value replaces earlier value
+
+			sk[m] = keys[j];
+			sv[m++] = vals[j];
+		}
+
+		if ( root == null )
+		{
+			root = build( sk, sv, 0, m - 1, null );
+
+			if ( metrics != null )
+				metrics.nodes = m;
+			return;
+		}
+
+		/* --------------------------------------------
+			Walk: update the keys that are in the BST,
+			remember the gap of the others
+		-------------------------------------------- */
+		Node p = root;
+
+		String[] gk = new String[m];	// New pairs ...
+		Integer[] gv = new Integer[m];
+		Node[] gap = new Node[m];	// ... the node they go under
+		boolean[] gapLeft = new boolean[m];
+		int g = 0;
+
+		for ( int i = 0; i < m; i++ )
+		{
+			p = fingerSearch( sk[i], p );
+
+			if ( lastCmp == 0 )
+			{
+				p.value = sv[i];		// Update value
+
+				if ( monoid != null )
+					markDirty( p );		// Aggregates above p change
+			}
+			else
+			{
+				gk[g] = sk[i];
+				gv[g] = sv[i];
+				gap[g] = p;
+				gapLeft[g++] = ( lastCmp < 0 );
+			}
+		}
+
+		/* --------------------------------------------
+			Hang each run of new keys (same gap) in the
+			BST as a balanced subtree
+		-------------------------------------------- */
+		for ( int s = 0, e; s < g; s = e )
+		{
+			e = s + 1;
+
+			while ( e < g && gap[e] == gap[s] && gapLeft[e] == gapLeft[s] )
+				e++;
+
+			Node q = gap[s];
+			Node sub = build( gk, gv, s, e - 1, q );
+
+			if ( gapLeft[s] )
+				q.left = sub;
+			else
+				q.right = sub;
+
+			markDirty( q );
+		}
+
+		root = fixBatch( root );
+
+		if ( metrics != null )
+			metrics.nodes += g;
+	}
+
+	/* ================================================================
+		sortedOrder(keys, n): indices 0..n-1 sorted by key (stable),
+		or null if keys[0..n-1] is already sorted
+	================================================================ */
+	static Integer[] sortedOrder(final String[] keys, int n)
+	{
+		int i = 1;
+
+		while ( i < n && keys[i-1].compareTo( keys[i] ) <= 0 )
+			i++;
+
+		if ( i >= n )
+			return null;		// Already sorted
+
+		Integer[] order = new Integer[n];
+
+		for ( i = 0; i < n; i++ )
+			order[i] = i;
+
+		Arrays.sort( order, new Comparator<Integer>()
+		{
+			public int compare(Integer a, Integer b)
+			{
+				return keys[a].compareTo( keys[b] );
+			}
+		} );
+
+		return order;
+	}
+
+	/* ================================================================
+		fingerSearch(k, x): findNode(k), starting at node x, where
+		the previous key (<= k) was found
+
+		Climb up from x until k falls inside x's subtree, then
+		search down from there. A node that is a right child has
+		the same upper limit as its parent, so only the parents
+		of left children are compared with k on the way up.
+		(Nothing is stored on the way: no path array is needed.)
+	================================================================ */
+	Node fingerSearch(String k, Node x)
+	{
+		Node y = x;
+
+		while ( true )
+		{
+			while ( y.parent != null && y == y.parent.right )
+				y = y.parent;		// Same upper limit as its parent
+
+			if ( y.parent == null || k.compareTo( y.parent.key ) < 0 )
+				break;			// k belongs below x
+
+			x = y = y.parent;
+		}
+
+		while ( true )
+		{
+			int cmp = k.compareTo( x.key );
+
+			if ( cmp == 0 )
+			{
+				lastCmp = 0;
+				return x;		// Found key in BST
+			}
+
+			Node next = (cmp < 0) ? x.left : x.right;
+
+			if ( next == null )
+			{
+				lastCmp = cmp;
+				return x;		// k is NOT in BST
+			}
+
+			x = next;
+		}
+	}
+
+	/* ================================================================
+		markDirty(x): mark x and the nodes above it dirty (height 0)
+	================================================================ */
+	static void markDirty(Node x)
+	{
+		for ( ; x != null && x.height != 0; x = x.parent )
+			x.height = 0;
+	}
+
+	/* ================================================================
+		fixBatch(x): rebalance the dirty nodes (height 0) of
+		subtree x, bottom-up. Return the new (detached) root
+	================================================================ */
+	Node fixBatch(Node x)
+	{
+		if ( x == null || x.height != 0 )
+			return x;			// Clean subtree: still AVL
+
+		Node L = fixBatch( x.left );
+		Node R = fixBatch( x.right );
+
+		x.left = null;
+		x.right = null;
+
+		return join( L, x, R );
+	}
+
+	/* ================================================================
+		join(L, k, R): one AVL tree made of L, node k and R
+
+		All keys in L < k.key < all keys in R. L and R are AVL
+		trees of ANY height: k is hung on the right (left) spine
+		of the taller tree at the height of the other tree, and
+		the spine is rebalanced upward. O(|height(L) - height(R)|)
+
+		Return the new root (its parent is null)
+	================================================================ */
+	Node join(Node L, Node k, Node R)
+	{
+		int hL = height( L );
+		int hR = height( R );
+
+		if ( L != null )
+			L.parent = null;
+		if ( R != null )
+			R.parent = null;
+		k.parent = null;
+
+		if ( hL > hR + 1 )
+		{
+			/* -------------------------------------
+				Walk down L's right spine
+			------------------------------------- */
+			Node p = L;
+
+			while ( height( p.right ) > hR + 1 )
+				p = p.right;
+
+			k.left = p.right;
+			k.right = R;
+			setParents( k );
+			p.right = k;
+			k.parent = p;
+
+			rebalanceUp( p );
+		}
+		else if ( hR > hL + 1 )
+		{
+			/* -------------------------------------
+				Walk down R's left spine
+			------------------------------------- */
+			Node p = R;
+
+			while ( height( p.left ) > hL + 1 )
+				p = p.left;
+
+			k.right = p.left;
+			k.left = L;
+			setParents( k );
+			p.left = k;
+			k.parent = p;
+
+			rebalanceUp( p );
+		}
+		else
+		{
+			k.left = L;
+			k.right = R;
+			setParents( k );
+		}
+
+		while ( k.parent != null )		// Find the new root
+			k = k.parent;
+
+		return k;
+	}
+
+	/* ================================================================
+		setParents(x): make x the parent of its children, and
+		recompute x's height, size and aggregate
+	================================================================ */
+	void setParents(Node x)
+	{
+		if ( x.left != null )
+			x.left.parent = x;
+		if ( x.right != null )
+			x.right.parent = x;
+
+		x.height = getMaxHeight( x.left, x.right ) + 1;
+
+		if ( orderStats )
+			fixSize( x );
+		if ( monoid != null )
+			fixAgg( x );
+	}
+
+	/* ================================================================
+		rebalanceUp(x): recompute heights from x up, and restructure
+		every node that is out of balance on the way
+	================================================================ */
+	void rebalanceUp(Node x)
+	{
+		while ( x != null )
+		{
+			Node up = x.parent;
+
+			x.height = getMaxHeight( x.left, x.right ) + 1;
+
+			if ( orderStats )
+				fixSize( x );
+			if ( monoid != null )
+				fixAgg( x );
+
+			if ( getDiffOfHeight( x.left, x.right ) > 1 )
+				restructured( rebalance( x ) );
+
+			x = up;
+		}
+	}
+
+	/* ================================================================
+		rebalance(x): restructure x, whose 2 subtrees differ in
+		height by 2, using the taller child y and grandchild z
+		(on a tie z is on the same side as y: single rotation)
+
+		Return: the new root of the subtree
+	================================================================ */
+	Node rebalance(Node x)
+	{
+		Node y, z;
+
+		y = ( height( x.left ) > height( x.right ) ) ? x.left : x.right;
+
+		int hl = height( y.left );
+		int hr = height( y.right );
+
+		if ( hl > hr )
+			z = y.left;
+		else if ( hl < hr )
+			z = y.right;
+		else
+			z = ( y == x.left ) ? y.left : y.right;
+
+		return tri_node_restructure( x, y, z );
+	}
+
+	/* ================================================================
+		Set operations: split, join, union, intersect, difference
+
+		All are built on join(L, k, R) (see above) and split(t, k)
+		below, and relink the nodes of both trees: nothing is
+		copied, and the other tree is EMPTY afterwards.
+
+		For trees of m <= n keys union/intersect/difference do
+		O(m log(n/m + 1)) work (Blelloch, Ferizovic, Sun: "Just
+		Join for Parallel Ordered Sets"). Each step splits one
+		tree at the root key of the other and recurses on 2
+		independent pairs of subtrees; when both are big the 2
+		run in parallel on a ForkJoinPool (pool, or the common
+		pool). With a listener set everything runs in this thread.
+
+		Both trees must keep the same extras (orderStats, monoid,
+		prefixKeys: so their nodes are of 1 class) and neither can be in LRU mode. With metrics on but
+		orderStats off, recounting the nodes after is O(n).
+	================================================================ */
+	static final int PARALLEL_HEIGHT = 14;	// Lower subtrees: no fork (< ~10K nodes)
+
+	static final int UNION = 0;
+	static final int INTERSECT = 1;
+	static final int DIFFERENCE = 2;
+
+	/* ================================================================
+		split(k): move all keys >= k to a new BST (returned), this
+		BST keeps the keys < k. O(log n)
+	================================================================ */
+	public ADT_BY_AVL split(String k)
+	{
+		ADT_BY_AVL right = new ADT_BY_AVL( prefixKeys );
+
+		right.orderStats = orderStats;
+		right.monoid = monoid;
+		right.kind = kind;
+		checkRelink( right );
+
+		Node t = root;
+		root = null;			// See setOp
+
+		Split s = split( t, k );
+
+		root = detached( s.left );
+		right.root = ( s.mid == null ) ? detached( s.right ) : join( null, s.mid, s.right );
+
+		relinked();
+		right.relinked();
+		return right;
+	}
+
+	/* ================================================================
+		join(k, v, right): append (k,v) and all of "right" to this
+		BST. All keys here < k < all keys in right. O(log n)
+	================================================================ */
+	public void join(String k, Integer v, ADT_BY_AVL right)
+	{
+		checkRelink( right );
+
+		if ( ( root != null && last( root ).key.compareTo( k ) >= 0 )
+			|| ( right.root != null && first( right.root ).key.compareTo( k ) <= 0 ) )
+			throw new IllegalArgumentException( "keys not in order around " + k );
+
+		Node L = root;
+		Node R = right.root;
+
+		root = null;
+		right.root = null;
+
+		root = join( L, newNode( k, v ), R );
+
+		relinked();
+		right.relinked();
+	}
+
+	/* ================================================================
+		union(t):      this = this + t (t's value wins on equal keys)
+		intersect(t):  this = keys in both (this BST's values)
+		difference(t): this = keys not in t
+	================================================================ */
+	public void union(ADT_BY_AVL t)
+	{
+		setOp( UNION, t );
+	}
+
+	public void intersect(ADT_BY_AVL t)
+	{
+		setOp( INTERSECT, t );
+	}
+
+	public void difference(ADT_BY_AVL t)
+	{
+		setOp( DIFFERENCE, t );
+	}
+
+	void setOp(int op, ADT_BY_AVL other)
+	{
+		checkRelink( other );
+
+		Node a = root;
+		Node b = other.root;
+
+		/* --------------------------------------------
+			tri_node_restructure() updates root when
+			it restructures the node root points to:
+			no thread may do that while nodes move
+		-------------------------------------------- */
+		root = null;
+		other.root = null;
+
+		Node r;
+
+		if ( listener != null || Math.max( height( a ), height( b ) ) < PARALLEL_HEIGHT )
+			r = setOp( op, a, b );
+		else
+			r = ( pool != null ? pool : ForkJoinPool.commonPool() ).invoke( new SetOpTask( this, op, a, b ) );
+
+		root = detached( r );
+
+		relinked();
+		other.relinked();
+	}
+
+	/* ---------------------------------------
+		checkRelink(t): can nodes move between
+		this BST and t ?
+	--------------------------------------- */
+	void checkRelink(ADT_BY_AVL t)
+	{
+		if ( t == this )
+			throw new IllegalArgumentException( "a BST cannot be combined with itself" );
+
+		if ( bounded || t.bounded )
+			throw new IllegalStateException( "not possible in LRU mode (see setCapacity)" );
+
+		if ( orderStats != t.orderStats || monoid != t.monoid || kind != t.kind )
+			throw new IllegalArgumentException( "both BSTs must have the same orderStats, monoid and prefixKeys" );
+	}
+
+	/* ---------------------------------------
+		relinked(): the nodes changed trees
+	--------------------------------------- */
+	void relinked()
+	{
+		if ( hotNodes != null )
+			Arrays.fill( hotNodes, null );
+
+		if ( metrics != null )
+			metrics.nodes = orderStats ? subtreeSize( root ) : size( root );
+	}
+
+	static Node detached(Node t)
+	{
+		if ( t != null )
+			t.parent = null;
+
+		return t;
+	}
+
+	/* ================================================================
+		Split: result of split(t, k)
+
+		left  = subtree of the keys < k
+		mid   = the node with key k (null if none), not linked
+		right = subtree of the keys > k
+	================================================================ */
+	static class Split
+	{
+		Node left;
+		Node mid;
+		Node right;
+	}
+
+	/* ================================================================
+		split(t, k): split subtree t at key k. O(height(t))
+
+		Walks down to k; on the way back up every node joins
+		the side it belongs to, with its other subtree
+	================================================================ */
+	Split split(Node t, String k)
+	{
+		if ( t == null )
+			return new Split();
+
+		Node L = t.left;
+		Node R = t.right;
+		int cmp = k.compareTo( t.key );
+
+		if ( cmp == 0 )
+		{
+			Split s = new Split();
+
+			s.left = detached( L );
+			s.mid = t;
+			s.right = detached( R );
+			return s;
+		}
+
+		if ( cmp < 0 )
+		{
+			Split s = split( L, k );
+
+			s.right = join( s.right, t, R );
+			return s;
+		}
+		else
+		{
+			Split s = split( R, k );
+
+			s.left = join( L, t, s.left );
+			return s;
+		}
+	}
+
+	/* ================================================================
+		join2(L, R): join without a middle node: the last node
+		of L becomes the middle
+	================================================================ */
+	Node join2(Node L, Node R)
+	{
+		if ( L == null )
+			return detached( R );
+		if ( R == null )
+			return detached( L );
+
+		Split s = splitLast( L );
+
+		return join( s.left, s.mid, R );
+	}
+
+	Split splitLast(Node t)
+	{
+		if ( t.right == null )
+		{
+			Split s = new Split();
+
+			s.left = detached( t.left );
+			s.mid = t;
+			return s;
+		}
+
+		Split s = splitLast( t.right );
+
+		s.left = join( t.left, t, s.left );
+		return s;
+	}
+
+	/* ================================================================
+		setOp(op, a, b): union / intersection / difference of
+		subtrees a and b
+	================================================================ */
+	Node setOp(int op, Node a, Node b)
+	{
+		switch ( op )
+		{
+			case UNION:
+				return union( a, b );
+			case INTERSECT:
+				return intersect( a, b );
+			default:
+				return difference( a, b );
+		}
+	}
+
+	Node union(Node a, Node b)
+	{
+		if ( a == null )
+			return detached( b );
+		if ( b == null )
+			return detached( a );
+
+		Node L = a.left;
+		Node R = a.right;
+		Split s = split( b, a.key );
+
+		if ( s.mid != null )
+			a.value = s.mid.value;		// b's value wins
+
+		Node[] lr = both( UNION, L, s.left, R, s.right );
+
+		return join( lr[0], a, lr[1] );
+	}
+
+	Node intersect(Node a, Node b)
+	{
+		if ( a == null || b == null )
+			return null;
+
+		Node L = a.left;
+		Node R = a.right;
+		Split s = split( b, a.key );
+
+		Node[] lr = both( INTERSECT, L, s.left, R, s.right );
+
+		if ( s.mid != null )
+			return join( lr[0], a, lr[1] );	// a.key is in both
+		else
+			return join2( lr[0], lr[1] );
+	}
+
+	Node difference(Node a, Node b)
+	{
+		if ( a == null )
+			return null;
+		if ( b == null )
+			return detached( a );
+
+		Node L = b.left;
+		Node R = b.right;
+		Split s = split( a, b.key );		// s.mid (if any) is dropped
+
+		Node[] lr = both( DIFFERENCE, s.left, L, s.right, R );
+
+		return join2( lr[0], lr[1] );
+	}
+
+	/* ---------------------------------------
+		both(op, a1, b1, a2, b2): op(a1, b1) and
+		op(a2, b2), the first one forked when
+		running in a ForkJoinPool and both its
+		trees are big
+	--------------------------------------- */
+	Node[] both(int op, Node a1, Node b1, Node a2, Node b2)
+	{
+		Node[] r = new Node[2];
+
+		if ( ForkJoinTask.inForkJoinPool() && listener == null
+			&& Math.min( height( a1 ), height( b1 ) ) >= PARALLEL_HEIGHT )
+		{
+			SetOpTask t = new SetOpTask( this, op, a1, b1 );
+
+			t.fork();
+			r[1] = setOp( op, a2, b2 );
+			r[0] = t.join();
+		}
+		else
+		{
+			r[0] = setOp( op, a1, b1 );
+			r[1] = setOp( op, a2, b2 );
+		}
+
+		return r;
+	}
+
+	/* ================================================================
+		SetOpTask: setOp(op, a, b) as a ForkJoinPool task
+
+		The subtrees of 2 tasks never share a node. Only
+		lastConfig is written by all of them (last one wins).
+	================================================================ */
+	@SuppressWarnings("serial")
+	static class SetOpTask extends RecursiveTask<Node>
+	{
+		final ADT_BY_AVL tree;
+		final int op;
+		final Node a, b;
+
+		SetOpTask(ADT_BY_AVL tree, int op, Node a, Node b)
+		{
+			this.tree = tree;
+			this.op = op;
+			this.a = a;
+			this.b = b;
+		}
+
+		protected Node compute()
+		{
+			return tree.setOp( op, a, b );
+		}
+	}
+
+	/* =======================================================
+		Show what the BST look like....
+	======================================================= */
+	public void printnode(Node x, int h)
+	{
+		for (int i = 0; i < h; i++)
+			System.out.print("               ");
+
+		System.out.print("[" + x.key + "," + x.value + "](h=" + x.height + ")");
+
+		if ( getDiffOfHeight( x.left, x.right) > 1 )
+			System.out.println("*");
+		else
+			System.out.println();
+	}
+
+	void printBST()
+	{
+		showR( root, 0 );
+		System.out.println("================================");
+	}
+
+	public void showR(Node t, int h)
+	{
+		if (t == null)
+			return;
+
+		showR(t.right, h+1);
+		printnode(t, h);
+		showR(t.left, h+1);
+	}
+
+
+	/* ================================================================
+		subtreeSize(t): number of nodes in (sub)tree t, from the
+		size field (orderStats mode), O(1)
+
+		fixSize(x): x.size from the sizes of its children
+	================================================================ */
+	public static int subtreeSize( Node t )
+	{
+		return (t == null) ? 0 : ((SizedNode) t).size;
+	}
+
+	static void fixSize( Node x )
+	{
+		((SizedNode) x).size = subtreeSize( x.left ) + subtreeSize( x.right ) + 1;
+	}
+
+	/* ================================================================
+		height(t): height of (sub)tree t (0 if t is empty)
+	================================================================ */
+	public static int height( Node t )
+	{
+		return (t == null) ? 0 : t.height;
+	}
+
+	/* ================================================================
+		getMaxHeight(t1,t2): compute max height of 2 (sub)trees
+	================================================================ */
+	public static int getMaxHeight( Node t1, Node t2 )
+	{
+		int h1, h2;
+
+		if ( t1 == null )
+			h1 = 0;
+		else
+			h1 = t1.height;
+
+		if ( t2 == null )
+			h2 = 0;
+		else
+			h2 = t2.height;	
+
+		return (h1 >= h2) ? h1 : h2 ;
+	}
+	
+	/* ================================================================
+		getDiffOfHeight(t1,t2): compute difference in height of 2 (sub)trees
+	================================================================ */
+	public static int getDiffOfHeight( Node t1, Node t2 )
+	{
+		int h1, h2;
+
+		if ( t1 == null )
+			h1 = 0;
+		else
+			h1 = t1.height;
+
+		if ( t2 == null )
+			h2 = 0;
+		else
+			h2 = t2.height;
+
+		return ((h1 >= h2) ? (h1-h2) : (h2-h1)) ;
+	}
+
+	/* ================================================================
+		getDepth(x): number of edges from x up to the root
+	================================================================ */
+	public static int getDepth( Node x )
+	{
+		int d = 0;
+
+		while ( x.parent != null )
+		{
+			d++;
+			x = x.parent;
+		}
+
+		return d;
+	}
+
+	/* ================================================================
+		getHeight(x): recompute height starting at x (and up)
+	================================================================ */
+	public static void getHeight( Node x )
+	{
+		while ( x != null )
+		{
+			x.height = getMaxHeight( x.left, x.right ) + 1;
+			x = x.parent;
+		}
+	}
+}
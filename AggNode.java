@@ -0,0 +1,14 @@
+/* =================================================================
+   AggNode: SizedNode + the aggregate of the values in its subtree
+   (see ADT_BY_AVL.setMonoid)
+   ================================================================= */
+
+class AggNode extends SizedNode
+{
+	public long agg;
+
+	public AggNode(String k, Integer v)
+	{
+		super( k, v );
+	}
+}
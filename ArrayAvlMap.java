@@ -0,0 +1,446 @@
+import java.util.*;
+
+/* ================================================================
+   ArrayAvlMap: ADT_BY_AVL with all nodes in parallel arrays
+
+   A node is just a slot number. Its links and height live in
+   int arrays (struct-of-arrays), its key and value in side arrays:
+
+	left[s], right[s], parent[s], height[s], keys[s], vals[s]
+
+   Slot 0 is NIL (the "null" node, height 0), so no null checks
+   are needed when reading a child's height.
+
+   Slots freed by remove() are kept on a free list (linked through
+   left[]) and reused by put(), so a steady-state workload does not
+   allocate at all.
+
+   get(k) returns "missingValue" when k is not in the map,
+   use containsKey(k) when that value is also a legal value.
+   ================================================================ */
+
+class ArrayAvlMap
+{
+	public static final int NIL = 0;	// The "null" slot
+
+	public int root;			// Slot of the root node (NIL = empty)
+
+	public int missingValue;		// Returned by get(k) if k is not found
+
+	int[] left;
+	int[] right;
+	int[] parent;
+	int[] height;
+	String[] keys;
+	int[] vals;
+
+	int next;		// First never used slot
+	int freeList;		// First free (reusable) slot, linked through left[]
+	int size;		// Number of keys in the map
+
+	public int lastCmp;	// k.compareTo(key) of the slot findNode(k) returned
+
+	public ArrayAvlMap()
+	{
+		this( 16, 0 );
+	}
+
+	public ArrayAvlMap(int capacity, int missing)
+	{
+		capacity = Math.max( capacity, 1 ) + 1;		// + the NIL slot
+
+		left   = new int[capacity];
+		right  = new int[capacity];
+		parent = new int[capacity];
+		height = new int[capacity];
+		keys   = new String[capacity];
+		vals   = new int[capacity];
+
+		root = NIL;
+		next = 1;
+		freeList = NIL;
+		size = 0;
+		missingValue = missing;
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	/* ================================================================
+		newNode(k, v): take a slot from the free list (or grow)
+	================================================================ */
+	int newNode(String k, int v)
+	{
+		int s;
+
+		if ( freeList != NIL )
+		{
+			s = freeList;
+			freeList = left[s];
+		}
+		else
+		{
+			if ( next == keys.length )
+				grow();
+
+			s = next++;
+		}
+
+		left[s] = right[s] = parent[s] = NIL;
+		height[s] = 1;
+		keys[s] = k;
+		vals[s] = v;
+
+		return s;
+	}
+
+	/* ================================================================
+		freeNode(s): put slot s on the free list
+	================================================================ */
+	void freeNode(int s)
+	{
+		keys[s] = null;			// Let the key be collected
+		left[s] = freeList;
+		freeList = s;
+	}
+
+	void grow()
+	{
+		int n = keys.length * 2;
+
+		left   = Arrays.copyOf( left, n );
+		right  = Arrays.copyOf( right, n );
+		parent = Arrays.copyOf( parent, n );
+		height = Arrays.copyOf( height, n );
+		keys   = Arrays.copyOf( keys, n );
+		vals   = Arrays.copyOf( vals, n );
+	}
+
+	/* ================================================================
+		findNode(k): find node with key k
+
+		Return:  slot of (k,v) IF k is in BST
+			slot of parent(k,v) IF k is NOT in BST (for put)
+			NIL IF the BST is empty
+
+		Keys are compared only ONCE per level. The result of the
+		last compare is left in lastCmp (as in ADT_BY_AVL):
+
+			lastCmp == 0 ==> k is in BST
+			lastCmp <  0 ==> k goes left of the returned slot
+			lastCmp >  0 ==> k goes right of the returned slot
+	================================================================ */
+	public int findNode(String k)
+	{
+		int current = root;     // Always start at the root node
+		int previous = root;    // Remember the previous node for insertion
+		int cmp = 1;            // Empty BST ==> not found
+
+		while ( current != NIL )
+		{
+			cmp = k.compareTo( keys[current] );
+
+			if ( cmp < 0 )
+			{
+				previous = current;
+				current = left[current];   // Continue search in left subtree
+			}
+			else if ( cmp > 0 )
+			{
+				previous = current;
+				current = right[current];  // Continue search in right subtree
+			}
+			else
+			{
+				lastCmp = 0;
+				return current;            // Found key in BST
+			}
+		}
+
+		lastCmp = cmp;
+		return previous;		// Return the previous (parent) node
+	}
+
+	/* ================================================================
+		containsKey(k): true IF k is in BST
+	================================================================ */
+	public boolean containsKey(String k)
+	{
+		int p = findNode(k);
+
+		return ( p != NIL && lastCmp == 0 );
+	}
+
+	/* ================================================================
+		get(k): find key k and return assoc. value (or missingValue)
+	================================================================ */
+	public int get(String k)
+	{
+		int p = findNode(k);
+
+		if ( p != NIL && lastCmp == 0 )
+			return vals[p];
+		else
+			return missingValue;
+	}
+
+	/* ================================================================
+		put(k, v): store the (k,v) pair into the BST
+	================================================================ */
+	public void put(String k, int v)
+	{
+		int p;   // Help variable
+
+		if ( root == NIL )
+		{  // Insert into an empty BST
+
+			root = newNode( k, v );
+			size++;
+			return;
+		}
+
+		p = findNode(k);
+
+		int cmp = lastCmp;		// k compared with keys[p]
+
+		if ( cmp == 0 )
+		{
+			vals[p] = v;			// Update value
+			return;
+		}
+
+		/* --------------------------------------------
+			Insert a new node (k,v) under p !!!
+		-------------------------------------------- */
+		int q = newNode( k, v );
+		size++;
+
+		parent[q] = p;
+
+		if ( cmp < 0 )
+			left[p] = q;            	// Add q as left child
+		else
+			right[p] = q;           	// Add q as right child
+
+		/* --------------------------------------------
+			1 pass up from p: recompute the height and
+			check for height violation, stop at the
+			first node out of balance (the restructure
+			gives its subtree its old height back) or
+			where the height does not change (see
+			ADT_BY_AVL.put)
+		-------------------------------------------- */
+		int x = p, y = q, z = NIL;
+
+		while ( x != NIL )
+		{
+			int old = height[x];
+
+			height[x] = Math.max( height[left[x]], height[right[x]] ) + 1;
+
+			if ( getDiffOfHeight( left[x], right[x] ) > 1 )
+			{
+				tri_node_restructure( x, y, z );
+				break;
+			}
+
+			if ( height[x] == old )
+				break;			// Nothing changes above x
+
+			z = y;
+			y = x;
+			x = parent[x];
+		}
+	}
+
+	/* =======================================================
+		tri_node_restructure(x, y, z):
+
+		x = parent(y)
+		y = parent(z)
+
+		(See ADT_BY_AVL.tri_node_restructure for the pictures)
+
+		Return: b (the new root of the subtree), only the heights
+		of a, b and c are recomputed
+	======================================================= */
+	public int tri_node_restructure( int x, int y, int z )
+	{
+		boolean zIsLeftChild = (z == left[y]);
+		boolean yIsLeftChild = (y == left[x]);
+
+		int a, b, c;
+		int T0, T1, T2, T3;
+
+		if (zIsLeftChild && yIsLeftChild)
+		{ /* Configuration 1 */
+			a = z;  b = y;  c = x;
+			T0 = left[z];  T1 = right[z];  T2 = right[y];  T3 = right[x];
+		}
+		else if (!zIsLeftChild && yIsLeftChild)
+		{ /* Configuration 2 */
+			a = y;  b = z;  c = x;
+			T0 = left[y];  T1 = left[z];  T2 = right[z];  T3 = right[x];
+		}
+		else if (zIsLeftChild && !yIsLeftChild)
+		{ /* Configuration 4 */
+			a = x;  b = z;  c = y;
+			T0 = left[x];  T1 = left[z];  T2 = right[z];  T3 = right[y];
+		}
+		else
+		{ /* Configuration 3 */
+			a = x;  b = y;  c = z;
+			T0 = left[x];  T1 = left[y];  T2 = left[z];  T3 = right[z];
+		}
+
+		/* ------------------------------------------------------------------
+			Put b at x's place (make b the root of the new subtree !)
+		------------------------------------------------------------------ */
+		int xParent = parent[x];
+
+		parent[b] = xParent;
+
+		if ( x == root )
+			root = b;
+		else if ( x == left[xParent] )
+			left[xParent] = b;
+		else
+			right[xParent] = b;
+
+		left[b] = a;
+		parent[a] = b;
+		right[b] = c;
+		parent[c] = b;
+
+		left[a] = T0;
+		if ( T0 != NIL )
+			parent[T0] = a;
+		right[a] = T1;
+		if ( T1 != NIL )
+			parent[T1] = a;
+
+		left[c] = T2;
+		if ( T2 != NIL )
+			parent[T2] = c;
+		right[c] = T3;
+		if ( T3 != NIL )
+			parent[T3] = c;
+
+		height[a] = Math.max( height[left[a]], height[right[a]] ) + 1;
+		height[c] = Math.max( height[left[c]], height[right[c]] ) + 1;
+		height[b] = Math.max( height[a], height[c] ) + 1;
+
+		return b;
+	}
+
+	/* =======================================================
+		remove(k): delete node containg key k
+	======================================================= */
+	public void remove(String k)
+	{
+		int p, child, succ;
+
+		p = findNode(k);
+
+		if ( p == NIL || lastCmp != 0 )
+			return;			// Not found ==> nothing to delete....
+
+		/* ================================================================
+			Tough case: node has 2 children - copy successor into p
+			and delete the successor (which has NO left child) instead
+		================================================================ */
+		if ( left[p] != NIL && right[p] != NIL )
+		{
+			succ = right[p];
+
+			while ( left[succ] != NIL )
+				succ = left[succ];
+
+			keys[p] = keys[succ];		// Replace p with successor
+			vals[p] = vals[succ];
+
+			p = succ;
+		}
+
+		/* ================================================================
+			p has at most 1 child: link that child to p's parent
+		================================================================ */
+		child = (left[p] != NIL) ? left[p] : right[p];
+		int pp = parent[p];
+
+		if ( child != NIL )
+			parent[child] = pp;
+
+		if ( pp == NIL )
+			root = child;
+		else if ( left[pp] == p )
+			left[pp] = child;
+		else
+			right[pp] = child;
+
+		freeNode(p);
+		size--;
+
+		fixAfterRemove( pp );
+	}
+
+	/* ================================================================
+		fixAfterRemove(x): recompute heights from x up, restructure
+		every node that is out of balance, stop as soon as a subtree
+		keeps its old height (see ADT_BY_AVL.fixAfterRemove)
+	================================================================ */
+	void fixAfterRemove( int x )
+	{
+		while ( x != NIL )
+		{
+			int old = height[x];
+
+			height[x] = Math.max( height[left[x]], height[right[x]] ) + 1;
+
+			if ( getDiffOfHeight( left[x], right[x] ) > 1 )
+			{
+				int y = ( height[left[x]] > height[right[x]] ) ? left[x] : right[x];
+				int hl = height[left[y]];
+				int hr = height[right[y]];
+				int z;
+
+				if ( hl != hr )
+					z = ( hl > hr ) ? left[y] : right[y];
+				else
+					z = ( y == left[x] ) ? left[y] : right[y];	// Single rotation
+
+				x = tri_node_restructure( x, y, z );
+			}
+
+			if ( height[x] == old )
+				return;			// Nothing changes above x
+
+			x = parent[x];
+		}
+	}
+
+	/* ================================================================
+		getDiffOfHeight(t1,t2): compute difference in height of 2 (sub)trees
+	================================================================ */
+	public int getDiffOfHeight( int t1, int t2 )
+	{
+		int h1 = height[t1];	// height[NIL] == 0
+		int h2 = height[t2];
+
+		return ((h1 >= h2) ? (h1-h2) : (h2-h1)) ;
+	}
+
+	/* ================================================================
+		getHeight(x): recompute height starting at x (and up)
+	================================================================ */
+	public void getHeight( int x )
+	{
+		while ( x != NIL )
+		{
+			height[x] = Math.max( height[left[x]], height[right[x]] ) + 1;
+			x = parent[x];
+		}
+	}
+}
@@ -0,0 +1,74 @@
+/* ================================================================
+   AvlCursor: walks over a range of an ADT_BY_AVL in key order
+
+	AvlCursor c = tree.cursor();
+
+	c.seek( "b", "m" );		// Keys from "b" up to (not incl.) "m"
+	while ( c.next() )
+		... c.key(), c.value() ...
+
+   The cursor moves with the parent links (successor), so a scan
+   allocates nothing, and 1 cursor can be reused for any number of
+   scans (call seek/first again). The BST must not be changed while
+   a scan is going on.
+   ================================================================ */
+
+class AvlCursor
+{
+	public ADT_BY_AVL tree;
+	public Node node;	// Current node (null before next() / at the end)
+
+	Node nextNode;		// Node the next next() moves to
+	String to;		// End of the range (excl.), null = no end
+
+	public AvlCursor(ADT_BY_AVL t)
+	{
+		tree = t;
+	}
+
+	/* ================================================================
+		seek(from, to): start a scan of the keys from <= k < to
+		(null = no limit on that side)
+	================================================================ */
+	public void seek(String from, String to)
+	{
+		node = null;
+		nextNode = ( from == null ) ? ADT_BY_AVL.first( tree.root ) : tree.ceiling( from );
+		this.to = to;
+	}
+
+	/* ================================================================
+		first(): start a scan of all keys
+	================================================================ */
+	public void first()
+	{
+		seek( null, null );
+	}
+
+	/* ================================================================
+		next(): move to the next key in the range
+
+		Return: false if there are no more keys
+	================================================================ */
+	public boolean next()
+	{
+		node = nextNode;
+
+		if ( node != null && to != null && node.key.compareTo( to ) >= 0 )
+			node = null;			// Past the end of the range
+
+		nextNode = ADT_BY_AVL.successor( node );
+
+		return ( node != null );
+	}
+
+	public String key()
+	{
+		return node.key;
+	}
+
+	public Integer value()
+	{
+		return node.value;
+	}
+}
@@ -0,0 +1,450 @@
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import javax.management.*;
+
+/* ================================================================
+   AvlMetrics: what 1 ADT_BY_AVL has been doing
+
+	puts, gets, removes	operations (calls; the keys of a batch
+				call count 1 each)
+	batches			batch calls: getAll, putAll, bulkLoad
+	nodes, height		size and depth of the BST now
+	insertRestructures	tri-node restructures by configuration
+	removeRestructures	(#1 - #4), after an insert and during
+				the fixup after a remove
+	removeHeightKept	remove restructures after which the
+				subtree kept its height (fixup stopped)
+	inserts, deletes	nodes added and deleted, and the nodes
+	insertFixupSteps	visited going up after them (to fix the
+	removeFixupSteps	heights and the balance): see
+				getAvgInsertFixup()
+
+   and, if switched on, a latency histogram per operation (see
+   AvlHistogram), and 1 for whole batch calls.
+
+   Use:
+
+	AvlMetrics m = tree.enableMetrics( true );
+	m.register( "orders" );		// JMX: avl:type=ADT_BY_AVL,name=orders
+
+	System.out.println( m.snapshot() );
+
+   The counters are plain fields, updated by the thread that uses
+   the tree (ADT_BY_AVL is not thread safe anyway). JMX and
+   snapshot() may read them from another thread: they may then be
+   a little behind, never more than that matters for monitoring.
+   Without histograms an operation costs 1 counter increment, with
+   them also 2 System.nanoTime() calls. Nothing is allocated.
+   ================================================================ */
+
+public class AvlMetrics implements AvlMetricsMBean
+{
+	final ADT_BY_AVL tree;
+
+	public long puts;
+	public long gets;
+	public long removes;
+	public long batches;
+	public long nodes;
+
+	public final long[] insertRestructures = new long[5];	// [1..4]
+	public final long[] removeRestructures = new long[5];
+	public long removeHeightKept;
+
+	public long inserts;
+	public long insertFixupSteps;
+	public long deletes;
+	public long removeFixupSteps;
+
+	public final AvlHistogram getLatency;		// null = histograms off
+	public final AvlHistogram putLatency;
+	public final AvlHistogram removeLatency;
+	public final AvlHistogram batchLatency;		// Whole batch calls
+
+	AvlMetrics(ADT_BY_AVL t, boolean histograms)
+	{
+		tree = t;
+
+		if ( histograms )
+		{
+			getLatency = new AvlHistogram();
+			putLatency = new AvlHistogram();
+			removeLatency = new AvlHistogram();
+			batchLatency = new AvlHistogram();
+		}
+		else
+			getLatency = putLatency = removeLatency = batchLatency = null;
+	}
+
+	/* ================================================================
+		start(): time stamp at the start of an operation
+		(0 without histograms: no clock call)
+	================================================================ */
+	long start()
+	{
+		return ( getLatency != null ) ? System.nanoTime() : 0;
+	}
+
+	void got(long t0)
+	{
+		gets++;
+
+		if ( getLatency != null )
+			getLatency.record( System.nanoTime() - t0 );
+	}
+
+	void put(long t0)
+	{
+		puts++;
+
+		if ( putLatency != null )
+			putLatency.record( System.nanoTime() - t0 );
+	}
+
+	void removed(long t0)
+	{
+		removes++;
+
+		if ( removeLatency != null )
+			removeLatency.record( System.nanoTime() - t0 );
+	}
+
+	/* ================================================================
+		gotAll(n, t0), putAll(n, t0): end of a batch call of n
+		keys. The keys count as gets / puts, the call as 1 batch
+		(its latency is not spread over the keys)
+	================================================================ */
+	void gotAll(int n, long t0)
+	{
+		gets += n;
+		batch( t0 );
+	}
+
+	void putAll(long n, long t0)
+	{
+		puts += n;
+		batch( t0 );
+	}
+
+	void batch(long t0)
+	{
+		batches++;
+
+		if ( batchLatency != null )
+			batchLatency.record( System.nanoTime() - t0 );
+	}
+
+	/* ================================================================
+		snapshot(): copy of all values now (O(1), 4 small array
+		copies with histograms)
+	================================================================ */
+	public Snapshot snapshot()
+	{
+		return new Snapshot( this );
+	}
+
+	/* ================================================================
+		reset(): all counters and histograms to 0 (not nodes and
+		height: they describe the BST)
+	================================================================ */
+	public void reset()
+	{
+		puts = gets = removes = batches = 0;
+		removeHeightKept = 0;
+		inserts = insertFixupSteps = deletes = removeFixupSteps = 0;
+
+		Arrays.fill( insertRestructures, 0 );
+		Arrays.fill( removeRestructures, 0 );
+
+		if ( getLatency != null )
+		{
+			getLatency.reset();
+			putLatency.reset();
+			removeLatency.reset();
+			batchLatency.reset();
+		}
+	}
+
+	/* ================================================================
+		register(name): make this visible through JMX (platform
+		MBean server) as avl:type=ADT_BY_AVL,name=<name>
+	================================================================ */
+	public ObjectName register(String name) throws JMException
+	{
+		ObjectName on = new ObjectName( "avl:type=ADT_BY_AVL,name=" + ObjectName.quote( name ) );
+
+		ManagementFactory.getPlatformMBeanServer().registerMBean( this, on );
+		return on;
+	}
+
+	public void unregister(String name) throws JMException
+	{
+		ManagementFactory.getPlatformMBeanServer().unregisterMBean(
+			new ObjectName( "avl:type=ADT_BY_AVL,name=" + ObjectName.quote( name ) ) );
+	}
+
+	/* ================================================================
+		AvlMetricsMBean
+	================================================================ */
+	public long getPuts()		{ return puts; }
+	public long getGets()		{ return gets; }
+	public long getRemoves()	{ return removes; }
+	public long getBatches()	{ return batches; }
+	public long getNodes()		{ return nodes; }
+
+	public int getHeight()
+	{
+		Node r = tree.root;
+
+		return ( r == null ) ? 0 : r.height;
+	}
+
+	public long[] getInsertRestructures()	{ return insertRestructures.clone(); }
+	public long[] getRemoveRestructures()	{ return removeRestructures.clone(); }
+	public long getRemoveHeightKept()	{ return removeHeightKept; }
+
+	public long getInserts()			{ return inserts; }
+	public long getInsertFixupSteps()	{ return insertFixupSteps; }
+	public long getDeletes()		{ return deletes; }
+	public long getRemoveFixupSteps()	{ return removeFixupSteps; }
+
+	/* ================================================================
+		getAvgInsertFixup(), getAvgRemoveFixup(): average number
+		of nodes visited on the way up after an insert / delete
+
+		Stays a small constant (about 3 for random inserts)
+		whatever the size of the BST: the fixup stops where the
+		heights stop changing, not at the root.
+	================================================================ */
+	public double getAvgInsertFixup()
+	{
+		return ( inserts == 0 ) ? 0 : (double) insertFixupSteps / inserts;
+	}
+
+	public double getAvgRemoveFixup()
+	{
+		return ( deletes == 0 ) ? 0 : (double) removeFixupSteps / deletes;
+	}
+
+	public boolean isHistograms()		{ return getLatency != null; }
+
+	public long getGetP50Nanos()	{ return percentile( getLatency, 50 ); }
+	public long getGetP99Nanos()	{ return percentile( getLatency, 99 ); }
+	public long getGetMaxNanos()	{ return ( getLatency == null ) ? 0 : getLatency.max; }
+
+	public long getPutP50Nanos()	{ return percentile( putLatency, 50 ); }
+	public long getPutP99Nanos()	{ return percentile( putLatency, 99 ); }
+	public long getPutMaxNanos()	{ return ( putLatency == null ) ? 0 : putLatency.max; }
+
+	public long getRemoveP50Nanos()	{ return percentile( removeLatency, 50 ); }
+	public long getRemoveP99Nanos()	{ return percentile( removeLatency, 99 ); }
+	public long getRemoveMaxNanos()	{ return ( removeLatency == null ) ? 0 : removeLatency.max; }
+
+	public long getBatchP50Nanos()	{ return percentile( batchLatency, 50 ); }
+	public long getBatchP99Nanos()	{ return percentile( batchLatency, 99 ); }
+	public long getBatchMaxNanos()	{ return ( batchLatency == null ) ? 0 : batchLatency.max; }
+
+	static long percentile(AvlHistogram h, double p)
+	{
+		return ( h == null ) ? 0 : h.percentile( p );
+	}
+
+	/* ================================================================
+		Snapshot: immutable copy of the metrics at 1 moment
+	================================================================ */
+	public static class Snapshot
+	{
+		public final long puts, gets, removes, batches, nodes;
+		public final int height;
+
+		public final long[] insertRestructures;
+		public final long[] removeRestructures;
+		public final long removeHeightKept;
+
+		public final long inserts, insertFixupSteps;
+		public final long deletes, removeFixupSteps;
+
+		public final AvlHistogram getLatency;		// null = histograms off
+		public final AvlHistogram putLatency;
+		public final AvlHistogram removeLatency;
+		public final AvlHistogram batchLatency;
+
+		Snapshot(AvlMetrics m)
+		{
+			puts = m.puts;
+			gets = m.gets;
+			removes = m.removes;
+			batches = m.batches;
+			nodes = m.nodes;
+			height = m.getHeight();
+
+			insertRestructures = m.insertRestructures.clone();
+			removeRestructures = m.removeRestructures.clone();
+			removeHeightKept = m.removeHeightKept;
+
+			inserts = m.inserts;
+			insertFixupSteps = m.insertFixupSteps;
+			deletes = m.deletes;
+			removeFixupSteps = m.removeFixupSteps;
+
+			getLatency = ( m.getLatency == null ) ? null : m.getLatency.copy();
+			putLatency = ( m.putLatency == null ) ? null : m.putLatency.copy();
+			removeLatency = ( m.removeLatency == null ) ? null : m.removeLatency.copy();
+			batchLatency = ( m.batchLatency == null ) ? null : m.batchLatency.copy();
+		}
+
+		public String toString()
+		{
+			StringBuilder s = new StringBuilder();
+
+			s.append( "puts " ).append( puts ).append( ", gets " ).append( gets )
+			 .append( ", removes " ).append( removes ).append( ", batches " ).append( batches ).append( '\n' );
+			s.append( "nodes " ).append( nodes ).append( ", height " ).append( height ).append( '\n' );
+			s.append( "insert restructures #1-#4 " ).append( configs( insertRestructures ) ).append( '\n' );
+			s.append( "remove restructures #1-#4 " ).append( configs( removeRestructures ) )
+			 .append( ", height kept " ).append( removeHeightKept ).append( '\n' );
+			s.append( String.format( "fixup: %d inserts, %.2f nodes avg; %d deletes, %.2f nodes avg%n",
+						 inserts, avg( insertFixupSteps, inserts ),
+						 deletes, avg( removeFixupSteps, deletes ) ) );
+
+			if ( getLatency != null )
+			{
+				s.append( "get    ns " ).append( getLatency ).append( '\n' );
+				s.append( "put    ns " ).append( putLatency ).append( '\n' );
+				s.append( "remove ns " ).append( removeLatency ).append( '\n' );
+				s.append( "batch  ns " ).append( batchLatency ).append( '\n' );
+			}
+
+			return s.toString();
+		}
+
+		static double avg(long steps, long n)
+		{
+			return ( n == 0 ) ? 0 : (double) steps / n;
+		}
+
+		static String configs(long[] c)
+		{
+			return c[1] + " " + c[2] + " " + c[3] + " " + c[4];
+		}
+	}
+}
+
+
+/* ================================================================
+   AvlHistogram: counts of values (latencies in ns) in log-linear
+   buckets, like HdrHistogram
+
+   Values 0..15 have a bucket each. Above that every power of 2
+   is split into 16 buckets, so a bucket is at most 1/16 (6.25%)
+   wide relative to its values. Values up to 2^40 ns (18 min) fit
+   in 608 buckets; bigger ones count in the last bucket.
+
+   record() is 1 array increment: no allocation, no locks.
+   ================================================================ */
+
+class AvlHistogram
+{
+	static final int SUB_BITS = 4;
+	static final int SUB = 1 << SUB_BITS;		// Buckets per power of 2
+	static final int MAX_EXP = 40;
+	static final int BUCKETS = (MAX_EXP - SUB_BITS + 2) * SUB;
+
+	public final long[] counts = new long[BUCKETS];
+	public long total;
+	public long max;
+
+	/* ================================================================
+		record(v): count 1 value
+	================================================================ */
+	public void record(long v)
+	{
+		if ( v < 0 )
+			v = 0;
+
+		counts[index( v )]++;
+		total++;
+
+		if ( v > max )
+			max = v;
+	}
+
+	/* ---------------------------------------
+		index(v): bucket of value v
+
+		v < 16: v itself. Else with e = the
+		highest 1 bit of v, the 4 bits below
+		it pick 1 of the 16 buckets of 2^e
+	--------------------------------------- */
+	static int index(long v)
+	{
+		if ( v < SUB )
+			return (int) v;
+
+		int e = 63 - Long.numberOfLeadingZeros( v );
+
+		if ( e > MAX_EXP )
+			return BUCKETS - 1;
+
+		return (e - SUB_BITS + 1) * SUB + (int) (v >>> (e - SUB_BITS)) - SUB;
+	}
+
+	/* ---------------------------------------
+		lowest(i): smallest value in bucket i
+	--------------------------------------- */
+	static long lowest(int i)
+	{
+		if ( i < SUB )
+			return i;
+
+		int e = i / SUB + SUB_BITS - 1;
+
+		return (long) (i % SUB + SUB) << (e - SUB_BITS);
+	}
+
+	/* ================================================================
+		percentile(p): a value v such that p% of the values are
+		<= v (the highest value of the bucket, like HdrHistogram)
+	================================================================ */
+	public long percentile(double p)
+	{
+		if ( total == 0 )
+			return 0;
+
+		long want = Math.max( 1, (long) Math.ceil( p / 100 * total ) );
+		long seen = 0;
+
+		for ( int i = 0; i < BUCKETS; i++ )
+		{
+			seen += counts[i];
+
+			if ( seen >= want )
+				return Math.min( lowest( i + 1 ) - 1, max );
+		}
+
+		return max;
+	}
+
+	public void reset()
+	{
+		Arrays.fill( counts, 0 );
+		total = 0;
+		max = 0;
+	}
+
+	public AvlHistogram copy()
+	{
+		AvlHistogram h = new AvlHistogram();
+
+		System.arraycopy( counts, 0, h.counts, 0, BUCKETS );
+		h.total = total;
+		h.max = max;
+		return h;
+	}
+
+	public String toString()
+	{
+		return "n " + total + "  p50 " + percentile( 50 ) + "  p99 " + percentile( 99 )
+			+ "  p99.9 " + percentile( 99.9 ) + "  max " + max;
+	}
+}
@@ -0,0 +1,48 @@
+/* ================================================================
+   AvlMetricsMBean: the JMX view of AvlMetrics
+
+   (JMX needs a public interface named <class>MBean.) All times
+   are in nanoseconds, and 0 when the histograms are off.
+   ================================================================ */
+
+public interface AvlMetricsMBean
+{
+	long getPuts();
+	long getGets();
+	long getRemoves();
+	long getBatches();		// getAll/putAll/bulkLoad calls (their keys count above)
+
+	int getHeight();
+	long getNodes();
+
+	long[] getInsertRestructures();		// [0] unused, [1..4] = configuration #1 - #4
+	long[] getRemoveRestructures();
+	long getRemoveHeightKept();
+
+	long getInserts();
+	long getInsertFixupSteps();
+	long getDeletes();
+	long getRemoveFixupSteps();
+	double getAvgInsertFixup();
+	double getAvgRemoveFixup();
+
+	boolean isHistograms();
+
+	long getGetP50Nanos();
+	long getGetP99Nanos();
+	long getGetMaxNanos();
+
+	long getPutP50Nanos();
+	long getPutP99Nanos();
+	long getPutMaxNanos();
+
+	long getRemoveP50Nanos();
+	long getRemoveP99Nanos();
+	long getRemoveMaxNanos();
+
+	long getBatchP50Nanos();		// Whole batch calls
+	long getBatchP99Nanos();
+	long getBatchMaxNanos();
+
+	void reset();
+}
@@ -0,0 +1,43 @@
+/* ================================================================
+   AvlMonoid: how ADT_BY_AVL.aggregate combines values
+
+   combine() must be associative, with identity() as its identity
+   element. It need not be commutative: values are always combined
+   in key order.
+
+   lift(v) = the aggregate of a single value v
+   ================================================================ */
+
+interface AvlMonoid
+{
+	long identity();
+
+	long lift(Integer v);
+
+	long combine(long a, long b);
+
+	/* ---------------------------------------
+		The usual ones (null values count
+		as "no value")
+	--------------------------------------- */
+	AvlMonoid SUM = new AvlMonoid()
+	{
+		public long identity()              { return 0; }
+		public long lift(Integer v)         { return (v == null) ? 0 : v; }
+		public long combine(long a, long b) { return a + b; }
+	};
+
+	AvlMonoid MIN = new AvlMonoid()
+	{
+		public long identity()              { return Long.MAX_VALUE; }
+		public long lift(Integer v)         { return (v == null) ? Long.MAX_VALUE : v; }
+		public long combine(long a, long b) { return Math.min( a, b ); }
+	};
+
+	AvlMonoid MAX = new AvlMonoid()
+	{
+		public long identity()              { return Long.MIN_VALUE; }
+		public long lift(Integer v)         { return (v == null) ? Long.MIN_VALUE : v; }
+		public long combine(long a, long b) { return Math.max( a, b ); }
+	};
+}
@@ -0,0 +1,40 @@
+import java.util.concurrent.locks.*;
+
+/* =================================================================
+   AvlShard: 1 key range [lo, hi) of a ShardedAvlMap, in its own
+   ADT_BY_AVL with its own lock
+
+   All fields except lock are guarded by lock.
+   ================================================================= */
+
+class AvlShard
+{
+	final ReentrantLock lock = new ReentrantLock();
+
+	ADT_BY_AVL tree;
+	String lo;		// Smallest key of the range ("" = no limit)
+	String hi;		// End of the range (excl.), null = no limit
+	boolean retired;	// Merged into its left neighbour: route again
+
+	long ops;		// Operations so far
+	long contended;		// Operations that had to wait for the lock (this window)
+	long windowStart;	// System.nanoTime() at the start of this window
+
+	AvlShard(ADT_BY_AVL t, String lo, String hi)
+	{
+		tree = t;
+		this.lo = lo;
+		this.hi = hi;
+		windowStart = System.nanoTime();
+	}
+
+	boolean covers(String k)
+	{
+		return k.compareTo( lo ) >= 0 && ( hi == null || k.compareTo( hi ) < 0 );
+	}
+
+	int size()
+	{
+		return ADT_BY_AVL.subtreeSize( tree.root );
+	}
+}
@@ -0,0 +1,988 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.CRC32C;
+
+/* ================================================================
+   AvlSnapshot: compact binary file with all (k,v) pairs of an
+   ADT_BY_AVL, in key order
+
+	write(t, file)	save tree t (1 in-order walk, streamed)
+	load(file)	new tree with the pairs in file, O(n)
+	open(file)	look keys up in the file itself (no tree)
+
+   Format (version 2), ints big-endian:
+
+	0   "AVLS"		4 byte magic
+	4   int version		2
+	8   int count		number of pairs
+	12  int block		pairs per block (16)
+	16  int maxKeyLen	longest key (in bytes)
+	20  int crc		CRC32C of everything after the header
+	24  long index		file offset of the block index
+	32  blocks of "block" pairs (the last one may be shorter):
+	       varlong base	smallest value, zigzag
+	       byte    width	bits per value (0..32), 0x80 = has nulls
+	       [bytes  nulls]	bit i = value i is null (if 0x80)
+	       bits    values	value - base, "width" bits each, packed
+				from the low bit of the first byte on
+	       keys, each:
+	       byte    h	shared << 4 | rest (4 bits each; 15 =
+				15 + a varint that follows)
+	       bytes   rest	key bytes after the first "shared"
+				ones of the previous key (UTF-8)
+	index: int offset of each block
+
+   Values are stored per block relative to the smallest one, in
+   as many bits as the biggest difference needs. Keys are front
+   coded: a key only stores what differs from the key before it,
+   with both lengths in 1 byte when they are small. The first key
+   of a block is stored whole (shared = 0), so a lookup can binary
+   search the blocks and decode at most 1 block.
+
+   The file is read through a memory mapping (no copies through
+   an InputStream), so it must be smaller than 2 GB. load() also
+   reads version 1 files (1 varint shared, varint length and
+   varlong value per pair).
+   ================================================================ */
+
+class AvlSnapshot implements Closeable
+{
+	static final int MAGIC = 0x41564C53;		// "AVLS"
+	static final int VERSION = 2;
+	static final int HEADER = 32;
+	static final int BLOCK = 16;
+	static final int MAX_BLOCK = 64;		// Nulls of a block fit in a long
+
+	static final int BUF_SIZE = 1 << 16;
+
+	public final int count;		// Number of (k,v) pairs
+
+	final FileChannel ch;
+	final ByteBuffer map;		// The whole file
+	final int version;
+	final int block;
+	final int maxKeyLen;
+	final int index;		// Offset of the block index
+	final int blocks;		// Number of blocks
+
+	/* ---------------------------------------
+		The key being decoded by get(), 1 per
+		thread (get() may run in parallel)
+	--------------------------------------- */
+	final ThreadLocal<byte[]> scratch = new ThreadLocal<byte[]>()
+	{
+		protected byte[] initialValue()
+		{
+			return new byte[maxKeyLen];
+		}
+	};
+
+	/* ================================================================
+		write(t, file): save all (k,v) pairs of tree t
+		write(keys, vals, n, file): save the n pairs in keys[] and
+		vals[] (keys[] sorted, e.g. a copy of a tree)
+		write(m, file): save all pairs of the persistent map m
+		(m is a snapshot: no lock is needed while it is written)
+
+		The in-order walk (parent links, no recursion) goes
+		straight into a 64K buffer that is written to the file
+		when full (see SnapshotWriter). The file is forced to disk.
+	================================================================ */
+	public static void write(ADT_BY_AVL t, String file) throws IOException
+	{
+		try ( SnapshotWriter w = new SnapshotWriter( file ) )
+		{
+			for ( Node x = ADT_BY_AVL.first( t.root ); x != null; x = ADT_BY_AVL.successor( x ) )
+				w.add( x.key, x.value );
+
+			w.finish();
+		}
+	}
+
+	public static void write(String[] keys, Integer[] vals, int n, String file) throws IOException
+	{
+		try ( SnapshotWriter w = new SnapshotWriter( file ) )
+		{
+			for ( int i = 0; i < n; i++ )
+				w.add( keys[i], vals[i] );
+
+			w.finish();
+		}
+	}
+
+	public static void write(PersistentAvlMap m, String file) throws IOException
+	{
+		try ( SnapshotWriter w = new SnapshotWriter( file ) )
+		{
+			write( w, m.root );
+			w.finish();
+		}
+	}
+
+	static void write(SnapshotWriter w, PersistentNode x) throws IOException
+	{
+		for ( ; x != null; x = x.right )	// Recursion on the left only
+		{
+			write( w, x.left );
+			w.add( x.key, x.value );
+		}
+	}
+
+	/* ================================================================
+		SnapshotWriter: writes 1 snapshot file, pair by pair, in
+		key order
+
+		The pairs of a block are collected first (the values are
+		written before the keys, and need the smallest and biggest
+		value). The header is written last, by finish() (count,
+		index and crc are known only then).
+	================================================================ */
+	static class SnapshotWriter implements Closeable
+	{
+		final FileChannel ch;
+		final Out out;
+
+		int[] offsets = new int[16];	// Offsets of the blocks
+		int count;
+		int maxKeyLen;
+		byte[] prev = new byte[0];
+
+		final int[] vals = new int[BLOCK];	// The block being filled
+		long nulls;
+		byte[] keys = new byte[256];
+		int keyBytes;
+		int inBlock;
+
+		SnapshotWriter(String file) throws IOException
+		{
+			ch = FileChannel.open( Paths.get( file ), StandardOpenOption.CREATE,
+					       StandardOpenOption.TRUNCATE_EXISTING,
+					       StandardOpenOption.WRITE );
+			out = new Out( ch, HEADER );
+		}
+
+		void add(String k, Integer v) throws IOException
+		{
+			byte[] kb = k.getBytes( StandardCharsets.UTF_8 );
+			int shared = 0;
+
+			if ( inBlock > 0 )
+			{
+				int max = Math.min( prev.length, kb.length );
+
+				while ( shared < max && prev[shared] == kb[shared] )
+					shared++;
+			}
+
+			int rest = kb.length - shared;
+
+			if ( keyBytes + rest + 11 > keys.length )
+				keys = Arrays.copyOf( keys, 2 * (keyBytes + rest + 11) );
+
+			keys[keyBytes++] = (byte) (Math.min( shared, 15 ) << 4 | Math.min( rest, 15 ));
+
+			if ( shared >= 15 )
+				keyBytes = putVarint( keys, keyBytes, shared - 15 );
+			if ( rest >= 15 )
+				keyBytes = putVarint( keys, keyBytes, rest - 15 );
+
+			System.arraycopy( kb, shared, keys, keyBytes, rest );
+			keyBytes += rest;
+
+			if ( v == null )
+				nulls |= 1L << inBlock;
+			else
+				vals[inBlock] = v;
+
+			prev = kb;
+			count++;
+			maxKeyLen = Math.max( maxKeyLen, kb.length );
+
+			if ( ++inBlock == BLOCK )
+				flushBlock();
+		}
+
+		/* ---------------------------------------
+			flushBlock(): values, then keys
+		--------------------------------------- */
+		void flushBlock() throws IOException
+		{
+			int b = (count - 1) / BLOCK;
+
+			if ( b == offsets.length )
+				offsets = Arrays.copyOf( offsets, 2 * b );
+
+			offsets[b] = out.offset();
+
+			long min = Long.MAX_VALUE, max = Long.MIN_VALUE;
+
+			for ( int i = 0; i < inBlock; i++ )
+				if ( ( nulls & (1L << i) ) == 0 )
+				{
+					min = Math.min( min, vals[i] );
+					max = Math.max( max, vals[i] );
+				}
+
+			if ( min > max )
+				min = max = 0;			// All null
+
+			int width = 64 - Long.numberOfLeadingZeros( max - min );
+
+			out.varlong( (min << 1) ^ (min >> 63) );
+			out.put( width | ( nulls != 0 ? 0x80 : 0 ) );
+
+			if ( nulls != 0 )
+				for ( int i = 0; i < BLOCK; i += 8 )
+					out.put( (int) (nulls >>> i) );
+
+			long acc = 0;			// Bits not written yet
+			int bits = 0;
+
+			for ( int i = 0; i < inBlock; i++ )
+			{
+				long d = ( ( nulls & (1L << i) ) == 0 ) ? vals[i] - min : 0;
+
+				acc |= d << bits;
+				bits += width;
+
+				while ( bits >= 8 )
+				{
+					out.put( (int) acc );
+					acc >>>= 8;
+					bits -= 8;
+				}
+			}
+
+			if ( bits > 0 )
+				out.put( (int) acc );
+
+			out.write( keys, 0, keyBytes );
+
+			inBlock = 0;
+			keyBytes = 0;
+			nulls = 0;
+		}
+
+		/* ---------------------------------------
+			finish(): last block, block index,
+			then the header, then force
+		--------------------------------------- */
+		void finish() throws IOException
+		{
+			if ( inBlock > 0 )
+				flushBlock();
+
+			int index = out.offset();
+			int blocks = (count + BLOCK - 1) / BLOCK;
+
+			for ( int b = 0; b < blocks; b++ )
+				out.int32( offsets[b] );
+
+			out.flush();
+
+			ByteBuffer h = ByteBuffer.allocate( HEADER );
+			h.putInt( MAGIC ).putInt( VERSION ).putInt( count ).putInt( BLOCK )
+			 .putInt( maxKeyLen ).putInt( (int) out.crc.getValue() ).putLong( index ).flip();
+
+			while ( h.hasRemaining() )
+				ch.write( h, h.position() );
+
+			ch.force( true );
+		}
+
+		public void close() throws IOException
+		{
+			ch.close();
+		}
+	}
+
+	/* ================================================================
+		load(file): new ADT_BY_AVL with all pairs in file
+		load(file, t): the same into the EMPTY tree t (with its
+		extras, e.g. orderStats, already switched on)
+
+		The file is copied into 1 byte array, and the pairs are
+		decoded from it straight into the nodes: the tree is built
+		in key order, bottom-up, perfectly balanced (no rotations,
+		no arrays of keys or values in between). O(n)
+	================================================================ */
+	public static ADT_BY_AVL load(String file) throws IOException
+	{
+		return load( file, new ADT_BY_AVL() );
+	}
+
+	public static ADT_BY_AVL load(String file, ADT_BY_AVL t) throws IOException
+	{
+		if ( t.root != null )
+			throw new IllegalArgumentException( "load: the tree is not empty" );
+
+		try ( AvlSnapshot s = map( file ) )
+		{
+			byte[] b = new byte[s.index];
+
+			s.map.get( 0, b );
+			t.root = build( t, new Decoder( s, b ), s.count, null );
+			return t;
+		}
+	}
+
+	/* ================================================================
+		loadPersistent(file): the pairs of a snapshot file as a
+		PersistentAvlMap, built the same way as by load. O(n)
+	================================================================ */
+	public static PersistentAvlMap loadPersistent(String file) throws IOException
+	{
+		try ( AvlSnapshot s = map( file ) )
+		{
+			byte[] b = new byte[s.index];
+
+			s.map.get( 0, b );
+			return new PersistentAvlMap( build( new Decoder( s, b ), s.count ) );
+		}
+	}
+
+	static PersistentNode build(Decoder d, int n)
+	{
+		if ( n == 0 )
+			return null;
+
+		int nl = (n - 1) / 2;
+		PersistentNode l = build( d, nl );
+
+		d.next();
+
+		String k = d.key;
+		Integer v = d.value;
+
+		return new PersistentNode( k, v, l, build( d, n - nl - 1 ) );
+	}
+
+	/* ---------------------------------------
+		build(t, d, n, parent): balanced tree
+		of the next n pairs of d (the left
+		subtree is decoded first)
+	--------------------------------------- */
+	static Node build(ADT_BY_AVL t, Decoder d, int n, Node parent)
+	{
+		if ( n == 0 )
+			return null;
+
+		int nl = (n - 1) / 2;			// As ADT_BY_AVL.build
+		Node l = build( t, d, nl, null );
+
+		d.next();
+
+		Node x = t.newNode( d.key, d.value );
+
+		x.parent = parent;
+		x.left = l;
+
+		if ( l != null )
+			l.parent = x;
+
+		x.right = build( t, d, n - nl - 1, x );
+		x.height = ADT_BY_AVL.getMaxHeight( x.left, x.right ) + 1;
+
+		if ( t.orderStats )
+			((SizedNode) x).size = n;
+		if ( t.monoid != null )
+			t.fixAgg( x );
+
+		return x;
+	}
+
+	/* ================================================================
+		Decoder: the pairs of a snapshot (in byte array b), 1 at a
+		time: next() decodes the next one into key and value
+	================================================================ */
+	static class Decoder
+	{
+		final byte[] b;
+		final int version;
+		final int count;
+		final int block;
+		final byte[] kb;	// The key, as UTF-8 bytes
+		int ascii;		// kb[0..ascii-1] are all < 0x80
+		int p = HEADER;		// Next byte to decode
+		int i;			// Pairs decoded
+
+		long base;		// The block being decoded
+		int width;
+		long nulls;
+		int bit;		// Offset of its values, in bits
+
+		String key;
+		Integer value;
+
+		Decoder(AvlSnapshot s, byte[] b)
+		{
+			this.b = b;
+			version = s.version;
+			count = s.count;
+			block = s.block;
+			kb = new byte[s.maxKeyLen];
+		}
+
+		void next()
+		{
+			int shared, rest;
+
+			if ( version == 1 )
+			{
+				shared = varint();
+				rest = varint();
+			}
+			else
+			{
+				if ( i % block == 0 )
+					startBlock( Math.min( block, count - i ) );
+
+				int h = b[p++] & 0xff;
+
+				shared = h >>> 4;
+				rest = h & 15;
+
+				if ( shared == 15 )
+					shared += varint();
+				if ( rest == 15 )
+					rest += varint();
+			}
+
+			System.arraycopy( b, p, kb, shared, rest );
+			p += rest;
+
+			int len = shared + rest;
+
+			ascii = Math.min( ascii, shared );
+
+			while ( ascii < len && kb[ascii] >= 0 )
+				ascii++;
+
+			key = new String( kb, 0, len, ascii == len ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8 );
+
+			if ( version == 1 )
+				value = value( varlong() );
+			else
+				value = blockValue( i % block );
+
+			i++;
+		}
+
+		/* ---------------------------------------
+			startBlock(c): read the value part of
+			a block of c pairs, p to its keys
+		--------------------------------------- */
+		void startBlock(int c)
+		{
+			long z = varlong();
+
+			base = (z >>> 1) ^ -(z & 1);
+
+			int w = b[p++] & 0xff;
+
+			width = w & 0x7f;
+			nulls = 0;
+
+			if ( ( w & 0x80 ) != 0 )
+				for ( int j = 0; j < block; j += 8 )
+					nulls |= (long) (b[p++] & 0xff) << j;
+
+			bit = 8 * p;
+			p += (c * width + 7) / 8;
+		}
+
+		Integer blockValue(int j)
+		{
+			if ( ( nulls & (1L << j) ) != 0 )
+				return null;
+
+			return (int) (base + bits( b, bit + j * width, width ));
+		}
+
+		int varint()
+		{
+			int v = 0;
+
+			for ( int shift = 0; ; shift += 7 )
+			{
+				int x = b[p++] & 0xff;
+
+				v |= (x & 0x7f) << shift;
+
+				if ( x < 0x80 )
+					return v;
+			}
+		}
+
+		long varlong()
+		{
+			long v = 0;
+
+			for ( int shift = 0; ; shift += 7 )
+			{
+				int x = b[p++] & 0xff;
+
+				v |= (long) (x & 0x7f) << shift;
+
+				if ( x < 0x80 )
+					return v;
+			}
+		}
+	}
+
+	/* ---------------------------------------
+		bits(b, at, w): the w bits (w <= 32)
+		at bit offset "at" of b, low bit first
+	--------------------------------------- */
+	static long bits(byte[] b, long at, int w)
+	{
+		if ( w == 0 )
+			return 0;
+
+		int p = (int) (at >>> 3);
+		int shift = (int) (at & 7);
+		long acc = 0;
+
+		for ( int j = 0; j * 8 < shift + w; j++ )
+			acc |= (long) (b[p + j] & 0xff) << (8 * j);
+
+		return (acc >>> shift) & ((1L << w) - 1);
+	}
+
+	static int putVarint(byte[] b, int p, int v)
+	{
+		while ( (v & ~0x7f) != 0 )
+		{
+			b[p++] = (byte) ((v & 0x7f) | 0x80);
+			v >>>= 7;
+		}
+
+		b[p++] = (byte) v;
+		return p;
+	}
+
+	/* ================================================================
+		open(file): map the snapshot file, check header and crc
+		(only the current version: get() does not read version 1)
+	================================================================ */
+	public static AvlSnapshot open(String file) throws IOException
+	{
+		AvlSnapshot s = map( file );
+
+		if ( s.version != VERSION )
+		{
+			s.close();
+			throw new IOException( file + ": snapshot version " + s.version
+					       + " can only be loaded (see load)" );
+		}
+
+		return s;
+	}
+
+	static AvlSnapshot map(String file) throws IOException
+	{
+		FileChannel ch = FileChannel.open( Paths.get( file ), StandardOpenOption.READ );
+
+		try
+		{
+			return new AvlSnapshot( file, ch );
+		}
+		catch ( IOException | RuntimeException e )
+		{
+			ch.close();
+			throw e;
+		}
+	}
+
+	AvlSnapshot(String file, FileChannel ch) throws IOException
+	{
+		long size = ch.size();
+
+		if ( size < HEADER || size > Integer.MAX_VALUE )
+			throw new IOException( file + ": not a snapshot (size " + size + ")" );
+
+		this.ch = ch;
+		map = ch.map( FileChannel.MapMode.READ_ONLY, 0, size );
+
+		if ( map.getInt( 0 ) != MAGIC )
+			throw new IOException( file + ": not a snapshot" );
+
+		version = map.getInt( 4 );
+
+		if ( version != 1 && version != VERSION )
+			throw new IOException( file + ": snapshot version " + version
+					       + " (this code reads 1 and " + VERSION + ")" );
+
+		count = map.getInt( 8 );
+		block = map.getInt( 12 );
+		maxKeyLen = map.getInt( 16 );
+		index = (int) map.getLong( 24 );
+
+		if ( count < 0 || block <= 0 || ( version == VERSION && block > MAX_BLOCK ) || maxKeyLen < 0 )
+			throw new IOException( file + ": bad snapshot header" );
+
+		blocks = (count + block - 1) / block;
+
+		if ( index < HEADER || (long) index + 4L * blocks != size )
+			throw new IOException( file + ": bad snapshot index" );
+
+		CRC32C crc = new CRC32C();
+		ByteBuffer body = map.duplicate();
+		body.position( HEADER );
+		crc.update( body );
+
+		if ( (int) crc.getValue() != map.getInt( 20 ) )
+			throw new IOException( file + ": bad checksum" );
+	}
+
+	/* ================================================================
+		get(k): value of key k, read from the file (null if none)
+
+		Binary search on the first keys of the blocks for the last
+		one <= k, then decode the keys of that block, until a key
+		>= k; only the value of k is unpacked.
+		O(log(n / block) + block)
+
+		Reads the mapped file with absolute gets and decodes keys
+		into the scratch buffer of the thread: nothing is
+		allocated (except the Integer of the value).
+	================================================================ */
+	public Integer get(String k)
+	{
+		byte[] kb = scratch.get();
+
+		/* --------------------------------------------
+			Last block with first key <= k
+		-------------------------------------------- */
+		int lo = 0, hi = blocks - 1, r = -1;
+
+		while ( lo <= hi )
+		{
+			int mid = (lo + hi) >>> 1;
+			int p = keysAt( mid );
+			int len = map.get( p++ ) & 0x0f;	// shared == 0
+
+			if ( len == 15 )
+			{
+				len += varintAt( p );
+				p = skipVarint( p );
+			}
+
+			map.get( p, kb, 0, len );
+
+			if ( compare( k, kb, len ) >= 0 )
+			{
+				r = mid;
+				lo = mid + 1;
+			}
+			else
+				hi = mid - 1;
+		}
+
+		if ( r < 0 )
+			return null;			// k < first key
+
+		/* --------------------------------------------
+			Decode the keys of block r
+		-------------------------------------------- */
+		int p = keysAt( r );
+		int end = Math.min( block, count - r * block );
+
+		for ( int i = 0; i < end; i++ )
+		{
+			int h = map.get( p++ ) & 0xff;
+			int shared = h >>> 4;
+			int rest = h & 15;
+
+			if ( shared == 15 )
+			{
+				shared += varintAt( p );
+				p = skipVarint( p );
+			}
+
+			if ( rest == 15 )
+			{
+				rest += varintAt( p );
+				p = skipVarint( p );
+			}
+
+			map.get( p, kb, shared, rest );
+			p += rest;
+
+			int cmp = compare( k, kb, shared + rest );
+
+			if ( cmp == 0 )
+				return valueAt( r, i );
+			if ( cmp < 0 )
+				return null;		// Passed the spot of k
+		}
+
+		return null;
+	}
+
+	/* ---------------------------------------
+		keysAt(b): offset of the first key of
+		block b (after its values)
+
+		valueAt(b, i): value i of block b
+	--------------------------------------- */
+	int keysAt(int b)
+	{
+		int p = skipVarint( map.getInt( index + 4 * b ) );
+		int w = map.get( p++ ) & 0xff;
+
+		if ( ( w & 0x80 ) != 0 )
+			p += (block + 7) / 8;
+
+		int c = Math.min( block, count - b * block );
+
+		return p + (c * (w & 0x7f) + 7) / 8;
+	}
+
+	Integer valueAt(int b, int i)
+	{
+		int p = map.getInt( index + 4 * b );
+		long z = varlongAt( p );
+		long base = (z >>> 1) ^ -(z & 1);
+
+		p = skipVarint( p );
+
+		int w = map.get( p++ ) & 0xff;
+
+		if ( ( w & 0x80 ) != 0 )
+		{
+			if ( ( map.get( p + i / 8 ) & (1 << (i % 8)) ) != 0 )
+				return null;
+
+			p += (block + 7) / 8;
+		}
+
+		w &= 0x7f;
+
+		/* --------------------------------------------
+			The w bits at bit i * w (at most 5 bytes)
+		-------------------------------------------- */
+		long at = 8L * p + (long) i * w;
+		int q = (int) (at >>> 3);
+		int shift = (int) (at & 7);
+		long acc = 0;
+
+		for ( int j = 0; j * 8 < shift + w; j++ )
+			acc |= (long) (map.get( q + j ) & 0xff) << (8 * j);
+
+		return (int) (base + ( (acc >>> shift) & ((1L << w) - 1) ));
+	}
+
+	public boolean containsKey(String k)
+	{
+		return get( k ) != null;
+	}
+
+	public void close() throws IOException
+	{
+		ch.close();
+	}
+
+	/* ================================================================
+		compare(k, b, len): k.compareTo( key in b[0..len-1] )
+
+		Decodes the UTF-8 bytes to UTF-16 chars on the fly, so the
+		order is the String order (as in the tree), also for
+		chars outside the BMP.
+	================================================================ */
+	static int compare(String k, byte[] b, int len)
+	{
+		int i = 0, j = 0;
+		char low = 0;		// 2nd half of a surrogate pair, if any
+
+		while ( i < k.length() && (j < len || low != 0) )
+		{
+			char c;
+
+			if ( low != 0 )
+			{
+				c = low;
+				low = 0;
+			}
+			else
+			{
+				int x = b[j++] & 0xff;
+				int cp;
+
+				if ( x < 0x80 )
+					cp = x;
+				else if ( x < 0xe0 )
+					cp = ((x & 0x1f) << 6) | (b[j++] & 0x3f);
+				else if ( x < 0xf0 )
+				{
+					cp = ((x & 0x0f) << 12) | ((b[j] & 0x3f) << 6) | (b[j+1] & 0x3f);
+					j += 2;
+				}
+				else
+				{
+					cp = ((x & 0x07) << 18) | ((b[j] & 0x3f) << 12)
+						| ((b[j+1] & 0x3f) << 6) | (b[j+2] & 0x3f);
+					j += 3;
+				}
+
+				if ( cp >= 0x10000 )
+				{
+					c = Character.highSurrogate( cp );
+					low = Character.lowSurrogate( cp );
+				}
+				else
+					c = (char) cp;
+			}
+
+			int d = k.charAt( i++ ) - c;
+
+			if ( d != 0 )
+				return d;
+		}
+
+		if ( i < k.length() )
+			return 1;			// Stored key is a prefix of k
+		if ( j < len || low != 0 )
+			return -1;			// k is a prefix of the stored key
+
+		return 0;
+	}
+
+	/* ---------------------------------------
+		Decoding helpers
+	--------------------------------------- */
+	int varintAt(int p)
+	{
+		int v = 0;
+
+		for ( int shift = 0; ; shift += 7 )
+		{
+			int x = map.get( p++ ) & 0xff;
+
+			v |= (x & 0x7f) << shift;
+
+			if ( x < 0x80 )
+				return v;
+		}
+	}
+
+	long varlongAt(int p)
+	{
+		long v = 0;
+
+		for ( int shift = 0; ; shift += 7 )
+		{
+			int x = map.get( p++ ) & 0xff;
+
+			v |= (long) (x & 0x7f) << shift;
+
+			if ( x < 0x80 )
+				return v;
+		}
+	}
+
+	int skipVarint(int p)
+	{
+		while ( (map.get( p++ ) & 0x80) != 0 )
+			;
+
+		return p;
+	}
+
+	static Integer value(long v)
+	{
+		if ( v == 0 )
+			return null;
+
+		int z = (int) (v - 1);
+		return (z >>> 1) ^ -(z & 1);		// Undo zigzag
+	}
+
+	/* ================================================================
+		Out: buffered writer on a channel, from a start offset,
+		with a running CRC32C of all bytes written
+	================================================================ */
+	static class Out
+	{
+		final FileChannel ch;
+		final ByteBuffer bb = ByteBuffer.allocate( BUF_SIZE );
+		final byte[] b = bb.array();
+		final CRC32C crc = new CRC32C();
+		int n;			// Bytes in b
+		long pos;		// File offset of b[0]
+
+		Out(FileChannel ch, long start)
+		{
+			this.ch = ch;
+			pos = start;
+		}
+
+		int offset() throws IOException
+		{
+			if ( pos + n > Integer.MAX_VALUE )
+				throw new IOException( "snapshot larger than 2 GB" );
+
+			return (int) (pos + n);
+		}
+
+		void put(int c) throws IOException
+		{
+			if ( n == b.length )
+				flush();
+
+			b[n++] = (byte) c;
+		}
+
+		void write(byte[] t, int off, int len) throws IOException
+		{
+			for ( int i = 0; i < len; i++ )
+				put( t[off + i] );
+		}
+
+		void varint(int v) throws IOException
+		{
+			while ( (v & ~0x7f) != 0 )
+			{
+				put( (v & 0x7f) | 0x80 );
+				v >>>= 7;
+			}
+
+			put( v );
+		}
+
+		void varlong(long v) throws IOException
+		{
+			while ( (v & ~0x7fL) != 0 )
+			{
+				put( (int) (v & 0x7f) | 0x80 );
+				v >>>= 7;
+			}
+
+			put( (int) v );
+		}
+
+		void int32(int v) throws IOException
+		{
+			put( v >>> 24 );
+			put( v >>> 16 );
+			put( v >>> 8 );
+			put( v );
+		}
+
+		void flush() throws IOException
+		{
+			crc.update( b, 0, n );
+
+			bb.limit( n ).position( 0 );
+
+			while ( bb.hasRemaining() )
+				pos += ch.write( bb, pos );
+
+			n = 0;
+		}
+	}
+}
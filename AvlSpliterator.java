@@ -0,0 +1,150 @@
+import java.util.*;
+import java.util.function.*;
+
+/* ================================================================
+   AvlSpliterator: the (k,v) pairs of an ADT_BY_AVL, in key order,
+   for streams
+
+   Covers the nodes from "current" up to (not incl.) "fence" in
+   key order (fence null = to the end). trySplit() splits at a
+   subtree root inside that range, so both halves are about
+   equal in a balanced tree (the way java.util.TreeMap does it):
+
+	whole BST         split at the root
+	right half [s,f)  split at s.right (the first half keeps s)
+	left half  [e,f)  split at f.left
+
+   With orderStats the size of every range is exact (from the
+   ranks of current and fence, O(log n)), and SIZED/SUBSIZED are
+   reported. Without it the size is an estimate from the height.
+   ================================================================ */
+
+class AvlSpliterator implements Spliterator<Map.Entry<String,Integer>>
+{
+	final ADT_BY_AVL tree;
+
+	Node current;	// First node of the range (null = empty)
+	Node fence;	// First node after the range (null = end)
+	int side;	// 0 = whole BST, 1 = right half, -1 = left half
+	long est;	// Number of nodes (exact with orderStats)
+
+	public AvlSpliterator(ADT_BY_AVL t)
+	{
+		tree = t;
+		current = ADT_BY_AVL.first( t.root );
+
+		if ( t.orderStats )
+			est = ADT_BY_AVL.subtreeSize( t.root );
+		else if ( t.root != null )
+			est = (long) Math.pow( 2, t.root.height / 1.2 );	// n ~ 2^(h/1.2) for random inserts
+	}
+
+	AvlSpliterator(ADT_BY_AVL t, Node current, Node fence, int side, long est)
+	{
+		tree = t;
+		this.current = current;
+		this.fence = fence;
+		this.side = side;
+		this.est = est;
+	}
+
+	public Spliterator<Map.Entry<String,Integer>> trySplit()
+	{
+		Node e = current;
+		Node f = fence;
+		Node s;
+
+		if ( e == null || e == f )
+			s = null;			// Empty
+		else if ( side == 0 )
+			s = tree.root;
+		else if ( side > 0 )
+			s = e.right;
+		else
+			s = ( f != null ) ? f.left : null;
+
+		if ( s == null || s == e || s == f || e.key.compareTo( s.key ) >= 0 )
+			return null;			// s not inside the range
+
+		long n;
+
+		if ( tree.orderStats )
+		{
+			long is = index( s );		// Exact sizes of [e, s) and [s, f)
+
+			n = is - index( e );
+			est = ( ( f == null ) ? ADT_BY_AVL.subtreeSize( tree.root ) : index( f ) ) - is;
+		}
+		else
+			n = est >>>= 1;
+
+		side = 1;
+		current = s;
+
+		return new AvlSpliterator( tree, e, s, -1, n );
+	}
+
+	/* ---------------------------------------
+		index(x): position of node x in key
+		order (0 = first), from the sizes on
+		the path to the root. O(log n)
+	--------------------------------------- */
+	static long index(Node x)
+	{
+		long i = ADT_BY_AVL.subtreeSize( x.left );
+
+		for ( ; x.parent != null; x = x.parent )
+			if ( x == x.parent.right )
+				i += ADT_BY_AVL.subtreeSize( x.parent.left ) + 1;
+
+		return i;
+	}
+
+	public boolean tryAdvance(Consumer<? super Map.Entry<String,Integer>> action)
+	{
+		Node x = current;
+
+		if ( x == null || x == fence )
+			return false;
+
+		current = ADT_BY_AVL.successor( x );
+
+		if ( est > 0 )
+			est--;
+
+		action.accept( new AbstractMap.SimpleImmutableEntry<String,Integer>( x.key, x.value ) );
+		return true;
+	}
+
+	public void forEachRemaining(Consumer<? super Map.Entry<String,Integer>> action)
+	{
+		Node f = fence;
+		Node x = current;
+
+		current = f;
+		est = 0;
+
+		for ( ; x != null && x != f; x = ADT_BY_AVL.successor( x ) )
+			action.accept( new AbstractMap.SimpleImmutableEntry<String,Integer>( x.key, x.value ) );
+	}
+
+	public long estimateSize()
+	{
+		return est;
+	}
+
+	public int characteristics()
+	{
+		int c = ORDERED | SORTED | DISTINCT | NONNULL;
+
+		if ( tree.orderStats )
+			c |= SIZED | SUBSIZED;
+
+		return c;
+	}
+
+	public Comparator<? super Map.Entry<String,Integer>> getComparator()
+	{
+		return Map.Entry.comparingByKey();
+	}
+}
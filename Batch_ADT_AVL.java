@@ -0,0 +1,497 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+
+/* ================================================================
+   Batch_ADT_AVL: replay an operation log on ADT_BY_AVL
+
+   The non-interactive version of Test_ADT_AVL: no prompts and no
+   tree dumps, only the result of every search is written.
+
+   Text log (the input of Test_ADT_AVL, e.g. in.txt.txt):
+
+	<number of operations>
+	1 <key> <value>		insert
+	2 <key>			search
+	3 <key>			remove
+
+   Binary log (make one with -tobin):
+
+	"AVLOPS01"		8 byte magic
+	per operation:
+	   byte    code		1, 2 or 3
+	   varint  length	length of the key (in bytes)
+	   bytes   key		UTF-8
+	   int     value	big-endian (code 1 only)
+
+   The log is read in big blocks through a FileChannel and parsed
+   straight from the bytes (no Scanner, no regex).
+
+   Run:   java Batch_ADT_AVL <log> [<output>]
+	  java Batch_ADT_AVL -tobin <text log> <binary log>
+
+   (The ops/sec report goes to System.err, so the output only
+   holds the search results.)
+   ================================================================ */
+
+public class Batch_ADT_AVL
+{
+	static final byte[] MAGIC = "AVLOPS01".getBytes( StandardCharsets.US_ASCII );
+
+	static final int BUF_SIZE = 1 << 16;
+
+	public static void main(String[] args) throws IOException
+	{
+		if ( args.length == 3 && args[0].equals( "-tobin" ) )
+		{
+			toBinary( Paths.get( args[1] ), Paths.get( args[2] ) );
+			return;
+		}
+
+		if ( args.length < 1 )
+		{
+			System.err.println( "Usage: java Batch_ADT_AVL <log> [<output>]" );
+			System.err.println( "       java Batch_ADT_AVL -tobin <text log> <binary log>" );
+			System.exit( 1 );
+		}
+
+		ADT_BY_AVL x = new ADT_BY_AVL();	// No listener: quiet mode
+
+		try ( FileChannel in = FileChannel.open( Paths.get( args[0] ) );
+		      WritableByteChannel out = (args.length > 1) ? create( Paths.get( args[1] ) )
+								  : Channels.newChannel( System.out ) )
+		{
+			OpReader r = new OpReader( in );
+			Output o = new Output( out );
+
+			long start = System.nanoTime();
+			long ops = replay( x, r, o );
+			o.flush();
+			double sec = (System.nanoTime() - start) / 1e9;
+
+			System.err.printf( "%d ops in %.3f s (%.0f ops/sec)%n", ops, sec, ops / sec );
+		}
+	}
+
+	static FileChannel create(Path p) throws IOException
+	{
+		return FileChannel.open( p, StandardOpenOption.CREATE,
+					 StandardOpenOption.TRUNCATE_EXISTING,
+					 StandardOpenOption.WRITE );
+	}
+
+	/* ================================================================
+		replay(x, r, o): apply every operation in r to x
+
+		Return: number of operations
+	================================================================ */
+	static long replay(ADT_BY_AVL x, OpReader r, Output o) throws IOException
+	{
+		long ops = 0;
+
+		while ( r.next() )
+		{
+			switch ( r.code )
+			{
+				case 1:
+					x.put( r.key, r.value );
+					break;
+				case 2:
+					o.result( r.key, x.get( r.key ) );
+					break;
+				case 3:
+					x.remove( r.key );
+					break;
+				default:
+					throw new IOException( "Invalid code " + r.code + " (operation " + (ops + 1) + ")" );
+			}
+
+			ops++;
+		}
+
+		return ops;
+	}
+
+	/* ================================================================
+		toBinary(text, bin): convert a text log to a binary log
+	================================================================ */
+	static void toBinary(Path text, Path bin) throws IOException
+	{
+		try ( FileChannel in = FileChannel.open( text );
+		      FileChannel out = create( bin ) )
+		{
+			OpReader r = new OpReader( in );
+			Output o = new Output( out );
+
+			o.write( MAGIC, 0, MAGIC.length );
+
+			while ( r.next() )
+			{
+				o.put( r.code );
+				o.putVarint( r.keyLen );
+				o.write( r.keyBytes, 0, r.keyLen );
+
+				if ( r.code == 1 )
+				{
+					o.put( r.value >>> 24 );
+					o.put( r.value >>> 16 );
+					o.put( r.value >>> 8 );
+					o.put( r.value );
+				}
+			}
+
+			o.flush();
+		}
+	}
+
+	/* ================================================================
+		OpReader: reads one operation at a time (text or binary,
+		found by the magic at the start of the log)
+
+		After next() returns true: code, key, value (code 1 only),
+		and the raw key bytes in keyBytes[0 .. keyLen-1]
+	================================================================ */
+	static class OpReader
+	{
+		final ReadableByteChannel ch;
+		final ByteBuffer bb = ByteBuffer.allocate( BUF_SIZE );
+		final byte[] b = bb.array();
+		int pos, lim;		// Unread bytes are b[pos .. lim-1]
+
+		final boolean binary;
+		long left;		// Text: operations left (from the first line)
+
+		int code;
+		String key;
+		int value;
+
+		byte[] keyBytes = new byte[64];
+		int keyLen;
+
+		byte[] tok = new byte[64];	// Current text token
+		int tokLen;
+
+		OpReader(ReadableByteChannel ch) throws IOException
+		{
+			this.ch = ch;
+
+			binary = startsWithMagic();
+
+			if ( binary )
+				pos += MAGIC.length;
+			else
+				left = token() ? number() : 0;
+		}
+
+		boolean startsWithMagic() throws IOException
+		{
+			while ( lim < MAGIC.length && fill() )
+				;
+
+			if ( lim < MAGIC.length )
+				return false;
+
+			for ( int i = 0; i < MAGIC.length; i++ )
+				if ( b[i] != MAGIC[i] )
+					return false;
+
+			return true;
+		}
+
+		/* ---------------------------------------
+			fill(): read more bytes, false at EOF
+		--------------------------------------- */
+		boolean fill() throws IOException
+		{
+			if ( pos == lim )
+				pos = lim = 0;
+
+			if ( lim == b.length )
+			{
+				System.arraycopy( b, pos, b, 0, lim - pos );
+				lim -= pos;
+				pos = 0;
+			}
+
+			bb.limit( b.length ).position( lim );
+
+			int n = ch.read( bb );
+
+			if ( n < 0 )
+				return false;
+
+			lim += n;
+			return true;
+		}
+
+		int readByte() throws IOException
+		{
+			while ( pos == lim )
+				if ( ! fill() )
+					return -1;
+
+			return b[pos++] & 0xff;
+		}
+
+		/* ================================================================
+			next(): read the next operation, false at the end of the log
+		================================================================ */
+		boolean next() throws IOException
+		{
+			return binary ? nextBinary() : nextText();
+		}
+
+		boolean nextText() throws IOException
+		{
+			if ( left == 0 || ! token() )
+				return false;
+
+			left--;
+			code = number();
+
+			if ( ! token() )
+				throw new EOFException( "Missing key" );
+
+			keyLen = tokLen;
+
+			if ( keyBytes.length < keyLen )
+				keyBytes = new byte[tok.length];
+
+			System.arraycopy( tok, 0, keyBytes, 0, keyLen );
+			key = string( keyBytes, keyLen );
+
+			if ( code == 1 )
+			{
+				if ( ! token() )
+					throw new EOFException( "Missing value for key " + key );
+
+				value = number();
+			}
+
+			return true;
+		}
+
+		boolean nextBinary() throws IOException
+		{
+			int c = readByte();
+
+			if ( c < 0 )
+				return false;
+
+			code = c;
+			keyLen = readVarint();
+
+			if ( keyBytes.length < keyLen )
+				keyBytes = new byte[Math.max( keyLen, 2 * keyBytes.length )];
+
+			for ( int i = 0; i < keyLen; i++ )
+			{
+				int x = readByte();
+
+				if ( x < 0 )
+					throw new EOFException( "Log ends inside a key" );
+
+				keyBytes[i] = (byte) x;
+			}
+
+			key = string( keyBytes, keyLen );
+
+			if ( code == 1 )
+			{
+				int v = 0;
+
+				for ( int i = 0; i < 4; i++ )
+				{
+					int x = readByte();
+
+					if ( x < 0 )
+						throw new EOFException( "Log ends inside a value" );
+
+					v = (v << 8) | x;
+				}
+
+				value = v;
+			}
+
+			return true;
+		}
+
+		int readVarint() throws IOException
+		{
+			int v = 0;
+
+			for ( int shift = 0; shift < 32; shift += 7 )
+			{
+				int x = readByte();
+
+				if ( x < 0 )
+					throw new EOFException( "Log ends inside a key length" );
+
+				v |= (x & 0x7f) << shift;
+
+				if ( x < 0x80 )
+					return v;
+			}
+
+			throw new IOException( "Bad key length" );
+		}
+
+		/* ---------------------------------------
+			token(): next word into tok[], false at EOF
+		--------------------------------------- */
+		boolean token() throws IOException
+		{
+			int c;
+
+			do
+				c = readByte();
+			while ( c >= 0 && c <= ' ' );
+
+			if ( c < 0 )
+				return false;
+
+			tokLen = 0;
+
+			do
+			{
+				if ( tokLen == tok.length )
+					tok = java.util.Arrays.copyOf( tok, 2 * tok.length );
+
+				tok[tokLen++] = (byte) c;
+				c = readByte();
+			}
+			while ( c > ' ' );
+
+			return true;
+		}
+
+		/* ---------------------------------------
+			number(): the current token as an int
+		--------------------------------------- */
+		int number() throws IOException
+		{
+			int i = 0;
+			boolean neg = false;
+
+			if ( tokLen > 1 && (tok[0] == '-' || tok[0] == '+') )
+			{
+				neg = (tok[0] == '-');
+				i = 1;
+			}
+
+			long v = 0;
+
+			for ( ; i < tokLen; i++ )
+			{
+				int d = tok[i] - '0';
+
+				if ( d < 0 || d > 9 || v > Integer.MAX_VALUE + 1L )
+					throw new IOException( "Not a number: " + string( tok, tokLen ) );
+
+				v = 10 * v + d;
+			}
+
+			v = neg ? -v : v;
+
+			if ( v < Integer.MIN_VALUE || v > Integer.MAX_VALUE )
+				throw new IOException( "Number too big: " + string( tok, tokLen ) );
+
+			return (int) v;
+		}
+
+		/* ---------------------------------------
+			string(t, n): decode t[0 .. n-1] (UTF-8,
+			with a fast path for plain ASCII)
+		--------------------------------------- */
+		static String string(byte[] t, int n)
+		{
+			for ( int i = 0; i < n; i++ )
+				if ( t[i] < 0 )
+					return new String( t, 0, n, StandardCharsets.UTF_8 );
+
+			return new String( t, 0, n, StandardCharsets.ISO_8859_1 );
+		}
+	}
+
+	/* ================================================================
+		Output: buffered writer on a channel
+	================================================================ */
+	static class Output
+	{
+		final WritableByteChannel ch;
+		final ByteBuffer bb = ByteBuffer.allocate( BUF_SIZE );
+		final byte[] b = bb.array();
+		int n;
+
+		Output(WritableByteChannel ch)
+		{
+			this.ch = ch;
+		}
+
+		void put(int c) throws IOException
+		{
+			if ( n == b.length )
+				flush();
+
+			b[n++] = (byte) c;
+		}
+
+		void putVarint(int v) throws IOException
+		{
+			while ( (v & ~0x7f) != 0 )
+			{
+				put( (v & 0x7f) | 0x80 );
+				v >>>= 7;
+			}
+
+			put( v );
+		}
+
+		void write(byte[] t, int off, int len) throws IOException
+		{
+			for ( int i = 0; i < len; i++ )
+				put( t[off + i] );
+		}
+
+		void write(String s) throws IOException
+		{
+			for ( int i = 0; i < s.length(); i++ )
+			{
+				char c = s.charAt( i );
+
+				if ( c >= 0x80 )
+				{
+					byte[] t = s.substring( i ).getBytes( StandardCharsets.UTF_8 );
+					write( t, 0, t.length );
+					return;
+				}
+
+				put( c );
+			}
+		}
+
+		/* ---------------------------------------
+			result(k, v): same line as Test_ADT_AVL
+		--------------------------------------- */
+		void result(String k, Integer v) throws IOException
+		{
+			write( "Key = " );
+			write( k );
+			write( " ==> value: " );
+			write( String.valueOf( v ) );
+			put( '\n' );
+		}
+
+		void flush() throws IOException
+		{
+			bb.limit( n ).position( 0 );
+
+			while ( bb.hasRemaining() )
+				ch.write( bb );
+
+			n = 0;
+		}
+	}
+}
@@ -0,0 +1,309 @@
+import java.util.*;
+
+/* ================================================================
+   Bench_ADT_AVL: benchmark suite for ADT_BY_AVL
+
+   For every size (10^3 ... maxSize) and every key stream:
+
+	random  : distinct keys in random order
+	sorted  : distinct keys in ascending order (worst case for
+	          rotations: every insert restructures)
+	zipfian : keys drawn with a Zipf(0.99) skew (few keys are hot)
+
+   it measures, in ns per operation:
+
+	put     : insert n keys into an empty map
+	get     : look up n keys
+	remove  : remove n/2 of the keys
+	mixed   : 90% get / 10% put on a full map
+
+   on ADT_BY_AVL, with java.util.TreeMap and HashMap as baselines.
+
+   Run:   java Bench_ADT_AVL [maxSize] [warmup] [rounds]
+	  (defaults: 1000000 2 3, use 10000000 for the 10^7 sizes)
+
+   (No JMH: the project has no build file. Each number is the
+   median of "rounds" runs after "warmup" runs, and all looked-up
+   values go into a "sink" so the JIT cannot drop the work.)
+   ================================================================ */
+
+public class Bench_ADT_AVL
+{
+	/* ================================================================
+		Target: the operations being measured, so every map goes
+		through the same (megamorphic) call site
+	================================================================ */
+	interface Target
+	{
+		void put(String k, Integer v);
+		Integer get(String k);
+		void remove(String k);
+	}
+
+	static class AvlMap implements Target
+	{
+		ADT_BY_AVL t = new ADT_BY_AVL();
+
+		public void put(String k, Integer v)  { t.put( k, v ); }
+		public Integer get(String k)          { return t.get( k ); }
+		public void remove(String k)          { t.remove( k ); }
+	}
+
+	static class JdkMap implements Target
+	{
+		Map<String,Integer> m;
+
+		JdkMap(Map<String,Integer> m)  { this.m = m; }
+
+		public void put(String k, Integer v)  { m.put( k, v ); }
+		public Integer get(String k)          { return m.get( k ); }
+		public void remove(String k)          { m.remove( k ); }
+	}
+
+	static final String[] MAPS = { "ADT_BY_AVL", "TreeMap", "HashMap" };
+	static final String[] STREAMS = { "random", "sorted", "zipfian" };
+	static final String[] OPS = { "put", "get", "remove", "mixed" };
+
+	static int warmup;
+	static int rounds;
+
+	static long sink;		// Keeps the JIT from removing lookups
+
+	public static void main(String[] args)
+	{
+		int maxSize = (args.length > 0) ? Integer.parseInt( args[0] ) : 1000000;
+		warmup = (args.length > 1) ? Integer.parseInt( args[1] ) : 2;
+		rounds = (args.length > 2) ? Integer.parseInt( args[2] ) : 3;
+
+		System.out.printf( "%-9s %-8s %-7s", "n", "stream", "op" );
+		for ( String m : MAPS )
+			System.out.printf( " %12s", m );
+		System.out.println( "   (ns/op)" );
+
+		for ( int n = 1000; n <= maxSize; n *= 10 )
+			for ( String stream : STREAMS )
+			{
+				String[] keys = makeStream( stream, n );
+
+				for ( String op : OPS )
+				{
+					System.out.printf( "%-9d %-8s %-7s", n, stream, op );
+
+					for ( String m : MAPS )
+						System.out.printf( " %12.1f", measure( m, op, keys ) );
+
+					System.out.println();
+				}
+			}
+
+		System.out.println( "(sink " + sink + ")" );
+	}
+
+	static Target newMap(String name)
+	{
+		if ( name.equals( "TreeMap" ) )
+			return new JdkMap( new TreeMap<String,Integer>() );
+		else if ( name.equals( "HashMap" ) )
+			return new JdkMap( new HashMap<String,Integer>() );
+		else
+			return new AvlMap();
+	}
+
+	/* ================================================================
+		measure(map, op, keys): median ns/op over "rounds" runs
+	================================================================ */
+	static double measure(String map, String op, String[] keys)
+	{
+		double[] t = new double[rounds];
+
+		for ( int i = 0; i < warmup; i++ )
+			runOnce( map, op, keys );
+
+		for ( int i = 0; i < rounds; i++ )
+			t[i] = runOnce( map, op, keys );
+
+		Arrays.sort( t );
+		return t[rounds / 2];
+	}
+
+	/* ================================================================
+		runOnce(map, op, keys): one timed run, in ns/op
+
+		Building the map for get/remove/mixed is not timed.
+	================================================================ */
+	static double runOnce(String name, String op, String[] keys)
+	{
+		Target m = newMap( name );
+		int n = keys.length;
+		long s = 0;
+		long start;
+		int ops;
+
+		if ( op.equals( "put" ) )
+		{
+			start = System.nanoTime();
+
+			for ( int i = 0; i < n; i++ )
+				m.put( keys[i], i );
+
+			ops = n;
+		}
+		else
+		{
+			for ( int i = 0; i < n; i++ )
+				m.put( keys[i], i );
+
+			if ( op.equals( "get" ) )
+			{
+				start = System.nanoTime();
+
+				for ( int i = n - 1; i >= 0; i-- )
+				{
+					Integer v = m.get( keys[i] );
+
+					if ( v != null )
+						s += v;
+				}
+
+				ops = n;
+			}
+			else if ( op.equals( "remove" ) )
+			{
+				start = System.nanoTime();
+
+				for ( int i = 0; i < n; i += 2 )
+					m.remove( keys[i] );
+
+				ops = (n + 1) / 2;
+			}
+			else
+			{
+				/* ---------------------------------------
+					mixed: every 10th op is a put
+				--------------------------------------- */
+				start = System.nanoTime();
+
+				for ( int i = 0; i < n; i++ )
+				{
+					String k = keys[(int) ((i * 7919L) % n)];
+
+					if ( i % 10 == 0 )
+						m.put( k, i );
+					else
+					{
+						Integer v = m.get( k );
+
+						if ( v != null )
+							s += v;
+					}
+				}
+
+				ops = n;
+			}
+		}
+
+		double ns = (double) (System.nanoTime() - start) / ops;
+
+		sink += s;
+		return ns;
+	}
+
+	/* ================================================================
+		makeStream(kind, n): n keys of the given stream kind
+	================================================================ */
+	static String[] makeStream(String kind, int n)
+	{
+		String[] k = new String[n];
+		Random r = new Random( 42 );
+
+		if ( kind.equals( "zipfian" ) )
+		{
+			Zipf z = new Zipf( n, 0.99 );
+
+			for ( int i = 0; i < n; i++ )
+				k[i] = key( scramble( z.next( r ), n ) );
+		}
+		else
+		{
+			for ( int i = 0; i < n; i++ )
+				k[i] = key( i );
+
+			if ( kind.equals( "random" ) )
+				Collections.shuffle( Arrays.asList( k ), r );
+		}
+
+		return k;
+	}
+
+	/* ================================================================
+		key(i): fixed width key, so String order == numeric order
+	================================================================ */
+	static String key(int i)
+	{
+		char[] c = "key-0000000000".toCharArray();
+
+		for ( int p = c.length - 1; i > 0; p-- )
+		{
+			c[p] = (char) ('0' + i % 10);
+			i /= 10;
+		}
+
+		return new String( c );
+	}
+
+	/* ================================================================
+		scramble(i, n): spread the hot ranks over the key space
+		(otherwise the hot keys would all be the smallest keys)
+	================================================================ */
+	static int scramble(long i, int n)
+	{
+		return (int) ((i * 0x9E3779B97F4A7C15L >>> 1) % n);
+	}
+
+	/* ================================================================
+		Zipf: Zipfian ranks in [0, n), O(1) per sample
+
+		Gray et al., "Quickly Generating Billion-Record Synthetic
+		Databases" (SIGMOD '94), as used by YCSB.
+	================================================================ */
+	static class Zipf
+	{
+		final int n;
+		final double theta, alpha, zetan, eta;
+
+		Zipf(int n, double theta)
+		{
+			this.n = n;
+			this.theta = theta;
+
+			double zeta2 = zeta( 2, theta );
+
+			zetan = zeta( n, theta );
+			alpha = 1.0 / (1.0 - theta);
+			eta = (1 - Math.pow( 2.0 / n, 1 - theta )) / (1 - zeta2 / zetan);
+		}
+
+		static double zeta(int n, double theta)
+		{
+			double s = 0;
+
+			for ( int i = 1; i <= n; i++ )
+				s += 1 / Math.pow( i, theta );
+
+			return s;
+		}
+
+		long next(Random r)
+		{
+			double u = r.nextDouble();
+			double uz = u * zetan;
+
+			if ( uz < 1.0 )
+				return 0;
+			if ( uz < 1.0 + Math.pow( 0.5, theta ) )
+				return 1;
+
+			return Math.min( n - 1, (long) (n * Math.pow( eta * u - eta + 1, alpha )) );
+		}
+	}
+}
@@ -0,0 +1,158 @@
+import java.util.*;
+
+/* ================================================================
+   Bench_FindNode: cost of a get() on long keys with shared prefixes
+
+   Compares 3 search paths over the same tree:
+
+	old     : 2 compareTo() per level + equals() (the old findNode)
+	single  : 1 compareTo() per level (ADT_BY_AVL)
+	prefix  : packed 4-char prefix first (ADT_BY_AVL(true))
+
+   Run:   java Bench_FindNode [n] [prefixLength]
+
+   (No JMH: the project has no build file. Each measurement is
+   repeated after a warm-up, and the looked-up values are summed
+   into a "sink" so the JIT cannot drop the lookups.)
+   ================================================================ */
+
+public class Bench_FindNode
+{
+	static final int WARMUP = 5;
+	static final int ROUNDS = 10;
+
+	static long sink;		// Keeps the JIT from removing lookups
+
+	public static void main(String[] args)
+	{
+		int n = (args.length > 0) ? Integer.parseInt( args[0] ) : 1000000;
+		int pre = (args.length > 1) ? Integer.parseInt( args[1] ) : 24;
+
+		run( "shared prefix (" + pre + " chars)", makeKeys( n, pre ) );
+		run( "no shared prefix", makeKeys( n, 0 ) );
+	}
+
+	/* ================================================================
+		makeKeys(n, pre): n distinct keys, all starting with the
+		same "pre" chars (like "customer/region/eu-west/000123")
+	================================================================ */
+	static String[] makeKeys(int n, int pre)
+	{
+		StringBuilder sb = new StringBuilder();
+
+		for ( int i = 0; i < pre; i++ )
+			sb.append( (char) ('a' + i % 26) );
+
+		String common = sb.toString();
+		Random r = new Random( 42 );
+		String[] k = new String[n];
+
+		for ( int i = 0; i < n; i++ )
+			k[i] = common + Long.toString( r.nextLong() & Long.MAX_VALUE, 36 );
+
+		return k;
+	}
+
+	static void run(String title, String[] keys)
+	{
+		ADT_BY_AVL plain = new ADT_BY_AVL( false );
+		ADT_BY_AVL prefix = new ADT_BY_AVL( true );
+
+		for ( int i = 0; i < keys.length; i++ )
+		{
+			plain.put( keys[i], i );
+			prefix.put( keys[i], i );
+		}
+
+		/* -------------------------------------------
+			Look the keys up in a different order
+		------------------------------------------- */
+		String[] probe = keys.clone();
+		Collections.shuffle( Arrays.asList( probe ), new Random( 7 ) );
+
+		System.out.println( title + ", n = " + keys.length );
+
+		for ( int w = 0; w < WARMUP; w++ )
+		{
+			getOld( plain, probe );
+			getAll( plain, probe );
+			getAll( prefix, probe );
+		}
+
+		double tOld = 0, tSingle = 0, tPrefix = 0;
+
+		for ( int r = 0; r < ROUNDS; r++ )
+		{
+			tOld    += getOld( plain, probe );
+			tSingle += getAll( plain, probe );
+			tPrefix += getAll( prefix, probe );
+		}
+
+		report( "old", tOld, probe.length );
+		report( "single", tSingle, probe.length );
+		report( "prefix", tPrefix, probe.length );
+		System.out.println( "(sink " + sink + ")" );
+		System.out.println();
+	}
+
+	static void report(String name, double ns, int n)
+	{
+		System.out.printf( "   %-8s %8.1f ns/get%n", name, ns / ROUNDS / n );
+	}
+
+	static long getAll(ADT_BY_AVL t, String[] probe)
+	{
+		long start = System.nanoTime();
+		long s = 0;
+
+		for ( String k : probe )
+			s += t.get( k );
+
+		sink += s;
+		return System.nanoTime() - start;
+	}
+
+	static long getOld(ADT_BY_AVL t, String[] probe)
+	{
+		long start = System.nanoTime();
+		long s = 0;
+
+		for ( String k : probe )
+		{
+			Node p = findNodeOld( t.root, k );
+
+			if ( k.equals( p.key ) )
+				s += p.value;
+		}
+
+		sink += s;
+		return System.nanoTime() - start;
+	}
+
+	/* ================================================================
+		findNodeOld(root, k): the findNode() before this change
+	================================================================ */
+	static Node findNodeOld(Node root, String k)
+	{
+		Node current = root;
+		Node previous = root;
+
+		while ( current != null )
+		{
+			if ( k.compareTo( current.key ) < 0 )
+			{
+				previous = current;
+				current = current.left;
+			}
+			else if ( k.compareTo( current.key ) > 0 )
+			{
+				previous = current;
+				current = current.right;
+			}
+			else
+				return current;
+		}
+
+		return previous;
+	}
+}
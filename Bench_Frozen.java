@@ -0,0 +1,136 @@
+import java.util.*;
+
+/* ================================================================
+   Bench_Frozen: get() on a FrozenAvlMap against the ADT_BY_AVL it
+   was made from
+
+   Same keys, looked up in random order:
+
+	tree    : ADT_BY_AVL.get (Node objects, 1 compareTo per level)
+	prefix  : ADT_BY_AVL(true).get (packed prefix per Node)
+	frozen  : ADT_BY_AVL.freeze().get (Eytzinger arrays)
+
+   for the Bench_ADT_AVL keys ("key-0000123456") and for random
+   keys, at sizes that fit in the caches and sizes that do not.
+
+   Run:   java Bench_Frozen [n ...]
+	  (default: 10000 1000000 4000000)
+
+   (No JMH: the project has no build file. Each measurement is
+   repeated after a warm-up, and the looked-up values are summed
+   into a "sink" so the JIT cannot drop the lookups.)
+   ================================================================ */
+
+public class Bench_Frozen
+{
+	static final int WARMUP = 5;
+	static final int ROUNDS = 10;
+	static final int PROBES = 1000000;
+
+	static long sink;		// Keeps the JIT from removing lookups
+
+	public static void main(String[] args)
+	{
+		int[] sizes = { 10000, 1000000, 4000000 };
+
+		if ( args.length > 0 )
+		{
+			sizes = new int[args.length];
+
+			for ( int i = 0; i < args.length; i++ )
+				sizes[i] = Integer.parseInt( args[i] );
+		}
+
+		for ( int n : sizes )
+		{
+			String[] seq = new String[n];
+			String[] rnd = new String[n];
+			Random r = new Random( 42 );
+
+			for ( int i = 0; i < n; i++ )
+			{
+				seq[i] = Bench_ADT_AVL.key( i );
+				rnd[i] = Long.toString( r.nextLong() & Long.MAX_VALUE, 36 );
+			}
+
+			run( "Bench_ADT_AVL keys", seq );
+			run( "random keys", rnd );
+		}
+	}
+
+	static void run(String title, String[] keys)
+	{
+		ADT_BY_AVL plain = new ADT_BY_AVL( false );
+		ADT_BY_AVL prefix = new ADT_BY_AVL( true );
+
+		for ( int i = 0; i < keys.length; i++ )
+		{
+			plain.put( keys[i], i );
+			prefix.put( keys[i], i );
+		}
+
+		FrozenAvlMap frozen = plain.freeze();
+
+		/* -------------------------------------------
+			PROBES random keys of the map
+		------------------------------------------- */
+		String[] probe = new String[Math.min( PROBES, keys.length * 4 )];
+		Random r = new Random( 7 );
+
+		for ( int i = 0; i < probe.length; i++ )
+			probe[i] = keys[r.nextInt( keys.length )];
+
+		System.out.println( title + ", n = " + keys.length );
+
+		for ( int w = 0; w < WARMUP; w++ )
+		{
+			getAll( plain, probe );
+			getAll( prefix, probe );
+			getAll( frozen, probe );
+		}
+
+		double tTree = 0, tPrefix = 0, tFrozen = 0;
+
+		for ( int round = 0; round < ROUNDS; round++ )
+		{
+			tTree   += getAll( plain, probe );
+			tPrefix += getAll( prefix, probe );
+			tFrozen += getAll( frozen, probe );
+		}
+
+		report( "tree", tTree, probe.length );
+		report( "prefix", tPrefix, probe.length );
+		report( "frozen", tFrozen, probe.length );
+		System.out.println( "(sink " + sink + ")" );
+		System.out.println();
+	}
+
+	static void report(String name, double ns, int n)
+	{
+		System.out.printf( "   %-8s %8.1f ns/get%n", name, ns / ROUNDS / n );
+	}
+
+	static long getAll(ADT_BY_AVL t, String[] probe)
+	{
+		long start = System.nanoTime();
+		long s = 0;
+
+		for ( String k : probe )
+			s += t.get( k );
+
+		sink += s;
+		return System.nanoTime() - start;
+	}
+
+	static long getAll(FrozenAvlMap t, String[] probe)
+	{
+		long start = System.nanoTime();
+		long s = 0;
+
+		for ( String k : probe )
+			s += t.get( k );
+
+		sink += s;
+		return System.nanoTime() - start;
+	}
+}
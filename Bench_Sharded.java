@@ -0,0 +1,113 @@
+import java.util.*;
+
+/* ================================================================
+   Bench_Sharded: write throughput of ShardedAvlMap by threads
+
+   Each thread puts OPS random keys (uniform over the key space)
+   into:
+
+	locked  : 1 ADT_BY_AVL behind 1 lock (synchronized)
+	sharded : ShardedAvlMap, SHARDS shards from the start, which
+		  split further on their own when hot or big
+
+   and the total put/sec is reported for 1, 2, 4, ... threads up
+   to the number of cores.
+
+   Run:   java Bench_Sharded [ops per thread]
+	  (default: 1000000)
+   ================================================================ */
+
+public class Bench_Sharded
+{
+	static final int SHARDS = 64;
+	static final int KEYS = 100000000;		// Keys are 0 .. KEYS-1, as 9 digits
+
+	public static void main(String[] args) throws Exception
+	{
+		final int ops = (args.length > 0) ? Integer.parseInt( args[0] ) : 1000000;
+		int cores = Runtime.getRuntime().availableProcessors();
+
+		/* -------------------------------------------
+			SHARDS - 1 split keys, evenly spaced
+		------------------------------------------- */
+		String[] split = new String[SHARDS - 1];
+
+		for ( int i = 1; i < SHARDS; i++ )
+			split[i - 1] = key( (int) ((long) KEYS * i / SHARDS) );
+
+		System.out.printf( "%8s %14s %14s%n", "threads", "locked put/s", "sharded put/s" );
+
+		for ( int threads = 1; threads <= cores; threads *= 2 )
+		{
+			final ADT_BY_AVL t = new ADT_BY_AVL();
+			final ShardedAvlMap m = new ShardedAvlMap( split );
+
+			double locked = run( threads, ops, new Target()
+			{
+				public void put(String k, Integer v)
+				{
+					synchronized ( t )
+					{
+						t.put( k, v );
+					}
+				}
+			} );
+
+			double sharded = run( threads, ops, new Target()
+			{
+				public void put(String k, Integer v)
+				{
+					m.put( k, v );
+				}
+			} );
+
+			System.out.printf( "%8d %14.0f %14.0f   (%d shards)%n", threads, locked, sharded, m.shardCount() );
+		}
+	}
+
+	interface Target
+	{
+		void put(String k, Integer v);
+	}
+
+	/* ================================================================
+		run(threads, ops, target): put/sec of "threads" threads
+		each doing ops puts
+	================================================================ */
+	static double run(int threads, final int ops, final Target target) throws Exception
+	{
+		Thread[] th = new Thread[threads];
+
+		for ( int i = 0; i < threads; i++ )
+		{
+			final long seed = i;
+
+			th[i] = new Thread()
+			{
+				public void run()
+				{
+					Random r = new Random( seed );
+
+					for ( int j = 0; j < ops; j++ )
+						target.put( key( r.nextInt( KEYS ) ), j );
+				}
+			};
+		}
+
+		long start = System.nanoTime();
+
+		for ( Thread x : th )
+			x.start();
+		for ( Thread x : th )
+			x.join();
+
+		return (double) threads * ops / ((System.nanoTime() - start) / 1e9);
+	}
+
+	static String key(int i)
+	{
+		String s = Integer.toString( i );
+
+		return "000000000".substring( s.length() ) + s;
+	}
+}
@@ -0,0 +1,94 @@
+import java.io.*;
+import java.util.*;
+
+/* ================================================================
+   Bench_Snapshot: AvlSnapshot against Java serialization
+
+   Saves and loads the same n (k,v) pairs:
+
+	snapshot : AvlSnapshot.write / AvlSnapshot.load (ADT_BY_AVL)
+	java     : ObjectOutputStream / ObjectInputStream of a TreeMap
+		   (ADT_BY_AVL is not Serializable, a TreeMap is what
+		   one would serialize instead)
+
+   and reports file size, save time and load time.
+
+   Run:   java Bench_Snapshot [n] [dir]
+	  (defaults: 1000000 and the temp directory)
+
+   (No JMH: the project has no build file. Each time is the best
+   of ROUNDS runs.)
+   ================================================================ */
+
+public class Bench_Snapshot
+{
+	static final int ROUNDS = 3;
+
+	public static void main(String[] args) throws Exception
+	{
+		int n = (args.length > 0) ? Integer.parseInt( args[0] ) : 1000000;
+		String dir = (args.length > 1) ? args[1] : System.getProperty( "java.io.tmpdir" );
+
+		File snap = new File( dir, "bench.snap" );
+		File ser = new File( dir, "bench.ser" );
+
+		/* -------------------------------------------
+			Same keys as Bench_ADT_AVL, random values
+		------------------------------------------- */
+		ADT_BY_AVL t = new ADT_BY_AVL();
+		TreeMap<String,Integer> m = new TreeMap<String,Integer>();
+		Random r = new Random( 42 );
+
+		for ( int i = 0; i < n; i++ )
+		{
+			String k = Bench_ADT_AVL.key( i );
+			Integer v = r.nextInt( 1000000 );
+
+			t.put( k, v );
+			m.put( k, v );
+		}
+
+		long sSave = Long.MAX_VALUE, sLoad = Long.MAX_VALUE;
+		long jSave = Long.MAX_VALUE, jLoad = Long.MAX_VALUE;
+		long sink = 0;
+
+		for ( int round = 0; round < ROUNDS; round++ )
+		{
+			long start = System.nanoTime();
+			AvlSnapshot.write( t, snap.getPath() );
+			sSave = Math.min( sSave, System.nanoTime() - start );
+
+			start = System.nanoTime();
+			ADT_BY_AVL t2 = AvlSnapshot.load( snap.getPath() );
+			sLoad = Math.min( sLoad, System.nanoTime() - start );
+			sink += t2.root.height;
+
+			start = System.nanoTime();
+			try ( ObjectOutputStream out = new ObjectOutputStream(
+					new BufferedOutputStream( new FileOutputStream( ser ), 1 << 16 ) ) )
+			{
+				out.writeObject( m );
+			}
+			jSave = Math.min( jSave, System.nanoTime() - start );
+
+			start = System.nanoTime();
+			try ( ObjectInputStream in = new ObjectInputStream(
+					new BufferedInputStream( new FileInputStream( ser ), 1 << 16 ) ) )
+			{
+				@SuppressWarnings("unchecked")
+				TreeMap<String,Integer> m2 = (TreeMap<String,Integer>) in.readObject();
+				sink += m2.size();
+			}
+			jLoad = Math.min( jLoad, System.nanoTime() - start );
+		}
+
+		System.out.println( "n = " + n );
+		System.out.printf( "%-10s %12s %10s %10s%n", "", "bytes", "save ms", "load ms" );
+		System.out.printf( "%-10s %12d %10.1f %10.1f%n", "snapshot", snap.length(), sSave / 1e6, sLoad / 1e6 );
+		System.out.printf( "%-10s %12d %10.1f %10.1f%n", "java", ser.length(), jSave / 1e6, jLoad / 1e6 );
+		System.out.println( "(sink " + sink + ")" );
+
+		snap.delete();
+		ser.delete();
+	}
+}
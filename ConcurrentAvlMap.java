@@ -0,0 +1,823 @@
+/* ================================================================
+   ConcurrentAvlMap: thread-safe AVL map with lock-free readers
+
+   Optimistic AVL tree of Bronson, Casper, Chafi and Olukotun,
+   "A Practical Concurrent Binary Search Tree" (PPoPP 2010):
+
+   - get() takes NO locks. It walks down hand-over-hand and checks
+     the version of each node after reading its child. If a rotation
+     moved the node down in the meantime (version changed) it backs
+     up one level and tries again.
+   - put()/remove() search the same way, then lock only the node(s)
+     they change (synchronized on the node).
+   - Rebalancing is done bottom-up after each change, locking
+     parent, node and child (always top-down, so no deadlocks).
+     A node that moves down during a rotation is marked SHRINKING
+     and gets a new version when the rotation is done.
+   - remove() of a node with 2 children only clears its value; the
+     node is unlinked later when it has at most 1 child left.
+
+   rootHolder is a fixed sentinel: the real root is rootHolder.right.
+   Values must not be null.
+   ================================================================ */
+
+class ConcurrentAvlMap
+{
+	static final long UNLINKED = 0x1L;
+	static final long SHRINKING = 0x2L;
+	static final long SHRINK_COUNT_INCR = 0x4L;
+
+	static final int SPIN_COUNT = 100;
+
+	static final Object RETRY = new Object();	// "Try again one level up"
+
+	/* -----------------------------------------------
+		Results of nodeCondition() (or a new height)
+	----------------------------------------------- */
+	static final int UNLINK_REQUIRED = -1;
+	static final int REBALANCE_REQUIRED = -2;
+	static final int NOTHING_REQUIRED = -3;
+
+	final ConcurrentNode rootHolder = new ConcurrentNode( null, null, null );
+
+	/* ================================================================
+		get(k): find key k and return assoc. value (no locks)
+	================================================================ */
+	public Integer get(String k)
+	{
+		return (Integer) attemptGet( k, rootHolder, 1, 0 );
+	}
+
+	Object attemptGet(String k, ConcurrentNode node, int dir, long nodeV)
+	{
+		while ( true )
+		{
+			ConcurrentNode child = node.child( dir );
+
+			if ( node.version != nodeV )
+				return RETRY;		// node moved: caller must look again
+
+			if ( child == null )
+				return null;		// k is NOT in BST
+
+			int nextD = k.compareTo( child.key );
+
+			if ( nextD == 0 )
+				return child.value;	// Found key in BST
+
+			long chV = child.version;
+
+			if ( (chV & SHRINKING) != 0 )
+				waitUntilNotChanging( child );
+			else if ( chV != UNLINKED && child == node.child( dir ) )
+			{
+				if ( node.version != nodeV )
+					return RETRY;
+
+				Object p = attemptGet( k, child, nextD, chV );
+
+				if ( p != RETRY )
+					return p;
+			}
+		}
+	}
+
+	/* ================================================================
+		put(k, v): store (k,v), return the old value (or null)
+	================================================================ */
+	public Integer put(String k, Integer v)
+	{
+		if ( v == null )
+			throw new NullPointerException( "value" );
+
+		return (Integer) update( k, v );
+	}
+
+	/* ================================================================
+		remove(k): delete key k, return its old value (or null)
+	================================================================ */
+	public Integer remove(String k)
+	{
+		return (Integer) update( k, null );
+	}
+
+	/* ================================================================
+		update(k, newValue): put (newValue != null) or remove
+	================================================================ */
+	Object update(String k, Integer newValue)
+	{
+		while ( true )
+		{
+			ConcurrentNode right = rootHolder.right;
+
+			if ( right == null )
+			{
+				/* ---------------------------------
+					Insert in an EMPTY BST
+				--------------------------------- */
+				if ( newValue == null || attemptInsertIntoEmpty( k, newValue ) )
+					return null;
+			}
+			else
+			{
+				long rightV = right.version;
+
+				if ( (rightV & SHRINKING) != 0 )
+					waitUntilNotChanging( right );
+				else if ( rightV != UNLINKED && right == rootHolder.right )
+				{
+					Object p = attemptUpdate( k, newValue, rootHolder, right, rightV );
+
+					if ( p != RETRY )
+						return p;
+				}
+			}
+		}
+	}
+
+	boolean attemptInsertIntoEmpty(String k, Integer v)
+	{
+		synchronized ( rootHolder )
+		{
+			if ( rootHolder.right != null )
+				return false;
+
+			rootHolder.right = new ConcurrentNode( k, v, rootHolder );
+			return true;
+		}
+	}
+
+	/* ================================================================
+		attemptUpdate(k, newValue, parent, node, nodeV):
+
+		search for k below node (whose version was nodeV when it was
+		reached from parent), then insert/update/remove it
+	================================================================ */
+	Object attemptUpdate(String k, Integer newValue,
+			ConcurrentNode parent, ConcurrentNode node, long nodeV)
+	{
+		int dirToC = k.compareTo( node.key );
+
+		if ( dirToC == 0 )
+			return attemptNodeUpdate( newValue, parent, node );
+
+		while ( true )
+		{
+			ConcurrentNode child = node.child( dirToC );
+
+			if ( node.version != nodeV )
+				return RETRY;
+
+			if ( child == null )
+			{
+				/* --------------------------------------------
+					k is NOT in BST: insert under node
+				-------------------------------------------- */
+				if ( newValue == null )
+					return null;		// Nothing to delete....
+
+				boolean inserted = false;
+
+				synchronized ( node )
+				{
+					if ( node.version != nodeV )
+						return RETRY;
+
+					if ( node.child( dirToC ) == null )
+					{
+						node.setChild( dirToC, new ConcurrentNode( k, newValue, node ) );
+						inserted = true;
+					}
+				}
+
+				if ( inserted )
+				{
+					fixHeightAndRebalance( node );
+					return null;
+				}
+				// else someone else inserted there first: look again
+			}
+			else
+			{
+				long chV = child.version;
+
+				if ( (chV & SHRINKING) != 0 )
+					waitUntilNotChanging( child );
+				else if ( chV != UNLINKED && child == node.child( dirToC ) )
+				{
+					if ( node.version != nodeV )
+						return RETRY;
+
+					Object p = attemptUpdate( k, newValue, node, child, chV );
+
+					if ( p != RETRY )
+						return p;
+				}
+			}
+		}
+	}
+
+	/* ================================================================
+		attemptNodeUpdate(newValue, parent, node): node holds k
+	================================================================ */
+	Object attemptNodeUpdate(Integer newValue, ConcurrentNode parent, ConcurrentNode node)
+	{
+		if ( newValue == null && node.value == null )
+			return null;		// Already removed
+
+		if ( newValue == null && (node.left == null || node.right == null) )
+		{
+			/* --------------------------------------------
+				Remove with at most 1 child: unlink node,
+				this needs the parent's lock too
+			-------------------------------------------- */
+			Integer prev;
+
+			synchronized ( parent )
+			{
+				if ( parent.version == UNLINKED || node.parent != parent )
+					return RETRY;
+
+				synchronized ( node )
+				{
+					prev = node.value;
+
+					if ( prev == null )
+						return null;
+
+					if ( ! attemptUnlink_nl( parent, node ) )
+						return RETRY;
+				}
+			}
+
+			fixHeightAndRebalance( parent );
+			return prev;
+		}
+		else
+		{
+			/* --------------------------------------------
+				Update the value (or make node a routing
+				node if it has 2 children)
+			-------------------------------------------- */
+			synchronized ( node )
+			{
+				if ( node.version == UNLINKED )
+					return RETRY;
+
+				Integer prev = node.value;
+
+				if ( newValue == null && (node.left == null || node.right == null) )
+					return RETRY;		// Can unlink now, do that instead
+
+				node.value = newValue;
+				return prev;
+			}
+		}
+	}
+
+	/* ================================================================
+		attemptUnlink_nl(parent, node): replace node by its only child
+
+		(_nl: caller holds the locks of parent and node)
+	================================================================ */
+	boolean attemptUnlink_nl(ConcurrentNode parent, ConcurrentNode node)
+	{
+		ConcurrentNode parentL = parent.left;
+		ConcurrentNode parentR = parent.right;
+
+		if ( parentL != node && parentR != node )
+			return false;		// node is no longer parent's child
+
+		ConcurrentNode left = node.left;
+		ConcurrentNode right = node.right;
+
+		if ( left != null && right != null )
+			return false;		// node got a 2nd child
+
+		ConcurrentNode splice = (left != null) ? left : right;
+
+		if ( parentL == node )
+			parent.left = splice;
+		else
+			parent.right = splice;
+
+		if ( splice != null )
+			splice.parent = parent;
+
+		node.version = UNLINKED;
+		node.value = null;
+
+		return true;
+	}
+
+	/* ================================================================
+		waitUntilNotChanging(n): wait for a rotation of n to end
+	================================================================ */
+	static void waitUntilNotChanging(ConcurrentNode n)
+	{
+		long v = n.version;
+
+		if ( (v & SHRINKING) != 0 )
+		{
+			for ( int i = 0; i < SPIN_COUNT; i++ )
+				if ( n.version != v )
+					return;
+
+			synchronized ( n )
+			{
+				// The rotating thread holds n's lock
+			}
+		}
+	}
+
+	static int height(ConcurrentNode n)
+	{
+		return (n == null) ? 0 : n.height;
+	}
+
+	/* ================================================================
+		nodeCondition(node): what does node need ?
+
+		UNLINK_REQUIRED    : routing node with < 2 children
+		REBALANCE_REQUIRED : |height(left) - height(right)| > 1
+		NOTHING_REQUIRED   : height is correct
+		otherwise          : the new (correct) height
+	================================================================ */
+	static int nodeCondition(ConcurrentNode node)
+	{
+		ConcurrentNode nL = node.left;
+		ConcurrentNode nR = node.right;
+
+		if ( (nL == null || nR == null) && node.value == null )
+			return UNLINK_REQUIRED;
+
+		int hN = node.height;
+		int hL0 = height( nL );
+		int hR0 = height( nR );
+
+		int hNRepl = 1 + Math.max( hL0, hR0 );
+		int bal = hL0 - hR0;
+
+		if ( bal < -1 || bal > 1 )
+			return REBALANCE_REQUIRED;
+
+		return (hN != hNRepl) ? hNRepl : NOTHING_REQUIRED;
+	}
+
+	/* ================================================================
+		fixHeightAndRebalance(node): walk up from node, fixing heights
+		and rebalancing, until nothing changes any more
+
+		A rotation may hand back a node BELOW it that still needs
+		work (e.g. a routing node to unlink), while the other nodes
+		it moved and its parent may have stale heights too. They
+		are kept in "damaged" and looked at again (bottom-up) when
+		the walk from below stops.
+	================================================================ */
+	void fixHeightAndRebalance(ConcurrentNode node)
+	{
+		ConcurrentNode[] damaged = null;	// Parents of rotations
+		int nDamaged = 0;
+
+		while ( true )
+		{
+			int condition = NOTHING_REQUIRED;
+
+			if ( node != null && node.parent != null && node.version != UNLINKED )
+				condition = nodeCondition( node );
+
+			if ( condition == NOTHING_REQUIRED )
+			{
+				/* ---------------------------------------
+					This walk is done: go back to the
+					last rotation's parent (if any)
+				--------------------------------------- */
+				if ( nDamaged == 0 )
+					return;
+
+				node = damaged[--nDamaged];
+				continue;
+			}
+
+			if ( condition != UNLINK_REQUIRED && condition != REBALANCE_REQUIRED )
+			{
+				synchronized ( node )
+				{
+					node = fixHeight_nl( node );
+				}
+			}
+			else
+			{
+				ConcurrentNode nParent = node.parent;
+
+				synchronized ( nParent )
+				{
+					if ( nParent.version != UNLINKED && node.parent == nParent )
+					{
+						boolean wasLeft = ( nParent.left == node );
+
+						synchronized ( node )
+						{
+							node = rebalance_nl( nParent, node );
+						}
+
+						/* ---------------------------------------
+							Re-check nParent, the new subtree
+							root and its children later
+						--------------------------------------- */
+						ConcurrentNode sub = wasLeft ? nParent.left : nParent.right;
+
+						if ( damaged == null )
+							damaged = new ConcurrentNode[16];
+						else if ( nDamaged + 4 > damaged.length )
+							damaged = java.util.Arrays.copyOf( damaged, 2 * damaged.length );
+
+						damaged[nDamaged++] = nParent;
+
+						if ( sub != null )
+						{
+							damaged[nDamaged++] = sub;
+
+							if ( sub.left != null )
+								damaged[nDamaged++] = sub.left;
+							if ( sub.right != null )
+								damaged[nDamaged++] = sub.right;
+						}
+					}
+					// else retry with the same node
+				}
+			}
+		}
+	}
+
+	/* ================================================================
+		fixHeight_nl(node): fix node's height, return the next node
+		to look at (null = done)
+	================================================================ */
+	static ConcurrentNode fixHeight_nl(ConcurrentNode node)
+	{
+		int c = nodeCondition( node );
+
+		switch ( c )
+		{
+			case REBALANCE_REQUIRED:
+			case UNLINK_REQUIRED:
+				return node;		// Needs parent's lock too
+
+			case NOTHING_REQUIRED:
+				return null;
+
+			default:
+				node.height = c;
+				return node.parent;
+		}
+	}
+
+	/* ================================================================
+		rebalance_nl(nParent, n): unlink or rotate n
+
+		(caller holds the locks of nParent and n)
+	================================================================ */
+	ConcurrentNode rebalance_nl(ConcurrentNode nParent, ConcurrentNode n)
+	{
+		ConcurrentNode nL = n.left;
+		ConcurrentNode nR = n.right;
+
+		if ( (nL == null || nR == null) && n.value == null )
+		{
+			if ( attemptUnlink_nl( nParent, n ) )
+				return fixHeight_nl( nParent );
+			else
+				return n;		// Retry
+		}
+
+		int hN = n.height;
+		int hL0 = height( nL );
+		int hR0 = height( nR );
+		int hNRepl = 1 + Math.max( hL0, hR0 );
+		int bal = hL0 - hR0;
+
+		if ( bal > 1 )
+			return rebalanceToRight_nl( nParent, n, nL, hR0 );
+		else if ( bal < -1 )
+			return rebalanceToLeft_nl( nParent, n, nR, hL0 );
+		else if ( hNRepl != hN )
+		{
+			n.height = hNRepl;
+			return fixHeight_nl( nParent );
+		}
+		else
+			return null;
+	}
+
+	/* ================================================================
+		rebalanceToRight_nl: n is left-heavy, rotate right
+		(single or double, like tri-node configurations #1 / #2)
+	================================================================ */
+	ConcurrentNode rebalanceToRight_nl(ConcurrentNode nParent, ConcurrentNode n,
+			ConcurrentNode nL, int hR0)
+	{
+		synchronized ( nL )
+		{
+			int hL = nL.height;
+
+			if ( hL - hR0 <= 1 )
+				return n;		// Retry
+
+			ConcurrentNode nLR = nL.right;
+			int hLL0 = height( nL.left );
+			int hLR0 = height( nLR );
+
+			if ( hLL0 >= hLR0 )
+				return rotateRight_nl( nParent, n, nL, hR0, hLL0, nLR, hLR0 );
+
+			synchronized ( nLR )
+			{
+				int hLR = nLR.height;
+
+				if ( hLL0 >= hLR )
+					return rotateRight_nl( nParent, n, nL, hR0, hLL0, nLR, hLR );
+
+				return rotateRightOverLeft_nl( nParent, n, nL, hR0, hLL0, nLR,
+						height( nLR.left ) );
+			}
+		}
+	}
+
+	/* ================================================================
+		rebalanceToLeft_nl: n is right-heavy, rotate left
+		(single or double, like tri-node configurations #3 / #4)
+	================================================================ */
+	ConcurrentNode rebalanceToLeft_nl(ConcurrentNode nParent, ConcurrentNode n,
+			ConcurrentNode nR, int hL0)
+	{
+		synchronized ( nR )
+		{
+			int hR = nR.height;
+
+			if ( hL0 - hR >= -1 )
+				return n;		// Retry
+
+			ConcurrentNode nRL = nR.left;
+			int hRL0 = height( nRL );
+			int hRR0 = height( nR.right );
+
+			if ( hRR0 >= hRL0 )
+				return rotateLeft_nl( nParent, n, hL0, nR, nRL, hRL0, hRR0 );
+
+			synchronized ( nRL )
+			{
+				int hRL = nRL.height;
+
+				if ( hRR0 >= hRL )
+					return rotateLeft_nl( nParent, n, hL0, nR, nRL, hRL, hRR0 );
+
+				return rotateLeftOverRight_nl( nParent, n, hL0, nR, nRL, hRR0,
+						height( nRL.right ) );
+			}
+		}
+	}
+
+	static long beginShrink(long v)
+	{
+		return v | SHRINKING;
+	}
+
+	static long endShrink(long v)
+	{
+		return (v | SHRINKING) + SHRINK_COUNT_INCR - SHRINKING;
+	}
+
+	/* ================================================================
+		rotateRight_nl: single right rotation
+
+		      n              nL
+		     / \            /  \
+		   nL   R   ==>   LL    n
+		  /  \                 / \
+		LL   nLR             nLR  R
+	================================================================ */
+	ConcurrentNode rotateRight_nl(ConcurrentNode nParent, ConcurrentNode n,
+			ConcurrentNode nL, int hR, int hLL, ConcurrentNode nLR, int hLR)
+	{
+		long nodeV = n.version;
+		ConcurrentNode nPL = nParent.left;
+
+		n.version = beginShrink( nodeV );
+
+		n.left = nLR;
+		if ( nLR != null )
+			nLR.parent = n;
+
+		nL.right = n;
+		n.parent = nL;
+
+		if ( nPL == n )
+			nParent.left = nL;
+		else
+			nParent.right = nL;
+		nL.parent = nParent;
+
+		int hNRepl = 1 + Math.max( hLR, hR );
+		n.height = hNRepl;
+		nL.height = 1 + Math.max( hLL, hNRepl );
+
+		n.version = endShrink( nodeV );
+
+		/* ------------------------------------------
+			What should be fixed next ?
+		------------------------------------------ */
+		int balN = hLR - hR;
+		if ( balN < -1 || balN > 1 )
+			return n;
+		if ( (nLR == null || hR == 0) && n.value == null )
+			return n;
+
+		int balL = hLL - hNRepl;
+		if ( balL < -1 || balL > 1 )
+			return nL;
+		if ( hLL == 0 && nL.value == null )
+			return nL;
+
+		return fixHeight_nl( nParent );
+	}
+
+	/* ================================================================
+		rotateLeft_nl: single left rotation (mirror of rotateRight_nl)
+	================================================================ */
+	ConcurrentNode rotateLeft_nl(ConcurrentNode nParent, ConcurrentNode n,
+			int hL, ConcurrentNode nR, ConcurrentNode nRL, int hRL, int hRR)
+	{
+		long nodeV = n.version;
+		ConcurrentNode nPL = nParent.left;
+
+		n.version = beginShrink( nodeV );
+
+		n.right = nRL;
+		if ( nRL != null )
+			nRL.parent = n;
+
+		nR.left = n;
+		n.parent = nR;
+
+		if ( nPL == n )
+			nParent.left = nR;
+		else
+			nParent.right = nR;
+		nR.parent = nParent;
+
+		int hNRepl = 1 + Math.max( hL, hRL );
+		n.height = hNRepl;
+		nR.height = 1 + Math.max( hNRepl, hRR );
+
+		n.version = endShrink( nodeV );
+
+		int balN = hRL - hL;
+		if ( balN < -1 || balN > 1 )
+			return n;
+		if ( (nRL == null || hL == 0) && n.value == null )
+			return n;
+
+		int balR = hRR - hNRepl;
+		if ( balR < -1 || balR > 1 )
+			return nR;
+		if ( hRR == 0 && nR.value == null )
+			return nR;
+
+		return fixHeight_nl( nParent );
+	}
+
+	/* ================================================================
+		rotateRightOverLeft_nl: double rotation, nLR becomes the root
+
+		      n                nLR
+		     / \             /     \
+		   nL   R   ==>    nL       n
+		  /  \            /  \     /  \
+		LL   nLR        LL  LRL  LRR   R
+		     /  \
+		   LRL  LRR
+	================================================================ */
+	ConcurrentNode rotateRightOverLeft_nl(ConcurrentNode nParent, ConcurrentNode n,
+			ConcurrentNode nL, int hR, int hLL, ConcurrentNode nLR, int hLRL)
+	{
+		long nodeV = n.version;
+		long leftV = nL.version;
+		ConcurrentNode nPL = nParent.left;
+		ConcurrentNode nLRL = nLR.left;
+		ConcurrentNode nLRR = nLR.right;
+		int hLRR = height( nLRR );
+
+		n.version = beginShrink( nodeV );
+		nL.version = beginShrink( leftV );
+
+		n.left = nLRR;
+		if ( nLRR != null )
+			nLRR.parent = n;
+
+		nL.right = nLRL;
+		if ( nLRL != null )
+			nLRL.parent = nL;
+
+		nLR.left = nL;
+		nL.parent = nLR;
+		nLR.right = n;
+		n.parent = nLR;
+
+		if ( nPL == n )
+			nParent.left = nLR;
+		else
+			nParent.right = nLR;
+		nLR.parent = nParent;
+
+		int hNRepl = 1 + Math.max( hLRR, hR );
+		n.height = hNRepl;
+		int hLRepl = 1 + Math.max( hLL, hLRL );
+		nL.height = hLRepl;
+		nLR.height = 1 + Math.max( hLRepl, hNRepl );
+
+		n.version = endShrink( nodeV );
+		nL.version = endShrink( leftV );
+
+		int balN = hLRR - hR;
+		if ( balN < -1 || balN > 1 )
+			return n;
+		if ( (nLRR == null || hR == 0) && n.value == null )
+			return n;
+
+		int balL = hLL - hLRL;
+		if ( balL < -1 || balL > 1 )
+			return nL;
+		if ( (hLL == 0 || hLRL == 0) && nL.value == null )
+			return nL;
+
+		int balLR = hLRepl - hNRepl;
+		if ( balLR < -1 || balLR > 1 )
+			return nLR;
+
+		return fixHeight_nl( nParent );
+	}
+
+	/* ================================================================
+		rotateLeftOverRight_nl: mirror of rotateRightOverLeft_nl
+	================================================================ */
+	ConcurrentNode rotateLeftOverRight_nl(ConcurrentNode nParent, ConcurrentNode n,
+			int hL, ConcurrentNode nR, ConcurrentNode nRL, int hRR, int hRLR)
+	{
+		long nodeV = n.version;
+		long rightV = nR.version;
+		ConcurrentNode nPL = nParent.left;
+		ConcurrentNode nRLL = nRL.left;
+		ConcurrentNode nRLR = nRL.right;
+		int hRLL = height( nRLL );
+
+		n.version = beginShrink( nodeV );
+		nR.version = beginShrink( rightV );
+
+		n.right = nRLL;
+		if ( nRLL != null )
+			nRLL.parent = n;
+
+		nR.left = nRLR;
+		if ( nRLR != null )
+			nRLR.parent = nR;
+
+		nRL.right = nR;
+		nR.parent = nRL;
+		nRL.left = n;
+		n.parent = nRL;
+
+		if ( nPL == n )
+			nParent.left = nRL;
+		else
+			nParent.right = nRL;
+		nRL.parent = nParent;
+
+		int hNRepl = 1 + Math.max( hL, hRLL );
+		n.height = hNRepl;
+		int hRRepl = 1 + Math.max( hRLR, hRR );
+		nR.height = hRRepl;
+		nRL.height = 1 + Math.max( hNRepl, hRRepl );
+
+		n.version = endShrink( nodeV );
+		nR.version = endShrink( rightV );
+
+		int balN = hRLL - hL;
+		if ( balN < -1 || balN > 1 )
+			return n;
+		if ( (nRLL == null || hL == 0) && n.value == null )
+			return n;
+
+		int balR = hRR - hRLR;
+		if ( balR < -1 || balR > 1 )
+			return nR;
+		if ( (hRR == 0 || hRLR == 0) && nR.value == null )
+			return nR;
+
+		int balRL = hRRepl - hNRepl;
+		if ( balRL < -1 || balRL > 1 )
+			return nRL;
+
+		return fixHeight_nl( nParent );
+	}
+}
@@ -0,0 +1,48 @@
+/* =================================================================
+   ConcurrentNode: Node structure of ConcurrentAvlMap
+
+   version = change counter, read by get() to validate what it saw:
+
+	SHRINKING bit : a rotation is moving this node DOWN right now
+	UNLINKED      : this node was removed from the tree
+
+   value == null means "no value": the node only routes searches
+   (a removed key whose node still has 2 children).
+   ================================================================= */
+
+class ConcurrentNode
+{
+	public final String key;
+	public volatile Integer value;
+	public volatile int height;
+	public volatile long version;
+
+	public volatile ConcurrentNode parent;
+	public volatile ConcurrentNode left;
+	public volatile ConcurrentNode right;
+
+	public ConcurrentNode(String k, Integer v, ConcurrentNode p)
+	{
+		key = k;
+		value = v;
+		height = 1;
+		version = 0;
+
+		parent = p;
+		left = null;
+		right = null;
+	}
+
+	ConcurrentNode child(int dir)
+	{
+		return (dir < 0) ? left : right;
+	}
+
+	void setChild(int dir, ConcurrentNode c)
+	{
+		if ( dir < 0 )
+			left = c;
+		else
+			right = c;
+	}
+}
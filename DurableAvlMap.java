@@ -0,0 +1,668 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.*;
+import java.util.zip.*;
+
+/* ================================================================
+   DurableAvlMap: ADT_BY_AVL that survives a restart
+
+   Files (in directory "dir"):
+
+	wal         write-ahead log: every put/remove, appended
+	checkpoint  all (k,v) pairs in key order, at some moment
+		    (an AvlSnapshot file; older "AVLCKP01" files are
+		    still read, see readCheckpoint)
+
+   The map = the checkpoint + all operations in the wal.
+
+   WAL format:
+
+	"AVLWAL01"		8 byte magic
+	1 frame per write:
+	   int     length	length of the records (in bytes)
+	   int     crc		CRC32C of the records
+	   records, 1 per operation:
+	      byte    code	1 = put, 3 = remove
+	      varint  length	length of the key (in bytes)
+	      bytes   key	UTF-8
+	      int     value	big-endian (put only)
+
+   (the records are the same as in a Batch_ADT_AVL binary log)
+
+   The pairs are kept in a PersistentAvlMap: a put/remove makes a
+   new version (O(log n) new nodes), and the old version is a
+   snapshot that costs nothing to keep. get/size/rangeScan read
+   the current version without a lock.
+
+   Group commit: put/remove change the map and add their record
+   to a buffer, nothing more. commit() writes the buffer as 1 frame
+   and forces it to disk (fsync). When several threads commit at
+   the same time, 1 fsync covers all of them: a thread whose
+   operation was in the frame just forced returns at once.
+
+   Checkpoint: the current version is taken (O(1), under the
+   lock) and written in key order to a new file (without the
+   lock), which then replaces the old checkpoint; the wal then
+   keeps only the operations after that version. It happens by
+   itself, after a commit, when the wal gets bigger than
+   checkpointBytes: put/remove and commit go on while it runs.
+
+   Recovery: the checkpoint is loaded in O(n) (AvlSnapshot.load),
+   then the wal is replayed on it. A torn frame at the end of the
+   wal (a crash during a write) is cut off. Replaying a wal whose
+   operations are already in the checkpoint (a crash during a
+   checkpoint) does no harm: the checkpoint never has operations
+   the wal does not have, so the replay ends in the same state.
+
+   Values cannot be null (the wal has no code for it).
+   ================================================================ */
+
+class DurableAvlMap implements Closeable
+{
+	static final byte[] WAL_MAGIC = "AVLWAL01".getBytes( StandardCharsets.US_ASCII );
+	static final byte[] OLD_CKP_MAGIC = "AVLCKP01".getBytes( StandardCharsets.US_ASCII );
+
+	static final int PUT = 1;
+	static final int REMOVE = 3;
+
+	static final int BUF_SIZE = 1 << 16;
+
+	public final Path dir;
+	private volatile PersistentAvlMap tree;	// Changed under this (put/remove only), read without
+
+	public long checkpointBytes = 64L << 20;	// wal size that starts a checkpoint
+	public int autoCommitBytes = 1 << 20;		// Buffered bytes that start a commit
+
+	public long recoveredOps;	// Operations replayed from the wal when opened
+
+	FileChannel wal;
+	long walSize;			// Bytes in the wal file (guarded by syncLock)
+	boolean checkpointing;		// An automatic checkpoint is running (guarded by syncLock)
+
+	byte[] buf = new byte[BUF_SIZE];	// Records not written yet (guarded by this)
+	int n;
+	byte[] spare = new byte[BUF_SIZE];	// The other buffer (being written)
+	long lastOp;			// Number of the last operation in buf (guarded by this)
+
+	volatile long durableOp;	// All operations <= durableOp are on disk
+
+	final Object syncLock = new Object();	// Held while writing the wal
+	final Object checkpointLock = new Object();	// Held during a checkpoint (taken before syncLock)
+
+	/* ================================================================
+		DurableAvlMap(dir): open (or create) the map in dir, and
+		recover its contents
+	================================================================ */
+	public DurableAvlMap(String dir) throws IOException
+	{
+		this.dir = Paths.get( dir );
+		Files.createDirectories( this.dir );
+
+		tree = readCheckpoint( this.dir.resolve( "checkpoint" ) );
+
+		wal = FileChannel.open( this.dir.resolve( "wal" ), StandardOpenOption.CREATE,
+					StandardOpenOption.READ, StandardOpenOption.WRITE );
+		walSize = replayWal();
+		wal.position( walSize );
+	}
+
+	/* ================================================================
+		get(k): find key k and return assoc. value
+	================================================================ */
+	public Integer get(String k)
+	{
+		return tree.get( k );
+	}
+
+	public boolean containsKey(String k)
+	{
+		return tree.get( k ) != null;		// Values are never null
+	}
+
+	public int size()
+	{
+		return tree.size();
+	}
+
+	/* ================================================================
+		rangeScan(from, to, action): action(k, v) for every pair
+		with from <= k < to, in key order (null = no limit)
+
+		Scans the current version, without a lock: action may
+		call this map, and put/remove do not wait for it (nor
+		does action see their changes).
+	================================================================ */
+	public void rangeScan(String from, String to, BiConsumer<String,Integer> action)
+	{
+		tree.rangeScan( from, to, action );
+	}
+
+	public void forEach(BiConsumer<String,Integer> action)
+	{
+		rangeScan( null, null, action );
+	}
+
+	/* ================================================================
+		put(k, v): store (k,v), and log it
+
+		Return: the number of the operation (see commit(op)).
+		It is on disk only after a commit.
+	================================================================ */
+	public long put(String k, Integer v) throws IOException
+	{
+		Objects.requireNonNull( v, "value" );
+
+		long op;
+		boolean full;
+
+		synchronized ( this )
+		{
+			tree = tree.put( k, v );
+			op = append( PUT, k, v );
+			full = ( n >= autoCommitBytes );
+		}
+
+		if ( full )
+			commit( op );
+
+		return op;
+	}
+
+	/* ================================================================
+		remove(k): delete key k, and log it (see put)
+	================================================================ */
+	public long remove(String k) throws IOException
+	{
+		long op;
+		boolean full;
+
+		synchronized ( this )
+		{
+			tree = tree.remove( k );
+			op = append( REMOVE, k, 0 );
+			full = ( n >= autoCommitBytes );
+		}
+
+		if ( full )
+			commit( op );
+
+		return op;
+	}
+
+	/* ================================================================
+		append(code, k, v): add 1 record to buf (caller holds this)
+	================================================================ */
+	long append(int code, String k, int v)
+	{
+		byte[] kb = k.getBytes( StandardCharsets.UTF_8 );
+
+		if ( n + kb.length + 10 > buf.length )
+			buf = Arrays.copyOf( buf, Math.max( 2 * buf.length, n + kb.length + 10 ) );
+
+		buf[n++] = (byte) code;
+
+		int len = kb.length;
+
+		while ( (len & ~0x7f) != 0 )
+		{
+			buf[n++] = (byte) ((len & 0x7f) | 0x80);
+			len >>>= 7;
+		}
+
+		buf[n++] = (byte) len;
+
+		System.arraycopy( kb, 0, buf, n, kb.length );
+		n += kb.length;
+
+		if ( code == PUT )
+		{
+			buf[n++] = (byte) (v >>> 24);
+			buf[n++] = (byte) (v >>> 16);
+			buf[n++] = (byte) (v >>> 8);
+			buf[n++] = (byte) v;
+		}
+
+		return ++lastOp;
+	}
+
+	/* ================================================================
+		commit(): make every operation so far durable
+		commit(op): make operation op (and all before it) durable
+
+		The thread that gets syncLock writes everything buffered
+		so far (also the operations of other threads) and forces
+		it. Threads waiting meanwhile find their operation already
+		durable and return without a write of their own.
+
+		When the wal has grown past checkpointBytes, the thread
+		that forced it then runs the checkpoint, after syncLock is
+		released (other commits do not wait for it).
+	================================================================ */
+	public void commit() throws IOException
+	{
+		long op;
+
+		synchronized ( this )
+		{
+			op = lastOp;
+		}
+
+		commit( op );
+	}
+
+	public void commit(long op) throws IOException
+	{
+		if ( durableOp >= op )
+			return;
+
+		boolean full = false;
+
+		synchronized ( syncLock )
+		{
+			if ( durableOp >= op )
+				return;			// Forced by another thread
+
+			byte[] out;
+			int len;
+			long upTo;
+
+			/* --------------------------------------------
+				Swap the buffers: put/remove can go on
+				while this one is written
+			-------------------------------------------- */
+			synchronized ( this )
+			{
+				out = buf;
+				len = n;
+				upTo = lastOp;
+
+				buf = spare;
+				n = 0;
+				spare = out;
+			}
+
+			if ( len > 0 )
+				writeFrame( out, len );
+
+			wal.force( false );
+			durableOp = upTo;
+
+			if ( walSize >= checkpointBytes && ! checkpointing )
+			{
+				checkpointing = true;
+				full = true;
+			}
+		}
+
+		if ( full )
+		{
+			try
+			{
+				checkpoint();
+			}
+			finally
+			{
+				synchronized ( syncLock )
+				{
+					checkpointing = false;
+				}
+			}
+		}
+	}
+
+	/* ================================================================
+		writeFrame(b, len): append b[0..len-1] to the wal as 1 frame
+		(caller holds syncLock)
+	================================================================ */
+	void writeFrame(byte[] b, int len) throws IOException
+	{
+		CRC32C crc = new CRC32C();
+		crc.update( b, 0, len );
+
+		ByteBuffer head = ByteBuffer.allocate( 8 );
+		head.putInt( len ).putInt( (int) crc.getValue() ).flip();
+
+		ByteBuffer[] frame = { head, ByteBuffer.wrap( b, 0, len ) };
+
+		while ( frame[1].hasRemaining() )
+			wal.write( frame );
+
+		walSize += 8 + len;
+	}
+
+	/* ================================================================
+		checkpoint(): write the whole map to the checkpoint file,
+		and drop the operations it has from the wal
+
+		1. Under syncLock and this: take the current version and
+		   buf (the operations not in the wal yet), at the same
+		   moment (O(1)). Write buf to the wal and force it: the
+		   wal now has every operation in the version, and they
+		   end at offset mark.
+		2. Without locks: write the version to checkpoint.tmp and
+		   rename it. put/remove/commit go on meanwhile, and
+		   append to the wal after mark.
+		3. Under syncLock: copy the wal after mark into wal.tmp
+		   (what the checkpoint does not have) and rename it to
+		   wal.
+
+		The wal never has fewer operations than the checkpoint:
+		a crash between 2 and 3 replays operations that are all
+		in the checkpoint already, in their order, which ends in
+		the same state.
+	================================================================ */
+	public void checkpoint() throws IOException
+	{
+		synchronized ( checkpointLock )
+		{
+			PersistentAvlMap snap;
+			long mark;
+
+			synchronized ( syncLock )
+			{
+				byte[] out;
+				int len;
+				long upTo;
+
+				synchronized ( this )
+				{
+					snap = tree;
+
+					out = buf;
+					len = n;
+					upTo = lastOp;
+
+					buf = spare;
+					n = 0;
+					spare = out;
+				}
+
+				if ( len > 0 )
+					writeFrame( out, len );
+
+				wal.force( false );
+				durableOp = upTo;
+				mark = walSize;
+			}
+
+			Path tmp = dir.resolve( "checkpoint.tmp" );
+
+			AvlSnapshot.write( snap, tmp.toString() );
+			Files.move( tmp, dir.resolve( "checkpoint" ),
+				    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+			forceDir();
+
+			synchronized ( syncLock )
+			{
+				dropWal( mark );
+			}
+		}
+	}
+
+	/* ---------------------------------------
+		dropWal(mark): the wal without its
+		frames before offset mark (caller
+		holds syncLock)
+	--------------------------------------- */
+	void dropWal(long mark) throws IOException
+	{
+		long tail = walSize - mark;
+
+		if ( tail == 0 )
+		{
+			wal.truncate( WAL_MAGIC.length );
+			wal.position( WAL_MAGIC.length );
+			wal.force( false );
+			walSize = WAL_MAGIC.length;
+			return;
+		}
+
+		Path tmp = dir.resolve( "wal.tmp" );
+
+		try ( FileChannel w = FileChannel.open( tmp, StandardOpenOption.CREATE,
+					StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE ) )
+		{
+			w.write( ByteBuffer.wrap( WAL_MAGIC ) );
+
+			for ( long done = 0; done < tail; )
+				done += wal.transferTo( mark + done, tail - done, w );
+
+			w.force( false );
+		}
+
+		Files.move( tmp, dir.resolve( "wal" ),
+			    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+		forceDir();
+
+		wal.close();
+		wal = FileChannel.open( dir.resolve( "wal" ), StandardOpenOption.READ, StandardOpenOption.WRITE );
+		walSize = WAL_MAGIC.length + tail;
+		wal.position( walSize );
+	}
+
+	/* ---------------------------------------
+		forceDir(): make the rename durable
+		(not possible on every OS: then the
+		OS does it in its own time)
+	--------------------------------------- */
+	void forceDir()
+	{
+		try ( FileChannel d = FileChannel.open( dir, StandardOpenOption.READ ) )
+		{
+			d.force( true );
+		}
+		catch ( IOException e )
+		{
+		}
+	}
+
+	/* ================================================================
+		readCheckpoint(p): the map in checkpoint p, built in O(n)
+		(empty map if there is no checkpoint yet)
+
+		Checkpoints written before AvlSnapshot was used start with
+		"AVLCKP01" (see readOldCheckpoint) and are still read. The
+		next checkpoint replaces them with an AvlSnapshot file.
+	================================================================ */
+	static PersistentAvlMap readCheckpoint(Path p) throws IOException
+	{
+		if ( ! Files.exists( p ) )
+			return PersistentAvlMap.EMPTY;
+
+		byte[] magic = new byte[OLD_CKP_MAGIC.length];
+
+		try ( InputStream f = Files.newInputStream( p ) )
+		{
+			int got = f.readNBytes( magic, 0, magic.length );
+
+			if ( got == magic.length && Arrays.equals( magic, OLD_CKP_MAGIC ) )
+				return readOldCheckpoint( p );
+		}
+
+		return AvlSnapshot.loadPersistent( p.toString() );
+	}
+
+	/* ================================================================
+		readOldCheckpoint(p): the map in an "AVLCKP01" checkpoint
+
+		   "AVLCKP01"   8 byte magic
+		   int          number of pairs
+		   per pair:    varint key length, UTF-8 key, int value
+		   int          CRC32C of the pairs
+	================================================================ */
+	static PersistentAvlMap readOldCheckpoint(Path p) throws IOException
+	{
+		try ( InputStream f = Files.newInputStream( p ) )
+		{
+			DataInputStream in = new DataInputStream( new BufferedInputStream( f, BUF_SIZE ) );
+
+			in.readFully( new byte[OLD_CKP_MAGIC.length] );
+
+			int count = in.readInt();
+
+			if ( count < 0 )
+				throw new IOException( p + ": bad count " + count );
+
+			CRC32C crc = new CRC32C();
+			DataInputStream body = new DataInputStream( new CheckedInputStream( in, crc ) );
+
+			String[] keys = new String[count];
+			Integer[] vals = new Integer[count];
+			byte[] kb = new byte[64];
+
+			for ( int i = 0; i < count; i++ )
+			{
+				int len = readVarint( body );
+
+				if ( kb.length < len )
+					kb = new byte[Math.max( len, 2 * kb.length )];
+
+				body.readFully( kb, 0, len );
+				keys[i] = new String( kb, 0, len, StandardCharsets.UTF_8 );
+				vals[i] = body.readInt();
+			}
+
+			if ( in.readInt() != (int) crc.getValue() )
+				throw new IOException( p + ": bad checksum" );
+
+			return PersistentAvlMap.fromSorted( keys, vals, count );
+		}
+	}
+
+	static int readVarint(DataInputStream in) throws IOException
+	{
+		int v = 0;
+
+		for ( int shift = 0; shift < 32; shift += 7 )
+		{
+			int x = in.readUnsignedByte();
+
+			v |= (x & 0x7f) << shift;
+
+			if ( x < 0x80 )
+				return v;
+		}
+
+		throw new IOException( "Bad varint" );
+	}
+
+	/* ================================================================
+		replayWal(): apply the operations in the wal to the map,
+		cut off a torn frame at the end
+
+		Return: size of the good part of the wal
+	================================================================ */
+	long replayWal() throws IOException
+	{
+		long size = wal.size();
+
+		if ( size < WAL_MAGIC.length )
+		{
+			/* --------------------------------------------
+				New (or torn while being created) wal
+			-------------------------------------------- */
+			wal.truncate( 0 );
+			wal.write( ByteBuffer.wrap( WAL_MAGIC ), 0 );
+			wal.force( false );
+			return WAL_MAGIC.length;
+		}
+
+		DataInputStream in = new DataInputStream( new BufferedInputStream(
+						Channels.newInputStream( wal.position( 0 ) ), BUF_SIZE ) );
+
+		byte[] magic = new byte[WAL_MAGIC.length];
+		in.readFully( magic );
+
+		if ( ! Arrays.equals( magic, WAL_MAGIC ) )
+			throw new IOException( dir + "/wal: not a wal" );
+
+		long good = WAL_MAGIC.length;
+		byte[] b = new byte[BUF_SIZE];
+
+		while ( good + 8 <= size )
+		{
+			int len = in.readInt();
+			int sum = in.readInt();
+
+			if ( len < 0 || good + 8 + len > size )
+				break;				// Torn frame
+
+			if ( b.length < len )
+				b = new byte[len];
+
+			in.readFully( b, 0, len );
+
+			CRC32C crc = new CRC32C();
+			crc.update( b, 0, len );
+
+			if ( (int) crc.getValue() != sum )
+				break;				// Torn frame
+
+			replayFrame( b, len );
+			good += 8 + len;
+		}
+
+		if ( good < size )
+		{
+			wal.truncate( good );
+			wal.force( false );
+		}
+
+		return good;
+	}
+
+	/* ---------------------------------------
+		replayFrame(b, len): the records of 1 frame
+	--------------------------------------- */
+	void replayFrame(byte[] b, int len) throws IOException
+	{
+		int i = 0;
+
+		while ( i < len )
+		{
+			int code = b[i++];
+			int klen = 0;
+
+			for ( int shift = 0; ; shift += 7 )
+			{
+				int x = b[i++] & 0xff;
+
+				klen |= (x & 0x7f) << shift;
+
+				if ( x < 0x80 )
+					break;
+			}
+
+			String k = new String( b, i, klen, StandardCharsets.UTF_8 );
+			i += klen;
+
+			if ( code == PUT )
+			{
+				int v = ((b[i] & 0xff) << 24) | ((b[i+1] & 0xff) << 16)
+					| ((b[i+2] & 0xff) << 8) | (b[i+3] & 0xff);
+				i += 4;
+
+				tree = tree.put( k, v );
+			}
+			else if ( code == REMOVE )
+				tree = tree.remove( k );
+			else
+				throw new IOException( dir + "/wal: bad code " + code );
+
+			recoveredOps++;
+		}
+	}
+
+	/* ================================================================
+		close(): commit, and close the wal
+	================================================================ */
+	public void close() throws IOException
+	{
+		commit();
+		wal.close();
+	}
+}
@@ -0,0 +1,303 @@
+import java.util.function.*;
+
+/* ================================================================
+   FrozenAvlMap: read-only copy of an ADT_BY_AVL in flat arrays
+
+   Made by ADT_BY_AVL.freeze(). The n keys are stored in Eytzinger
+   (BFS) order, 1-based: the root in slot 1, the children of slot
+   i in slots 2i and 2i+1. So the top levels of the search, which
+   every lookup visits, are next to each other in memory, and the
+   next levels are always at the same place relative to the
+   current one. There are no Node objects and no pointers:
+
+	pre[i]	packed prefix of keys[i] (see pack()), a long
+	keys[i]	the key
+	vals[i]	its value
+
+   A lookup walks down pre[] (8 prefixes per cache line) and only
+   reads keys[i] (a String elsewhere on the heap) when the
+   prefixes are equal. The prefix is taken AFTER the part all keys
+   have in common (e.g. "user/" in "user/000123"), where keys
+   start to differ, and packs 8 chars of 8 bits (4 of 16 bits if a
+   key has chars > 0xFF there).
+
+   The search is branch-free in the sense of Eytzinger search: it
+   always goes down to a leaf (no "found" exit), each level is
+   i = 2i + (keys[i] < k), and the answer is decoded from the
+   final i. The only data dependent branch is "prefixes equal?",
+   which for most levels is predictably "no".
+
+   Immutable: later changes of the ADT_BY_AVL are not seen.
+   ================================================================ */
+
+class FrozenAvlMap
+{
+	final int n;			// Number of pairs
+	final long[] pre;		// pre[1..n], sign flipped (see pack)
+	final String[] keys;		// keys[1..n]
+	final Integer[] vals;		// vals[1..n]
+
+	final String common;		// Prefix of all keys
+	final int bits;			// Bits per char in pre[]: 8 or 16
+	final int chars;		// Chars per pre[]: 8 or 4
+	final int maxChar;		// Largest char that fits in bits
+
+	/* ================================================================
+		FrozenAvlMap(t): copy of BST t, O(n)
+
+		Walks t in key order (successor()) and, at the same
+		time, the Eytzinger slots in key order (next()).
+	================================================================ */
+	FrozenAvlMap(ADT_BY_AVL t)
+	{
+		n = ADT_BY_AVL.size( t.root );
+		pre = new long[n + 1];
+		keys = new String[n + 1];
+		vals = new Integer[n + 1];
+
+		Node lo = ADT_BY_AVL.first( t.root );
+		Node hi = ADT_BY_AVL.last( t.root );
+
+		common = ( n == 0 ) ? "" : commonPrefix( lo.key, hi.key );
+
+		/* -------------------------------------------
+			8 bit chars if they all fit
+		------------------------------------------- */
+		boolean narrow = true;
+
+		for ( Node x = lo; x != null && narrow; x = ADT_BY_AVL.successor( x ) )
+		{
+			int end = Math.min( x.key.length(), common.length() + 8 );
+
+			for ( int j = common.length(); j < end; j++ )
+				if ( x.key.charAt( j ) > 0xFF )
+				{
+					narrow = false;
+					break;
+				}
+		}
+
+		bits = narrow ? 8 : 16;
+		chars = 64 / bits;
+		maxChar = (1 << bits) - 1;
+
+		int i = first();
+
+		for ( Node x = lo; x != null; x = ADT_BY_AVL.successor( x ) )
+		{
+			keys[i] = x.key;
+			vals[i] = x.value;
+			pre[i] = pack( x.key );
+			i = next( i );
+		}
+	}
+
+	/* ---------------------------------------
+		commonPrefix(a, b): longest common
+		prefix. a, b = smallest and largest
+		key, so it is common to all keys
+	--------------------------------------- */
+	static String commonPrefix(String a, String b)
+	{
+		int m = Math.min( a.length(), b.length() );
+		int j = 0;
+
+		while ( j < m && a.charAt( j ) == b.charAt( j ) )
+			j++;
+
+		return a.substring( 0, j );
+	}
+
+	/* ================================================================
+		pack(k): the "chars" chars of k after common, packed in a
+		long (missing chars are 0), with the sign bit flipped
+
+		Like ADT_BY_AVL.keyPrefix, but flipped so that signed <
+		on 2 packed keys orders them like the Strings (unsigned
+		compare), unless they are equal. A char of k too big for
+		"bits" sets all bits from there on: k then packs >= every
+		key it is bigger than, and the String compare decides.
+	================================================================ */
+	long pack(String k)
+	{
+		long p = 0;
+		int end = Math.min( k.length(), common.length() + chars );
+		int s = 64 - bits;
+
+		for ( int j = common.length(); j < end; j++, s -= bits )
+		{
+			int c = k.charAt( j );
+
+			if ( c > maxChar )
+				return (p | (-1L >>> (64 - s - bits))) ^ Long.MIN_VALUE;
+
+			p |= (long) c << s;
+		}
+
+		return p ^ Long.MIN_VALUE;
+	}
+
+	public int size()
+	{
+		return n;
+	}
+
+	/* ================================================================
+		ceilingSlot(k): slot of the smallest key >= k (0 = none)
+
+		Keys that do not start with common are smaller or bigger
+		than all keys. Else the search goes down to a leaf:
+		right (2i+1) if keys[i] < k, left (2i) if not. The
+		trailing 1 bits of the final i are the right turns after
+		the last left turn, at the key we want: shift them out,
+		and that last left turn too.
+	================================================================ */
+	int ceilingSlot(String k)
+	{
+		if ( ! k.startsWith( common ) )
+			return ( k.compareTo( common ) < 0 ) ? first() : 0;
+
+		long kp = pack( k );
+		int i = 1;
+
+		while ( i <= n )
+		{
+			long p = pre[i];
+			boolean less = ( p != kp ) ? p < kp : keys[i].compareTo( k ) < 0;
+
+			i = (i << 1) | ( less ? 1 : 0 );
+		}
+
+		return i >>> (Integer.numberOfTrailingZeros( ~i ) + 1);
+	}
+
+	/* ================================================================
+		get(k), containsKey(k): as in ADT_BY_AVL
+	================================================================ */
+	public Integer get(String k)
+	{
+		int i = ceilingSlot( k );
+
+		return ( i != 0 && keys[i].equals( k ) ) ? vals[i] : null;
+	}
+
+	public boolean containsKey(String k)
+	{
+		int i = ceilingSlot( k );
+
+		return i != 0 && keys[i].equals( k );
+	}
+
+	/* ================================================================
+		ceilingKey(k), floorKey(k): smallest key >= k, largest
+		key <= k (null if there is none)
+		firstKey(), lastKey(): smallest, largest key
+	================================================================ */
+	public String ceilingKey(String k)
+	{
+		int i = ceilingSlot( k );
+
+		return ( i == 0 ) ? null : keys[i];
+	}
+
+	public String floorKey(String k)
+	{
+		int i = ceilingSlot( k );
+
+		if ( i != 0 && keys[i].equals( k ) )
+			return k;
+
+		i = ( i == 0 ) ? last() : prev( i );
+		return ( i == 0 ) ? null : keys[i];
+	}
+
+	public String firstKey()
+	{
+		return ( n == 0 ) ? null : keys[first()];
+	}
+
+	public String lastKey()
+	{
+		return ( n == 0 ) ? null : keys[last()];
+	}
+
+	/* ================================================================
+		rangeScan(from, to, action): action(k, v) for every pair
+		with from <= k < to, in key order (null = no limit), as
+		in ADT_BY_AVL
+	================================================================ */
+	public void rangeScan(String from, String to, BiConsumer<String,Integer> action)
+	{
+		int i = ( from == null ) ? first() : ceilingSlot( from );
+
+		while ( i != 0 && ( to == null || keys[i].compareTo( to ) < 0 ) )
+		{
+			action.accept( keys[i], vals[i] );
+			i = next( i );
+		}
+	}
+
+	public void forEach(BiConsumer<String,Integer> action)
+	{
+		rangeScan( null, null, action );
+	}
+
+	/* ================================================================
+		first(), last(): slot of the smallest (largest) key
+		next(i), prev(i): next (previous) slot in key order
+
+		0 = none. Like successor()/predecessor() in ADT_BY_AVL,
+		with 2i, 2i+1 for the children and i/2 for the parent:
+		going up while coming from a right (left) child is
+		shifting out the trailing 1 (0) bits of i.
+	================================================================ */
+	int first()
+	{
+		int i = ( n == 0 ) ? 0 : 1;
+
+		while ( i != 0 && i <= n >>> 1 )
+			i = i << 1;
+
+		return i;
+	}
+
+	int last()
+	{
+		int i = ( n == 0 ) ? 0 : 1;
+
+		while ( i != 0 && i <= (n - 1) >>> 1 )
+			i = (i << 1) | 1;
+
+		return i;
+	}
+
+	int next(int i)
+	{
+		if ( i <= (n - 1) >>> 1 )		// Has a right child
+		{
+			i = (i << 1) | 1;
+
+			while ( i <= n >>> 1 )
+				i = i << 1;
+
+			return i;
+		}
+
+		return i >>> (Integer.numberOfTrailingZeros( ~i ) + 1);
+	}
+
+	int prev(int i)
+	{
+		if ( i <= n >>> 1 )			// Has a left child
+		{
+			i = i << 1;
+
+			while ( i <= (n - 1) >>> 1 )
+				i = (i << 1) | 1;
+
+			return i;
+		}
+
+		return i >>> (Integer.numberOfTrailingZeros( i ) + 1);
+	}
+}
@@ -0,0 +1,76 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+
+/* ================================================================
+   Gen_LongIntAvlMap: writes LongIntAvlMap.java and LongIntNode.java
+   from IntAvlMap.java and IntNode.java
+
+   The 2 maps differ only in the key type, so LongIntAvlMap is not
+   edited by hand: a fix goes into IntAvlMap.java (or IntNode.java),
+   and this program makes the long version of it. It replaces
+
+	IntNode, IntAvlMap	by LongIntNode, LongIntAvlMap
+	int key, int k		by long key, long k  (the key type)
+	int key(s) in comments	by long key(s)
+
+   and the paragraph about this generator in the class comment by
+   a "do not edit" note.
+
+   Run:   java Gen_LongIntAvlMap [directory]
+	  (default: the current directory)
+   ================================================================ */
+
+public class Gen_LongIntAvlMap
+{
+	static final String NOTE_IN =
+		  "   LongIntAvlMap is this class with long keys. Java generics cannot\n"
+		+ "   take a primitive key type (a generic map would box every key),\n"
+		+ "   so it is a copy, made by Gen_LongIntAvlMap from this file:\n"
+		+ "   change this file only, then run \"java Gen_LongIntAvlMap\".\n";
+
+	static final String NOTE_OUT =
+		  "   GENERATED from IntAvlMap.java by Gen_LongIntAvlMap: do not\n"
+		+ "   edit, change IntAvlMap.java and run \"java Gen_LongIntAvlMap\".\n";
+
+	static final String NODE_NOTE_IN =
+		  "   LongIntNode is this class with long keys, made by\n"
+		+ "   Gen_LongIntAvlMap from this file.\n";
+
+	static final String NODE_NOTE_OUT =
+		  "   GENERATED from IntNode.java by Gen_LongIntAvlMap: do not\n"
+		+ "   edit, change IntNode.java and run \"java Gen_LongIntAvlMap\".\n";
+
+	public static void main(String[] args) throws IOException
+	{
+		Path dir = Paths.get( (args.length > 0) ? args[0] : "." );
+
+		System.out.println( "wrote " + generate( dir, "IntNode", NODE_NOTE_IN, NODE_NOTE_OUT ) );
+		System.out.println( "wrote " + generate( dir, "IntAvlMap", NOTE_IN, NOTE_OUT ) );
+	}
+
+	/* ---------------------------------------
+		generate(dir, name, in, out): write
+		dir/Long<name>.java from
+		dir/<name>.java, note in becomes out
+		Return: the file written
+	--------------------------------------- */
+	static Path generate(Path dir, String name, String in, String out) throws IOException
+	{
+		String s = new String( Files.readAllBytes( dir.resolve( name + ".java" ) ),
+				       StandardCharsets.UTF_8 );
+
+		if ( ! s.contains( in ) )
+			throw new IOException( name + ".java: generator note not found" );
+
+		s = s.replaceAll( "\\bInt(Node|AvlMap)\\b", "LongInt$1" );
+		s = s.replaceAll( "\\bint (key|k)\\b", "long $1" );
+		s = s.replaceAll( "\\bint (keys?) and\\b", "long $1 and" );
+		s = s.replace( in, out );		// After: out names the int file
+
+		Path p = dir.resolve( "Long" + name + ".java" );
+
+		Files.write( p, s.getBytes( StandardCharsets.UTF_8 ) );
+		return p;
+	}
+}
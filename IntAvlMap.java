@@ -0,0 +1,373 @@
+/* ================================================================
+   IntAvlMap: ADT_BY_AVL specialized for int keys and int values
+
+   Same put/get/remove and tri-node restructuring as ADT_BY_AVL,
+   but nothing is boxed: lookups never allocate.
+
+   get(k) returns "missingValue" when k is not in the map,
+   use containsKey(k) when that value is also a legal value.
+
+   LongIntAvlMap is this class with long keys. Java generics cannot
+   take a primitive key type (a generic map would box every key),
+   so it is a copy, made by Gen_LongIntAvlMap from this file:
+   change this file only, then run "java Gen_LongIntAvlMap".
+   ================================================================ */
+
+class IntAvlMap
+{
+	public IntNode root;		// References the root node of the BST
+
+	public int missingValue;	// Returned by get(k) if k is not found
+
+	public IntAvlMap()
+	{
+		this( 0 );
+	}
+
+	public IntAvlMap(int missing)
+	{
+		root = null;
+		missingValue = missing;
+	}
+
+	/* ================================================================
+		findNode(k): find node with key k
+
+		Return:  reference to (k,v) IF k is in BST
+			reference to parent(k,v) IF k is NOT in BST (for put)
+			null IF the BST is empty
+	================================================================ */
+	public IntNode findNode(int k)
+	{
+		IntNode current;   // Help variable
+		IntNode previous;  // Help variable
+
+		current = root;    // Always start at the root node
+		previous = root;   // Remember the previous node for insertion
+
+		while ( current != null )
+		{
+			if ( k < current.key )
+			{
+				previous = current;       // Remember prev. node
+				current = current.left;  // Continue search in left subtree
+			}
+			else if ( k > current.key )
+			{
+				previous = current;       // Remember prev. node
+				current = current.right; // Continue search in right subtree
+			}
+			else
+			{
+				// Found key in BST
+				return current;
+			}
+		}
+
+		return previous;		// Return the previous (parent) node
+	}
+
+	/* ================================================================
+		containsKey(k): true IF k is in BST
+	================================================================ */
+	public boolean containsKey(int k)
+	{
+		IntNode p = findNode(k);
+
+		return ( p != null && p.key == k );
+	}
+
+	/* ================================================================
+		get(k): find key k and return assoc. value (or missingValue)
+	================================================================ */
+	public int get(int k)
+	{
+		IntNode p = findNode(k);
+
+		if ( p != null && p.key == k )
+			return p.value;
+		else
+			return missingValue;
+	}
+
+	/* ================================================================
+		put(k, v): store the (k,v) pair into the BST
+
+		1. if the key "k" is found in the BST, we replace the val
+		that is associated with the key "k"
+		2. if the key "k" is NOT found in the BST, we insert
+		a new node containing (k, v)
+	================================================================ */
+	public void put(int k, int v)
+	{
+		IntNode p;   // Help variable
+
+		if ( root == null )
+		{  // Insert into an empty BST
+
+			root = new IntNode( k, v );
+			root.height = 1;
+			return;
+		}
+
+		p = findNode(k);
+
+		if ( k == p.key )
+		{
+			p.value = v;			// Update value
+			return;
+		}
+
+		/* --------------------------------------------
+			Insert a new node (k,v) under p !!!
+		-------------------------------------------- */
+		IntNode q = new IntNode( k, v );
+		q.height = 1;
+
+		q.parent = p;
+
+		if ( k < p.key )
+			p.left = q;            	// Add q as left child
+		else
+			p.right = q;           	// Add q as right child
+
+		/* --------------------------------------------
+			1 pass up from p: recompute the height and
+			check for height violation, stop at the
+			first node out of balance (the restructure
+			gives its subtree its old height back) or
+			where the height does not change (see
+			ADT_BY_AVL.put)
+		-------------------------------------------- */
+		IntNode x = p, y = q, z = null;
+
+		while ( x != null )
+		{
+			int old = x.height;
+
+			x.height = getMaxHeight( x.left, x.right ) + 1;
+
+			if ( getDiffOfHeight( x.left, x.right ) > 1 )
+			{
+				tri_node_restructure( x, y, z );
+				break;
+			}
+
+			if ( x.height == old )
+				break;			// Nothing changes above x
+
+			z = y;
+			y = x;
+			x = x.parent;
+		}
+	}
+
+	/* =======================================================
+		tri_node_restructure(x, y, z):
+
+		x = parent(y)
+		y = parent(z)
+
+		(See ADT_BY_AVL.tri_node_restructure for the pictures)
+
+		Return: b (the new root of the subtree), only the heights
+		of a, b and c are recomputed
+	======================================================= */
+	public IntNode tri_node_restructure( IntNode x, IntNode y, IntNode z)
+	{
+		boolean zIsLeftChild = (z == y.left);
+		boolean yIsLeftChild = (y == x.left);
+
+		IntNode a, b, c;
+		IntNode T0, T1, T2, T3;
+
+		if (zIsLeftChild && yIsLeftChild)
+		{ /* Configuration 1 */
+			a = z;  b = y;  c = x;
+			T0 = z.left;  T1 = z.right;  T2 = y.right;  T3 = x.right;
+		}
+		else if (!zIsLeftChild && yIsLeftChild)
+		{ /* Configuration 2 */
+			a = y;  b = z;  c = x;
+			T0 = y.left;  T1 = z.left;  T2 = z.right;  T3 = x.right;
+		}
+		else if (zIsLeftChild && !yIsLeftChild)
+		{ /* Configuration 4 */
+			a = x;  b = z;  c = y;
+			T0 = x.left;  T1 = z.left;  T2 = z.right;  T3 = y.right;
+		}
+		else
+		{ /* Configuration 3 */
+			a = x;  b = y;  c = z;
+			T0 = x.left;  T1 = y.left;  T2 = z.left;  T3 = z.right;
+		}
+
+		/* ------------------------------------------------------------------
+			Put b at x's place (make b the root of the new subtree !)
+		------------------------------------------------------------------ */
+		if ( x == root )
+		{
+			root = b;
+			b.parent = null;
+		}
+		else
+		{
+			IntNode xParent = x.parent;
+
+			b.parent = xParent;
+
+			if ( x == xParent.left )
+				xParent.left = b;
+			else
+				xParent.right = b;
+		}
+
+		b.left = a;
+		a.parent = b;
+		b.right = c;
+		c.parent = b;
+
+		a.left = T0;
+		if ( T0 != null )
+			T0.parent = a;
+		a.right = T1;
+		if ( T1 != null )
+			T1.parent = a;
+
+		c.left = T2;
+		if ( T2 != null )
+			T2.parent = c;
+		c.right = T3;
+		if ( T3 != null )
+			T3.parent = c;
+
+		a.height = getMaxHeight( a.left, a.right ) + 1;
+		c.height = getMaxHeight( c.left, c.right ) + 1;
+		b.height = getMaxHeight( a, c ) + 1;
+
+		return b;
+	}
+
+	/* =======================================================
+		remove(k): delete node containg key k
+	======================================================= */
+	public void remove(int k)
+	{
+		IntNode p;      // Help variable
+		IntNode child;  // p's only child (or null)
+		IntNode succ;   // successor node
+
+		p = findNode(k);
+
+		if ( p == null || p.key != k )
+			return;			// Not found ==> nothing to delete....
+
+		/* ================================================================
+			Tough case: node has 2 children - copy successor into p
+			and delete the successor (which has NO left child) instead
+		================================================================ */
+		if ( p.left != null && p.right != null )
+		{
+			succ = p.right;
+
+			while ( succ.left != null )
+				succ = succ.left;
+
+			p.key = succ.key;		// Replace p with successor
+			p.value = succ.value;
+
+			p = succ;
+		}
+
+		/* ================================================================
+			p has at most 1 child: link that child to p's parent
+		================================================================ */
+		child = (p.left != null) ? p.left : p.right;
+
+		if ( child != null )
+			child.parent = p.parent;
+
+		if ( p.parent == null )
+			root = child;
+		else if ( p.parent.left == p )
+			p.parent.left = child;
+		else
+			p.parent.right = child;
+
+		fixAfterRemove( p.parent );
+	}
+
+	/* ================================================================
+		fixAfterRemove(x): recompute heights from x up, restructure
+		every node that is out of balance, stop as soon as a subtree
+		keeps its old height (see ADT_BY_AVL.fixAfterRemove)
+	================================================================ */
+	void fixAfterRemove( IntNode x )
+	{
+		while ( x != null )
+		{
+			int old = x.height;
+
+			x.height = getMaxHeight( x.left, x.right ) + 1;
+
+			if ( getDiffOfHeight( x.left, x.right ) > 1 )
+			{
+				IntNode y = ( height( x.left ) > height( x.right ) ) ? x.left : x.right;
+				int hl = height( y.left );
+				int hr = height( y.right );
+				IntNode z;
+
+				if ( hl != hr )
+					z = ( hl > hr ) ? y.left : y.right;
+				else
+					z = ( y == x.left ) ? y.left : y.right;	// Single rotation
+
+				x = tri_node_restructure( x, y, z );
+			}
+
+			if ( x.height == old )
+				return;			// Nothing changes above x
+
+			x = x.parent;
+		}
+	}
+
+	public static int height( IntNode t )
+	{
+		return (t == null) ? 0 : t.height;
+	}
+
+	/* ================================================================
+		getMaxHeight(t1,t2): compute max height of 2 (sub)trees
+	================================================================ */
+	public static int getMaxHeight( IntNode t1, IntNode t2 )
+	{
+		int h1 = (t1 == null) ? 0 : t1.height;
+		int h2 = (t2 == null) ? 0 : t2.height;
+
+		return (h1 >= h2) ? h1 : h2 ;
+	}
+
+	/* ================================================================
+		getDiffOfHeight(t1,t2): compute difference in height of 2 (sub)trees
+	================================================================ */
+	public static int getDiffOfHeight( IntNode t1, IntNode t2 )
+	{
+		int h1 = (t1 == null) ? 0 : t1.height;
+		int h2 = (t2 == null) ? 0 : t2.height;
+
+		return ((h1 >= h2) ? (h1-h2) : (h2-h1)) ;
+	}
+
+	/* ================================================================
+		getHeight(x): recompute height starting at x (and up)
+	================================================================ */
+	public static void getHeight( IntNode x )
+	{
+		while ( x != null )
+		{
+			x.height = getMaxHeight( x.left, x.right ) + 1;
+			x = x.parent;
+		}
+	}
+}
@@ -0,0 +1,27 @@
+/* =================================================================
+   IntNode: Node structure with primitive int key and int value
+
+   LongIntNode is this class with long keys, made by
+   Gen_LongIntAvlMap from this file.
+   ================================================================= */
+
+class IntNode
+{
+	public int key;
+	public int value;
+	public int height;
+
+	public IntNode parent;
+	public IntNode left;
+	public IntNode right;
+
+	public IntNode(int k, int v)
+	{
+		key = k;
+		value = v;
+
+		parent = null;
+		left = null;
+		right = null;
+	}
+}
@@ -0,0 +1,27 @@
+/* =================================================================
+   LongIntNode: Node structure with primitive long key and int value
+
+   GENERATED from IntNode.java by Gen_LongIntAvlMap: do not
+   edit, change IntNode.java and run "java Gen_LongIntAvlMap".
+   ================================================================= */
+
+class LongIntNode
+{
+	public long key;
+	public int value;
+	public int height;
+
+	public LongIntNode parent;
+	public LongIntNode left;
+	public LongIntNode right;
+
+	public LongIntNode(long k, int v)
+	{
+		key = k;
+		value = v;
+
+		parent = null;
+		left = null;
+		right = null;
+	}
+}
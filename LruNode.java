@@ -0,0 +1,15 @@
+/* =================================================================
+   LruNode: AggNode + its place in the access-order list
+   (see ADT_BY_AVL.setCapacity)
+   ================================================================= */
+
+class LruNode extends AggNode
+{
+	public LruNode newer;
+	public LruNode older;
+
+	public LruNode(String k, Integer v)
+	{
+		super( k, v );
+	}
+}
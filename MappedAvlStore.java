@@ -0,0 +1,680 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.Arrays;
+
+/* ================================================================
+   MappedAvlStore: persistent AVL map living in memory-mapped files
+
+   Same tree as ADT_BY_AVL (String keys, int values), but every node
+   is a fixed-size record in a MappedByteBuffer instead of a Java
+   object, so re-opening the files gives the finished tree at once
+   (nothing is re-inserted).
+
+   <name>       : header + node records
+   <name>.keys  : append-only key region (UTF-16 chars, so keys are
+                  compared char by char in String.compareTo order
+                  without decoding anything)
+
+   Header (64 bytes):
+
+	MAGIC  VERSION  ROOT  NEXT  FREE  SIZE  KEY_END
+
+   Node record n (32 bytes at HEADER_SIZE + n * NODE_SIZE):
+
+	LEFT  RIGHT  PARENT  HEIGHT  KEY_OFF  KEY_LEN  VALUE  (pad)
+
+   Node 0 is NIL (height 0). Nodes freed by remove() are linked
+   through LEFT into a free list and reused. The chars of removed
+   keys stay in the key region (put of an existing key does not
+   add any) until compactKeys() is called; keyBytes() tells how
+   much of the region is in use. Each file is one mapping, so each
+   is limited to 2 GB.
+
+   Changes reach the files when the OS writes the pages back;
+   call force() to flush them. There is no crash consistency:
+   a crash in the middle of a put may leave a broken tree.
+
+   get(k) returns "missingValue" when k is not in the map,
+   use containsKey(k) when that value is also a legal value.
+   ================================================================ */
+
+class MappedAvlStore implements Closeable
+{
+	public static final int NIL = 0;	// The "null" node
+
+	static final int MAGIC   = 0x41564C31;	// "AVL1"
+	static final int VERSION = 1;
+
+	/* -------------------------
+		Header layout
+	------------------------- */
+	static final int H_MAGIC   = 0;
+	static final int H_VERSION = 4;
+	static final int H_ROOT    = 8;
+	static final int H_NEXT    = 12;
+	static final int H_FREE    = 16;
+	static final int H_SIZE    = 20;
+	static final int H_KEY_END = 24;
+	static final int HEADER_SIZE = 64;
+
+	/* -------------------------
+		Node record layout
+	------------------------- */
+	static final int N_LEFT    = 0;
+	static final int N_RIGHT   = 4;
+	static final int N_PARENT  = 8;
+	static final int N_HEIGHT  = 12;
+	static final int N_KEY_OFF = 16;
+	static final int N_KEY_LEN = 20;
+	static final int N_VALUE   = 24;
+	static final int NODE_SIZE = 32;
+
+	static final int INITIAL_NODES = 1024;
+	static final int INITIAL_KEY_BYTES = 64 * 1024;
+
+	public int missingValue;	// Returned by get(k) if k is not found
+
+	public int lastCmp;		// k.compareTo(key) of the node findNode(k) returned
+
+	FileChannel nodeChannel;
+	FileChannel keyChannel;
+	MappedByteBuffer nodes;		// Header + node records
+	MappedByteBuffer keys;		// Key chars
+
+	/* ================================================================
+		MappedAvlStore(fileName): open (or create) a store
+	================================================================ */
+	public MappedAvlStore(String fileName) throws IOException
+	{
+		this( fileName, 0 );
+	}
+
+	public MappedAvlStore(String fileName, int missing) throws IOException
+	{
+		missingValue = missing;
+
+		nodeChannel = FileChannel.open( Paths.get( fileName ),
+				StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE );
+		keyChannel = FileChannel.open( Paths.get( fileName + ".keys" ),
+				StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE );
+
+		boolean isNew = ( nodeChannel.size() == 0 );
+
+		if ( isNew )
+		{
+			nodes = nodeChannel.map( FileChannel.MapMode.READ_WRITE, 0,
+					HEADER_SIZE + (long) INITIAL_NODES * NODE_SIZE );
+			keys = keyChannel.map( FileChannel.MapMode.READ_WRITE, 0, INITIAL_KEY_BYTES );
+
+			nodes.putInt( H_MAGIC, MAGIC );
+			nodes.putInt( H_VERSION, VERSION );
+			nodes.putInt( H_ROOT, NIL );
+			nodes.putInt( H_NEXT, 1 );		// Node 0 is NIL
+			nodes.putInt( H_FREE, NIL );
+			nodes.putInt( H_SIZE, 0 );
+			nodes.putInt( H_KEY_END, 0 );
+		}
+		else
+		{
+			nodes = nodeChannel.map( FileChannel.MapMode.READ_WRITE, 0, nodeChannel.size() );
+			keys = keyChannel.map( FileChannel.MapMode.READ_WRITE, 0,
+					Math.max( keyChannel.size(), INITIAL_KEY_BYTES ) );
+
+			if ( nodes.getInt( H_MAGIC ) != MAGIC )
+				throw new IOException( fileName + ": not an AVL store" );
+			if ( nodes.getInt( H_VERSION ) != VERSION )
+				throw new IOException( fileName + ": unsupported version "
+						+ nodes.getInt( H_VERSION ) );
+		}
+	}
+
+	/* ================================================================
+		force(): write all dirty pages back to the files
+	================================================================ */
+	public void force()
+	{
+		nodes.force();
+		keys.force();
+	}
+
+	public void close() throws IOException
+	{
+		force();
+		nodeChannel.close();
+		keyChannel.close();
+	}
+
+	public int size()
+	{
+		return nodes.getInt( H_SIZE );
+	}
+
+	/* ================================================================
+		keyBytes(): bytes of the key region in use (live keys and
+		the chars of removed keys not compacted away yet)
+	================================================================ */
+	public int keyBytes()
+	{
+		return nodes.getInt( H_KEY_END );
+	}
+
+	/* ================================================================
+		compactKeys(): drop the chars of removed keys from the key
+		region, O(n log n)
+
+		The live keys are moved down, in the order of their
+		offsets, so a key is only ever copied over space that is
+		free or that it used itself. The file keeps its size
+		(the freed part is reused by later puts).
+
+		Like every change, not crash safe: call force() after it.
+	================================================================ */
+	public void compactKeys()
+	{
+		int n = size();
+		long[] a = new long[n];		// KEY_OFF << 32 | node
+
+		if ( collect( root(), a, 0 ) != n )
+			throw new IllegalStateException( "size " + n + " does not match the tree" );
+
+		Arrays.sort( a );
+
+		int end = 0;
+
+		for ( long x : a )
+		{
+			int node = (int) x;
+			int off = (int) (x >>> 32);
+			int len = nodes.getInt( at( node, N_KEY_LEN ) );
+
+			if ( off != end )
+			{
+				for ( int i = 0; i < len; i++ )
+					keys.putChar( end + 2 * i, keys.getChar( off + 2 * i ) );
+
+				nodes.putInt( at( node, N_KEY_OFF ), end );
+			}
+
+			end += 2 * len;
+		}
+
+		nodes.putInt( H_KEY_END, end );
+	}
+
+	/* ---------------------------------------
+		collect(t, a, i): KEY_OFF << 32 | node
+		of every node of subtree t into a[i],
+		a[i+1], ..., return the next free i
+	--------------------------------------- */
+	int collect(int t, long[] a, int i)
+	{
+		if ( t == NIL )
+			return i;
+
+		i = collect( left( t ), a, i );
+
+		if ( i < a.length )
+			a[i] = (long) nodes.getInt( at( t, N_KEY_OFF ) ) << 32 | t;
+
+		return collect( right( t ), a, i + 1 );
+	}
+
+	/* ================================================================
+		Node field access
+	================================================================ */
+	static int at(int n, int field)
+	{
+		return HEADER_SIZE + n * NODE_SIZE + field;
+	}
+
+	int left(int n)    { return nodes.getInt( at( n, N_LEFT ) ); }
+	int right(int n)   { return nodes.getInt( at( n, N_RIGHT ) ); }
+	int parent(int n)  { return nodes.getInt( at( n, N_PARENT ) ); }
+	int height(int n)  { return nodes.getInt( at( n, N_HEIGHT ) ); }
+	int value(int n)   { return nodes.getInt( at( n, N_VALUE ) ); }
+
+	void setLeft(int n, int v)    { nodes.putInt( at( n, N_LEFT ), v ); }
+	void setRight(int n, int v)   { nodes.putInt( at( n, N_RIGHT ), v ); }
+	void setParent(int n, int v)  { nodes.putInt( at( n, N_PARENT ), v ); }
+	void setHeight(int n, int v)  { nodes.putInt( at( n, N_HEIGHT ), v ); }
+	void setValue(int n, int v)   { nodes.putInt( at( n, N_VALUE ), v ); }
+
+	int root()
+	{
+		return nodes.getInt( H_ROOT );
+	}
+
+	void setRoot(int n)
+	{
+		nodes.putInt( H_ROOT, n );
+	}
+
+	/* ================================================================
+		compareKey(k, n): k.compareTo( key of node n )
+	================================================================ */
+	int compareKey(String k, int n)
+	{
+		int off = nodes.getInt( at( n, N_KEY_OFF ) );
+		int len = nodes.getInt( at( n, N_KEY_LEN ) );
+		int lim = Math.min( k.length(), len );
+
+		for ( int i = 0; i < lim; i++ )
+		{
+			char c1 = k.charAt( i );
+			char c2 = keys.getChar( off + 2 * i );
+
+			if ( c1 != c2 )
+				return c1 - c2;
+		}
+
+		return k.length() - len;
+	}
+
+	/* ================================================================
+		keyOf(n): the key of node n as a String
+	================================================================ */
+	public String keyOf(int n)
+	{
+		int off = nodes.getInt( at( n, N_KEY_OFF ) );
+		int len = nodes.getInt( at( n, N_KEY_LEN ) );
+		char[] c = new char[len];
+
+		for ( int i = 0; i < len; i++ )
+			c[i] = keys.getChar( off + 2 * i );
+
+		return new String( c );
+	}
+
+	/* ================================================================
+		newNode(k, v): take a node from the free list (or the end)
+		and append k to the key region
+
+		Both regions are grown first, and only then is anything
+		written: if a remap fails (file full), neither the node
+		slot nor the key space is lost.
+	================================================================ */
+	int newNode(String k, int v) throws IOException
+	{
+		int off = nodes.getInt( H_KEY_END );
+		long end = off + 2L * k.length();
+
+		if ( end > Integer.MAX_VALUE )
+			throw new IOException( "AVL store key region is full (2 GB)" );
+		if ( end > keys.capacity() )
+			keys = remap( keyChannel, keys, end );
+
+		int n = nodes.getInt( H_FREE );
+
+		if ( n == NIL )
+		{
+			n = nodes.getInt( H_NEXT );
+
+			long need = HEADER_SIZE + (long) (n + 1) * NODE_SIZE;
+
+			if ( need > nodes.capacity() )
+				nodes = remap( nodeChannel, nodes, need );
+
+			nodes.putInt( H_NEXT, n + 1 );
+		}
+		else
+			nodes.putInt( H_FREE, left( n ) );
+
+		/* --------------------------------------------
+			Append the key chars to the key region
+		-------------------------------------------- */
+		for ( int i = 0; i < k.length(); i++ )
+			keys.putChar( off + 2 * i, k.charAt( i ) );
+
+		nodes.putInt( H_KEY_END, (int) end );
+
+		nodes.putInt( at( n, N_KEY_OFF ), off );
+		nodes.putInt( at( n, N_KEY_LEN ), k.length() );
+		setValue( n, v );
+		setLeft( n, NIL );
+		setRight( n, NIL );
+		setParent( n, NIL );
+		setHeight( n, 1 );
+
+		return n;
+	}
+
+	void freeNode(int n)
+	{
+		setLeft( n, nodes.getInt( H_FREE ) );
+		nodes.putInt( H_FREE, n );
+	}
+
+	/* ================================================================
+		remap(ch, buf, need): map ch again, at least doubled in size
+	================================================================ */
+	static MappedByteBuffer remap(FileChannel ch, MappedByteBuffer buf, long need)
+			throws IOException
+	{
+		long n = Math.max( 2L * buf.capacity(), need );
+
+		if ( n > Integer.MAX_VALUE )
+			n = Integer.MAX_VALUE;
+		if ( n < need )
+			throw new IOException( "AVL store file is full (2 GB)" );
+
+		return ch.map( FileChannel.MapMode.READ_WRITE, 0, n );
+	}
+
+	/* ================================================================
+		findNode(k): find node with key k
+
+		Return:  node of (k,v) IF k is in BST
+			node of parent(k,v) IF k is NOT in BST (for put)
+			NIL IF the BST is empty
+
+		Keys are compared only ONCE per level (each compare reads
+		the mapped key region). The result of the last compare is
+		left in lastCmp (as in ADT_BY_AVL):
+
+			lastCmp == 0 ==> k is in BST
+			lastCmp <  0 ==> k goes left of the returned node
+			lastCmp >  0 ==> k goes right of the returned node
+	================================================================ */
+	public int findNode(String k)
+	{
+		int current = root();    // Always start at the root node
+		int previous = current;  // Remember the previous node for insertion
+		int cmp = 1;             // Empty BST ==> not found
+
+		while ( current != NIL )
+		{
+			cmp = compareKey( k, current );
+
+			if ( cmp < 0 )
+			{
+				previous = current;
+				current = left( current );   // Continue search in left subtree
+			}
+			else if ( cmp > 0 )
+			{
+				previous = current;
+				current = right( current );  // Continue search in right subtree
+			}
+			else
+			{
+				lastCmp = 0;
+				return current;              // Found key in BST
+			}
+		}
+
+		lastCmp = cmp;
+		return previous;		// Return the previous (parent) node
+	}
+
+	/* ================================================================
+		containsKey(k): true IF k is in BST
+	================================================================ */
+	public boolean containsKey(String k)
+	{
+		int p = findNode(k);
+
+		return ( p != NIL && lastCmp == 0 );
+	}
+
+	/* ================================================================
+		get(k): find key k and return assoc. value (or missingValue)
+	================================================================ */
+	public int get(String k)
+	{
+		int p = findNode(k);
+
+		if ( p != NIL && lastCmp == 0 )
+			return value( p );
+		else
+			return missingValue;
+	}
+
+	/* ================================================================
+		put(k, v): store the (k,v) pair into the BST
+	================================================================ */
+	public void put(String k, int v) throws IOException
+	{
+		int p;   // Help variable
+
+		if ( root() == NIL )
+		{  // Insert into an empty BST
+
+			setRoot( newNode( k, v ) );
+			nodes.putInt( H_SIZE, 1 );
+			return;
+		}
+
+		p = findNode(k);
+
+		int cmp = lastCmp;		// k compared with key of p
+
+		if ( cmp == 0 )
+		{
+			setValue( p, v );		// Update value
+			return;
+		}
+
+		/* --------------------------------------------
+			Insert a new node (k,v) under p !!!
+		-------------------------------------------- */
+		int q = newNode( k, v );
+		nodes.putInt( H_SIZE, size() + 1 );
+
+		setParent( q, p );
+
+		if ( cmp < 0 )
+			setLeft( p, q );            	// Add q as left child
+		else
+			setRight( p, q );           	// Add q as right child
+
+		/* --------------------------------------------
+			1 pass up from p: recompute the height and
+			check for height violation, stop at the
+			first node out of balance (the restructure
+			gives its subtree its old height back) or
+			where the height does not change (see
+			ADT_BY_AVL.put)
+		-------------------------------------------- */
+		int x = p, y = q, z = NIL;
+
+		while ( x != NIL )
+		{
+			int old = height( x );
+
+			setHeight( x, Math.max( height( left( x ) ), height( right( x ) ) ) + 1 );
+
+			if ( getDiffOfHeight( left( x ), right( x ) ) > 1 )
+			{
+				tri_node_restructure( x, y, z );
+				break;
+			}
+
+			if ( height( x ) == old )
+				break;			// Nothing changes above x
+
+			z = y;
+			y = x;
+			x = parent( x );
+		}
+	}
+
+	/* =======================================================
+		tri_node_restructure(x, y, z):
+
+		x = parent(y)
+		y = parent(z)
+
+		(See ADT_BY_AVL.tri_node_restructure for the pictures)
+
+		Return: b (the new root of the subtree), only the heights
+		of a, b and c are recomputed
+	======================================================= */
+	public int tri_node_restructure( int x, int y, int z )
+	{
+		boolean zIsLeftChild = (z == left( y ));
+		boolean yIsLeftChild = (y == left( x ));
+
+		int a, b, c;
+		int T0, T1, T2, T3;
+
+		if (zIsLeftChild && yIsLeftChild)
+		{ /* Configuration 1 */
+			a = z;  b = y;  c = x;
+			T0 = left( z );  T1 = right( z );  T2 = right( y );  T3 = right( x );
+		}
+		else if (!zIsLeftChild && yIsLeftChild)
+		{ /* Configuration 2 */
+			a = y;  b = z;  c = x;
+			T0 = left( y );  T1 = left( z );  T2 = right( z );  T3 = right( x );
+		}
+		else if (zIsLeftChild && !yIsLeftChild)
+		{ /* Configuration 4 */
+			a = x;  b = z;  c = y;
+			T0 = left( x );  T1 = left( z );  T2 = right( z );  T3 = right( y );
+		}
+		else
+		{ /* Configuration 3 */
+			a = x;  b = y;  c = z;
+			T0 = left( x );  T1 = left( y );  T2 = left( z );  T3 = right( z );
+		}
+
+		/* ------------------------------------------------------------------
+			Put b at x's place (make b the root of the new subtree !)
+		------------------------------------------------------------------ */
+		int xParent = parent( x );
+
+		setParent( b, xParent );
+
+		if ( xParent == NIL )
+			setRoot( b );
+		else if ( x == left( xParent ) )
+			setLeft( xParent, b );
+		else
+			setRight( xParent, b );
+
+		setLeft( b, a );
+		setParent( a, b );
+		setRight( b, c );
+		setParent( c, b );
+
+		setLeft( a, T0 );
+		if ( T0 != NIL )
+			setParent( T0, a );
+		setRight( a, T1 );
+		if ( T1 != NIL )
+			setParent( T1, a );
+
+		setLeft( c, T2 );
+		if ( T2 != NIL )
+			setParent( T2, c );
+		setRight( c, T3 );
+		if ( T3 != NIL )
+			setParent( T3, c );
+
+		setHeight( a, Math.max( height( left( a ) ), height( right( a ) ) ) + 1 );
+		setHeight( c, Math.max( height( left( c ) ), height( right( c ) ) ) + 1 );
+		setHeight( b, Math.max( height( a ), height( c ) ) + 1 );
+
+		return b;
+	}
+
+	/* =======================================================
+		remove(k): delete node containg key k
+	======================================================= */
+	public void remove(String k)
+	{
+		int p, child, succ;
+
+		p = findNode(k);
+
+		if ( p == NIL || lastCmp != 0 )
+			return;			// Not found ==> nothing to delete....
+
+		/* ================================================================
+			Tough case: node has 2 children - copy successor into p
+			and delete the successor (which has NO left child) instead
+		================================================================ */
+		if ( left( p ) != NIL && right( p ) != NIL )
+		{
+			succ = right( p );
+
+			while ( left( succ ) != NIL )
+				succ = left( succ );
+
+			nodes.putInt( at( p, N_KEY_OFF ), nodes.getInt( at( succ, N_KEY_OFF ) ) );
+			nodes.putInt( at( p, N_KEY_LEN ), nodes.getInt( at( succ, N_KEY_LEN ) ) );
+			setValue( p, value( succ ) );
+
+			p = succ;
+		}
+
+		/* ================================================================
+			p has at most 1 child: link that child to p's parent
+		================================================================ */
+		child = (left( p ) != NIL) ? left( p ) : right( p );
+		int pp = parent( p );
+
+		if ( child != NIL )
+			setParent( child, pp );
+
+		if ( pp == NIL )
+			setRoot( child );
+		else if ( left( pp ) == p )
+			setLeft( pp, child );
+		else
+			setRight( pp, child );
+
+		freeNode(p);
+		nodes.putInt( H_SIZE, size() - 1 );
+
+		fixAfterRemove( pp );
+	}
+
+	/* ================================================================
+		fixAfterRemove(x): recompute heights from x up, restructure
+		every node that is out of balance, stop as soon as a subtree
+		keeps its old height (see ADT_BY_AVL.fixAfterRemove)
+	================================================================ */
+	void fixAfterRemove( int x )
+	{
+		while ( x != NIL )
+		{
+			int old = height( x );
+
+			setHeight( x, Math.max( height( left( x ) ), height( right( x ) ) ) + 1 );
+
+			if ( getDiffOfHeight( left( x ), right( x ) ) > 1 )
+			{
+				int y = ( height( left( x ) ) > height( right( x ) ) ) ? left( x ) : right( x );
+				int hl = height( left( y ) );
+				int hr = height( right( y ) );
+				int z;
+
+				if ( hl != hr )
+					z = ( hl > hr ) ? left( y ) : right( y );
+				else
+					z = ( y == left( x ) ) ? left( y ) : right( y );	// Single rotation
+
+				x = tri_node_restructure( x, y, z );
+			}
+
+			if ( height( x ) == old )
+				return;			// Nothing changes above x
+
+			x = parent( x );
+		}
+	}
+
+	/* ================================================================
+		getDiffOfHeight(t1,t2): compute difference in height of 2 (sub)trees
+	================================================================ */
+	int getDiffOfHeight( int t1, int t2 )
+	{
+		int h1 = height( t1 );	// height(NIL) == 0
+		int h2 = height( t2 );
+
+		return ((h1 >= h2) ? (h1-h2) : (h2-h1)) ;
+	}
+}
@@ -0,0 +1,36 @@
+/* =================================================================
+   Node structure
+
+   Only what every BST needs. The extras of ADT_BY_AVL live in
+   subclasses, 1 on top of the other, and a BST makes its nodes
+   of the smallest one that has all the fields it uses (see
+   ADT_BY_AVL.newNode). Sizes on a 64 bit JVM with compressed
+   references:
+
+	Node		40 bytes	plain BST
+	SizedNode	40 bytes	+ size	 (orderStats; fits the padding)
+	AggNode		48 bytes	+ agg	 (monoid)
+	LruNode		56 bytes	+ newer, older (setCapacity)
+	PrefixNode	64 bytes	+ prefix (prefixKeys)
+   ================================================================= */
+
+class Node
+{
+	public String  key;
+	public Integer value;
+	public int height;
+
+	public Node parent;
+	public Node left;
+	public Node right;
+
+	public Node(String k, Integer v)
+	{
+		key = k;
+		value = v;
+
+		parent = null;
+		left = null;
+		right = null;
+	}
+}
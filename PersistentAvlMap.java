@@ -0,0 +1,318 @@
+import java.util.function.*;
+
+/* ================================================================
+   PersistentAvlMap: AVL tree where put/remove return a NEW map
+
+   put(k, v) and remove(k) copy only the nodes on the path from
+   the root to k (O(log n) new nodes), all other nodes are shared
+   with the old map. The old map is not changed at all, so:
+
+	- a map IS a snapshot: keeping a reference costs O(1)
+	- readers of a snapshot need no locks, whatever writers do
+
+   Typical use: 1 writer thread keeps the current version in a
+   volatile field,
+
+	volatile PersistentAvlMap current = PersistentAvlMap.EMPTY;
+
+	current = current.put( k, v );		// writer
+
+	PersistentAvlMap snap = current;	// reader (e.g. an export)
+	snap.rangeScan( null, null, ... );
+
+   Nodes have no parent link (a shared node has a different parent
+   in each version), so put/remove go down recursively and rebuild
+   the path on the way back up (depth <= 1.44 log n).
+   ================================================================ */
+
+class PersistentAvlMap
+{
+	public static final PersistentAvlMap EMPTY = new PersistentAvlMap( null );
+
+	public final PersistentNode root;	// References the root node of the BST
+
+	PersistentAvlMap(PersistentNode r)
+	{
+		root = r;
+	}
+
+	public int size()
+	{
+		return size( root );
+	}
+
+	public boolean isEmpty()
+	{
+		return root == null;
+	}
+
+	/* ================================================================
+		get(k): find key k and return assoc. value (null if none)
+	================================================================ */
+	public Integer get(String k)
+	{
+		PersistentNode x = root;
+
+		while ( x != null )
+		{
+			int cmp = k.compareTo( x.key );
+
+			if ( cmp < 0 )
+				x = x.left;
+			else if ( cmp > 0 )
+				x = x.right;
+			else
+				return x.value;
+		}
+
+		return null;
+	}
+
+	public boolean containsKey(String k)
+	{
+		PersistentNode x = root;
+
+		while ( x != null )
+		{
+			int cmp = k.compareTo( x.key );
+
+			if ( cmp == 0 )
+				return true;
+
+			x = ( cmp < 0 ) ? x.left : x.right;
+		}
+
+		return false;
+	}
+
+	/* ================================================================
+		put(k, v): new map with (k,v) stored, this map unchanged
+	================================================================ */
+	public PersistentAvlMap put(String k, Integer v)
+	{
+		PersistentNode r = put( root, k, v );
+
+		return ( r == root ) ? this : new PersistentAvlMap( r );
+	}
+
+	static PersistentNode put(PersistentNode t, String k, Integer v)
+	{
+		if ( t == null )
+			return new PersistentNode( k, v, null, null );
+
+		int cmp = k.compareTo( t.key );
+
+		if ( cmp == 0 )
+		{
+			if ( t.value == v )
+				return t;		// Nothing changes
+
+			return new PersistentNode( k, v, t.left, t.right );
+		}
+
+		if ( cmp < 0 )
+		{
+			PersistentNode l = put( t.left, k, v );
+
+			return ( l == t.left ) ? t : balance( t.key, t.value, l, t.right );
+		}
+		else
+		{
+			PersistentNode r = put( t.right, k, v );
+
+			return ( r == t.right ) ? t : balance( t.key, t.value, t.left, r );
+		}
+	}
+
+	/* ================================================================
+		remove(k): new map without k, this map unchanged
+	================================================================ */
+	public PersistentAvlMap remove(String k)
+	{
+		PersistentNode r = remove( root, k );
+
+		return ( r == root ) ? this : new PersistentAvlMap( r );
+	}
+
+	static PersistentNode remove(PersistentNode t, String k)
+	{
+		if ( t == null )
+			return null;			// Not found ==> nothing to delete....
+
+		int cmp = k.compareTo( t.key );
+
+		if ( cmp < 0 )
+		{
+			PersistentNode l = remove( t.left, k );
+
+			return ( l == t.left ) ? t : balance( t.key, t.value, l, t.right );
+		}
+
+		if ( cmp > 0 )
+		{
+			PersistentNode r = remove( t.right, k );
+
+			return ( r == t.right ) ? t : balance( t.key, t.value, t.left, r );
+		}
+
+		/* ------------------------------------------------
+			Found: 0 or 1 child ==> the child replaces t,
+			2 children ==> the successor replaces t
+		------------------------------------------------ */
+		if ( t.left == null )
+			return t.right;
+		if ( t.right == null )
+			return t.left;
+
+		PersistentNode succ = t.right;
+
+		while ( succ.left != null )
+			succ = succ.left;
+
+		return balance( succ.key, succ.value, t.left, removeFirst( t.right ) );
+	}
+
+	/* ================================================================
+		removeFirst(t): subtree t without its smallest key
+	================================================================ */
+	static PersistentNode removeFirst(PersistentNode t)
+	{
+		if ( t.left == null )
+			return t.right;
+
+		return balance( t.key, t.value, removeFirst( t.left ), t.right );
+	}
+
+	/* ================================================================
+		balance(k, v, l, r): new node (k,v) with subtrees l and r,
+		whose heights may differ by 2 (after 1 put or remove)
+
+		Same 4 configurations as ADT_BY_AVL.tri_node_restructure,
+		but the 3 nodes are made new instead of relinked.
+	================================================================ */
+	static PersistentNode balance(String k, Integer v, PersistentNode l, PersistentNode r)
+	{
+		int hl = height( l );
+		int hr = height( r );
+
+		if ( hl > hr + 1 )
+		{
+			if ( height( l.left ) >= height( l.right ) )
+			{ /* Configuration 1: single rotation */
+				return new PersistentNode( l.key, l.value, l.left,
+							   new PersistentNode( k, v, l.right, r ) );
+			}
+			else
+			{ /* Configuration 2: double rotation */
+				PersistentNode m = l.right;
+
+				return new PersistentNode( m.key, m.value,
+							   new PersistentNode( l.key, l.value, l.left, m.left ),
+							   new PersistentNode( k, v, m.right, r ) );
+			}
+		}
+
+		if ( hr > hl + 1 )
+		{
+			if ( height( r.right ) >= height( r.left ) )
+			{ /* Configuration 3: single rotation */
+				return new PersistentNode( r.key, r.value,
+							   new PersistentNode( k, v, l, r.left ), r.right );
+			}
+			else
+			{ /* Configuration 4: double rotation */
+				PersistentNode m = r.left;
+
+				return new PersistentNode( m.key, m.value,
+							   new PersistentNode( k, v, l, m.left ),
+							   new PersistentNode( r.key, r.value, m.right, r.right ) );
+			}
+		}
+
+		return new PersistentNode( k, v, l, r );
+	}
+
+	/* ================================================================
+		rangeScan(from, to, action): action(k, v) for every pair
+		with from <= k < to, in key order (null = no limit)
+
+		Without parent links the way back up is kept on a small
+		stack (1 array of height + 1 entries per scan).
+	================================================================ */
+	public void rangeScan(String from, String to, BiConsumer<String,Integer> action)
+	{
+		PersistentNode[] stack = new PersistentNode[height( root ) + 1];
+		int sp = 0;
+
+		/* --------------------------------------------
+			Path to the first key >= from
+		-------------------------------------------- */
+		for ( PersistentNode x = root; x != null; )
+		{
+			if ( from == null || x.key.compareTo( from ) >= 0 )
+			{
+				stack[sp++] = x;
+				x = x.left;
+			}
+			else
+				x = x.right;
+		}
+
+		while ( sp > 0 )
+		{
+			PersistentNode n = stack[--sp];
+
+			if ( to != null && n.key.compareTo( to ) >= 0 )
+				return;
+
+			action.accept( n.key, n.value );
+
+			for ( PersistentNode x = n.right; x != null; x = x.left )
+				stack[sp++] = x;		// Successor: 1 right, all left
+		}
+	}
+
+	public void forEach(BiConsumer<String,Integer> action)
+	{
+		rangeScan( null, null, action );
+	}
+
+	/* ================================================================
+		fromSorted(keys, vals, n): map with the n (k,v) pairs,
+		keys[] must be strictly increasing. O(n)
+	================================================================ */
+	public static PersistentAvlMap fromSorted(String[] keys, Integer[] vals, int n)
+	{
+		for ( int i = 1; i < n; i++ )
+			if ( keys[i-1].compareTo( keys[i] ) >= 0 )
+				throw new IllegalArgumentException( "keys not sorted at " + i
+						+ ": " + keys[i-1] + " >= " + keys[i] );
+
+		return new PersistentAvlMap( build( keys, vals, 0, n - 1 ) );
+	}
+
+	static PersistentNode build(String[] keys, Integer[] vals, int lo, int hi)
+	{
+		if ( lo > hi )
+			return null;
+
+		int mid = (lo + hi) >>> 1;		// Middle key becomes the root
+
+		return new PersistentNode( keys[mid], vals[mid],
+					   build( keys, vals, lo, mid - 1 ),
+					   build( keys, vals, mid + 1, hi ) );
+	}
+
+	/* ================================================================
+		height(t), size(t): 0 if t is empty
+	================================================================ */
+	public static int height( PersistentNode t )
+	{
+		return (t == null) ? 0 : t.height;
+	}
+
+	public static int size( PersistentNode t )
+	{
+		return (t == null) ? 0 : t.size;
+	}
+}
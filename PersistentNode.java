@@ -0,0 +1,28 @@
+/* =================================================================
+   PersistentNode: immutable Node (no parent link)
+
+   A node is never changed after it is made, so it can be shared
+   by any number of versions of the tree.
+   ================================================================= */
+
+class PersistentNode
+{
+	public final String  key;
+	public final Integer value;
+	public final int height;
+	public final int size;		// Number of nodes in this subtree
+
+	public final PersistentNode left;
+	public final PersistentNode right;
+
+	public PersistentNode(String k, Integer v, PersistentNode l, PersistentNode r)
+	{
+		key = k;
+		value = v;
+		left = l;
+		right = r;
+
+		height = Math.max( PersistentAvlMap.height( l ), PersistentAvlMap.height( r ) ) + 1;
+		size = PersistentAvlMap.size( l ) + PersistentAvlMap.size( r ) + 1;
+	}
+}
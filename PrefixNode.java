@@ -0,0 +1,15 @@
+/* =================================================================
+   PrefixNode: LruNode + the first 4 chars of its key
+   (see ADT_BY_AVL.keyPrefix, prefixKeys)
+   ================================================================= */
+
+class PrefixNode extends LruNode
+{
+	public long prefix;
+
+	public PrefixNode(String k, Integer v)
+	{
+		super( k, v );
+		prefix = ADT_BY_AVL.keyPrefix( k );
+	}
+}
@@ -0,0 +1,20 @@
+/* ================================================================
+   RebalanceListener: notified for every tri-node restructure
+
+   op      = INSERT (fixup after a put) or REMOVE (after a remove)
+   config  = tri-node configuration used (#1 - #4)
+   rootKey = key of the new subtree root (node b)
+   depth   = depth of b after the restructure (root = 0)
+   ================================================================ */
+
+interface RebalanceListener
+{
+	int INSERT = 1;
+	int REMOVE = 2;
+
+	default void beforeRestructure( ADT_BY_AVL tree, int op )
+	{
+	}
+
+	void onRestructure( ADT_BY_AVL tree, int config, String rootKey, int depth );
+}
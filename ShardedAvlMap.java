@@ -0,0 +1,422 @@
+import java.util.*;
+import java.util.function.*;
+
+/* ================================================================
+   ShardedAvlMap: thread-safe map made of range partitions
+
+   The key space is cut into shards [lo, hi), each an ADT_BY_AVL
+   with its own lock, so writers of different ranges do not wait
+   for each other. An operation:
+
+	1. finds its shard in the boundary table (binary search on
+	   the lo keys; the table is immutable, a new one replaces
+	   it when shards change)
+	2. locks the shard, and checks it still covers the key (it
+	   may have been split or merged meanwhile: then 1 again)
+
+   Shards adapt to the load (checked by the shard itself, every
+   CHECK_EVERY operations, while it holds its lock):
+
+	- bigger than maxShardSize		split at the median
+	- hot: > 1/HOT_FRACTION of the last	split at the median
+	  CHECK_EVERY operations had to wait
+	  for the lock
+	- cold: the last CHECK_EVERY operations	merged with its right
+	  took > COLD_NANOS, and together with	neighbour
+	  that neighbour it is small
+
+   Splits use ADT_BY_AVL.split (O(log n)), merges union (the key
+   ranges do not overlap). Shards keep orderStats on, so sizes
+   and medians are O(1) / O(log n). Never fewer shards than the
+   map started with.
+
+   Locks: a shard, then its right neighbour (merge), then
+   tableLock. A range scan holds 1 shard lock at a time, and
+   calls the action after releasing it.
+   ================================================================ */
+
+class ShardedAvlMap
+{
+	static final int CHECK_EVERY = 1 << 12;		// Operations between 2 checks (power of 2)
+	static final int HOT_FRACTION = 8;
+	static final long COLD_NANOS = 1000000000L;
+	static final int MIN_SPLIT = 1 << 10;		// Smaller shards are never split for heat
+
+	public int maxShardSize = 1 << 20;
+
+	public long splits;		// Shards split so far (guarded by tableLock)
+	public long merges;		// Shards merged so far (guarded by tableLock)
+
+	volatile Table table;
+	final Object tableLock = new Object();
+	final int minShards;
+
+	/* ================================================================
+		Table: the shards in key order, shards[i] covers
+		[lows[i], lows[i+1]). Never changed: see with()/without()
+	================================================================ */
+	static class Table
+	{
+		final String[] lows;
+		final AvlShard[] shards;
+
+		Table(AvlShard[] shards)
+		{
+			this.shards = shards;
+			lows = new String[shards.length];
+
+			for ( int i = 0; i < shards.length; i++ )
+				lows[i] = shards[i].lo;
+		}
+
+		/* ---------------------------------------
+			route(k): the last shard with lo <= k
+		--------------------------------------- */
+		AvlShard route(String k)
+		{
+			int a = 0, b = lows.length - 1;	// lows[0] == "" <= k
+
+			while ( a < b )
+			{
+				int m = (a + b + 1) >>> 1;
+
+				if ( lows[m].compareTo( k ) <= 0 )
+					a = m;
+				else
+					b = m - 1;
+			}
+
+			return shards[a];
+		}
+
+		int indexOf(AvlShard s)
+		{
+			for ( int i = 0; i < shards.length; i++ )
+				if ( shards[i] == s )
+					return i;
+
+			return -1;
+		}
+
+		/* ---------------------------------------
+			with(s, b): new table, b right after s
+			without(b): new table, b left out
+		--------------------------------------- */
+		Table with(AvlShard s, AvlShard b)
+		{
+			int i = indexOf( s );
+			AvlShard[] a = new AvlShard[shards.length + 1];
+
+			System.arraycopy( shards, 0, a, 0, i + 1 );
+			a[i + 1] = b;
+			System.arraycopy( shards, i + 1, a, i + 2, shards.length - i - 1 );
+			return new Table( a );
+		}
+
+		Table without(AvlShard b)
+		{
+			int i = indexOf( b );
+			AvlShard[] a = new AvlShard[shards.length - 1];
+
+			System.arraycopy( shards, 0, a, 0, i );
+			System.arraycopy( shards, i + 1, a, i, shards.length - i - 1 );
+			return new Table( a );
+		}
+	}
+
+	/* ================================================================
+		ShardedAvlMap(): 1 shard to start with, more as it grows
+
+		ShardedAvlMap(splitKeys): splitKeys.length + 1 shards from
+		the start, cut at the given keys (strictly increasing)
+	================================================================ */
+	public ShardedAvlMap()
+	{
+		this( new String[0] );
+	}
+
+	public ShardedAvlMap(String[] splitKeys)
+	{
+		AvlShard[] a = new AvlShard[splitKeys.length + 1];
+
+		for ( int i = 0; i <= splitKeys.length; i++ )
+		{
+			String lo = ( i == 0 ) ? "" : splitKeys[i - 1];
+			String hi = ( i == splitKeys.length ) ? null : splitKeys[i];
+
+			if ( hi != null && lo.compareTo( hi ) >= 0 )
+				throw new IllegalArgumentException( "split keys not increasing at " + hi );
+
+			a[i] = new AvlShard( newTree(), lo, hi );
+		}
+
+		table = new Table( a );
+		minShards = a.length;
+	}
+
+	static ADT_BY_AVL newTree()
+	{
+		ADT_BY_AVL t = new ADT_BY_AVL();
+
+		t.setOrderStats( true );
+		return t;
+	}
+
+	/* ================================================================
+		lock(k): the shard of key k, locked
+	================================================================ */
+	AvlShard lock(String k)
+	{
+		for ( ;; )
+		{
+			AvlShard s = table.route( k );
+
+			if ( ! s.lock.tryLock() )
+			{
+				s.lock.lock();
+				s.contended++;
+			}
+
+			if ( ! s.retired && s.covers( k ) )
+				return s;
+
+			s.lock.unlock();		// Split or merged meanwhile
+		}
+	}
+
+	/* ================================================================
+		get(k), put(k, v), remove(k): as in ADT_BY_AVL
+	================================================================ */
+	public Integer get(String k)
+	{
+		AvlShard s = lock( k );
+
+		try
+		{
+			Integer v = s.tree.get( k );
+
+			adapt( s );
+			return v;
+		}
+		finally
+		{
+			s.lock.unlock();
+		}
+	}
+
+	public void put(String k, Integer v)
+	{
+		AvlShard s = lock( k );
+
+		try
+		{
+			s.tree.put( k, v );
+			adapt( s );
+		}
+		finally
+		{
+			s.lock.unlock();
+		}
+	}
+
+	public void remove(String k)
+	{
+		AvlShard s = lock( k );
+
+		try
+		{
+			s.tree.remove( k );
+			adapt( s );
+		}
+		finally
+		{
+			s.lock.unlock();
+		}
+	}
+
+	/* ================================================================
+		rangeScan(from, to, action): action(k, v) for every pair
+		with from <= k < to, in key order (null = no limit)
+
+		Shard by shard: the pairs of 1 shard are copied while it
+		is locked, and handed to action after. Each shard's part
+		is consistent, the whole scan is not 1 snapshot.
+	================================================================ */
+	public void rangeScan(String from, String to, BiConsumer<String,Integer> action)
+	{
+		final ArrayList<String> keys = new ArrayList<String>();
+		final ArrayList<Integer> vals = new ArrayList<Integer>();
+
+		BiConsumer<String,Integer> copy = new BiConsumer<String,Integer>()
+		{
+			public void accept(String k, Integer v)
+			{
+				keys.add( k );
+				vals.add( v );
+			}
+		};
+
+		String k = ( from == null ) ? "" : from;
+
+		while ( k != null && ( to == null || k.compareTo( to ) < 0 ) )
+		{
+			AvlShard s = lock( k );
+			String hi;
+
+			try
+			{
+				hi = s.hi;
+
+				String end = ( hi == null || ( to != null && to.compareTo( hi ) < 0 ) ) ? to : hi;
+
+				s.tree.rangeScan( k, end, copy );
+			}
+			finally
+			{
+				s.lock.unlock();
+			}
+
+			for ( int i = 0; i < keys.size(); i++ )
+				action.accept( keys.get( i ), vals.get( i ) );
+
+			keys.clear();
+			vals.clear();
+
+			k = hi;			// Next shard starts here
+		}
+	}
+
+	public void forEach(BiConsumer<String,Integer> action)
+	{
+		rangeScan( null, null, action );
+	}
+
+	/* ================================================================
+		size(): number of pairs (each shard counted while locked)
+
+		Walks the shards by key, like rangeScan: a shard split
+		meanwhile is found again through its new hi, so no range
+		is skipped. Only the keys >= k of a shard are counted: a
+		shard may have been merged into the one before it after
+		that one was counted.
+	================================================================ */
+	public long size()
+	{
+		long n = 0;
+		String k = "";
+
+		while ( k != null )
+		{
+			AvlShard s = lock( k );
+
+			try
+			{
+				n += s.tree.countInRange( k, s.hi );
+				k = s.hi;		// Next shard starts here
+			}
+			finally
+			{
+				s.lock.unlock();
+			}
+		}
+
+		return n;
+	}
+
+	public int shardCount()
+	{
+		return table.shards.length;
+	}
+
+	/* ================================================================
+		adapt(s): split or merge s if needed (caller holds s.lock)
+	================================================================ */
+	void adapt(AvlShard s)
+	{
+		int n = s.size();
+
+		if ( n > maxShardSize )
+		{
+			split( s );
+			return;
+		}
+
+		if ( ( ++s.ops & (CHECK_EVERY - 1) ) != 0 )
+			return;
+
+		long now = System.nanoTime();
+		boolean hot = ( s.contended * HOT_FRACTION > CHECK_EVERY );
+		boolean cold = ( now - s.windowStart > COLD_NANOS );
+
+		s.contended = 0;
+		s.windowStart = now;
+
+		if ( hot && n >= MIN_SPLIT )
+			split( s );
+		else if ( cold && table.shards.length > minShards )
+			mergeRight( s );
+	}
+
+	/* ================================================================
+		split(s): move the upper half of s to a new shard right
+		after it (caller holds s.lock)
+	================================================================ */
+	void split(AvlShard s)
+	{
+		if ( s.size() < 2 )
+			return;
+
+		String mid = s.tree.select( s.size() / 2 ).key;	// > lo: both halves not empty
+
+		AvlShard b = new AvlShard( s.tree.split( mid ), mid, s.hi );
+
+		s.hi = mid;
+
+		synchronized ( tableLock )
+		{
+			table = table.with( s, b );
+			splits++;
+		}
+	}
+
+	/* ================================================================
+		mergeRight(s): move the right neighbour of s into s, if
+		it is not busy and both are small (caller holds s.lock)
+	================================================================ */
+	void mergeRight(AvlShard s)
+	{
+		Table t = table;
+		int i = t.indexOf( s );
+
+		if ( i < 0 || i + 1 == t.shards.length )
+			return;
+
+		AvlShard b = t.shards[i + 1];
+
+		if ( ! b.lock.tryLock() )
+			return;				// Busy: not cold
+
+		try
+		{
+			if ( b.retired || ! b.lo.equals( s.hi ) )
+				return;			// The table changed meanwhile
+
+			if ( s.size() + b.size() > maxShardSize / 4 )
+				return;
+
+			s.tree.union( b.tree );
+			s.hi = b.hi;
+			b.retired = true;
+
+			synchronized ( tableLock )
+			{
+				table = table.without( b );
+				merges++;
+			}
+		}
+		finally
+		{
+			b.lock.unlock();
+		}
+	}
+}
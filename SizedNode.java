@@ -0,0 +1,15 @@
+/* =================================================================
+   SizedNode: Node + the number of nodes in its subtree
+   (see ADT_BY_AVL.setOrderStats)
+   ================================================================= */
+
+class SizedNode extends Node
+{
+	public int size;
+
+	public SizedNode(String k, Integer v)
+	{
+		super( k, v );
+		size = 1;
+	}
+}
@@ -0,0 +1,226 @@
+import java.util.*;
+
+/* ================================================================
+   Test_Aggregate: aggregate(from, to) of ADT_BY_AVL
+
+	random	SEEDS runs of put (some null values), remove, putAll
+		and bulkLoad with one of SUM, MIN, MAX and LAST (not
+		commutative: the value of the biggest key, so the
+		order of combine is checked too). Some runs also keep
+		orderStats, some set the monoid half-way. Every
+		CHECK ops the stored aggregates are checked, and
+		aggregate() compared with a fold over a TreeMap, at
+		random ranges (empty, open ends, reversed).
+	change	another monoid on a full tree: all aggregates are
+		recomputed; no monoid: aggregate() refuses to run
+
+   Run:   java Test_Aggregate
+	  (prints "ok", or throws at the first error)
+   ================================================================ */
+
+public class Test_Aggregate
+{
+	static final int SEEDS = 160;
+	static final int OPS = 2500;		// Per seed
+	static final int CHECK = 25;
+
+	/* ---------------------------------------
+		LAST: the value of the biggest key
+		(MIN_VALUE = no value)
+	--------------------------------------- */
+	static final AvlMonoid LAST = new AvlMonoid()
+	{
+		public long identity()              { return Long.MIN_VALUE; }
+		public long lift(Integer v)         { return (v == null) ? Long.MIN_VALUE : v; }
+		public long combine(long a, long b) { return (b == Long.MIN_VALUE) ? a : b; }
+	};
+
+	static final AvlMonoid[] MONOIDS = { AvlMonoid.SUM, AvlMonoid.MIN, AvlMonoid.MAX, LAST };
+
+	public static void main(String[] args)
+	{
+		for ( int seed = 0; seed < SEEDS; seed++ )
+			random( seed );
+
+		change();
+
+		System.out.println( "ok" );
+	}
+
+	/* ================================================================
+		random(seed): random changes, aggregates checked against
+		a TreeMap
+	================================================================ */
+	static void random(int seed)
+	{
+		Random r = new Random( seed );
+		ADT_BY_AVL t = new ADT_BY_AVL( seed % 2 == 1 );
+		TreeMap<String,Integer> ref = new TreeMap<String,Integer>();
+		AvlMonoid m = MONOIDS[seed % MONOIDS.length];
+		int range = 1 + r.nextInt( 600 );
+
+		if ( seed % 5 != 0 )
+			t.setMonoid( m );
+		if ( seed % 3 == 0 )
+			t.setOrderStats( true );
+
+		for ( int i = 0; i < OPS; i++ )
+		{
+			int op = r.nextInt( 20 );
+			String k = "k" + r.nextInt( range );
+			Integer v = ( r.nextInt( 50 ) == 0 ) ? null : Integer.valueOf( r.nextInt( 2000 ) - 1000 );
+
+			if ( op < 9 )
+			{
+				t.put( k, v );
+				ref.put( k, v );
+			}
+			else if ( op < 16 )
+			{
+				t.remove( k );
+				ref.remove( k );
+			}
+			else if ( op == 16 )
+			{
+				int n = r.nextInt( 50 );
+				String[] keys = new String[n];
+				Integer[] vals = new Integer[n];
+
+				for ( int j = 0; j < n; j++ )
+				{
+					keys[j] = "k" + r.nextInt( range );
+					vals[j] = r.nextInt( 99 );
+					ref.put( keys[j], vals[j] );
+				}
+
+				t.putAll( keys, vals, n );
+			}
+			else if ( op == 17 )
+			{
+				List<Map.Entry<String,Integer>> pairs = new ArrayList<Map.Entry<String,Integer>>();
+
+				for ( int j = r.nextInt( 20 ); j > 0; j-- )
+				{
+					String kk = "k" + r.nextInt( range );
+					int vv = r.nextInt( 77 );
+
+					pairs.add( new AbstractMap.SimpleEntry<String,Integer>( kk, vv ) );
+					ref.put( kk, vv );
+				}
+
+				t.bulkLoad( pairs.iterator() );
+			}
+			else if ( t.getMonoid() == null )
+				t.setMonoid( m );
+
+			if ( t.getMonoid() != null && i % CHECK == 0 )
+				check( t, ref, r, range, "seed " + seed + ", op " + i );
+		}
+	}
+
+	/* ================================================================
+		change(): switch the monoid on a full tree, then off
+	================================================================ */
+	static void change()
+	{
+		Random r = new Random( 1 );
+		ADT_BY_AVL t = new ADT_BY_AVL();
+		TreeMap<String,Integer> ref = new TreeMap<String,Integer>();
+
+		for ( int i = 0; i < 10000; i++ )
+		{
+			String k = "k" + r.nextInt( 20000 );
+			int v = r.nextInt( 1000000 );
+
+			t.put( k, v );
+			ref.put( k, v );
+		}
+
+		for ( AvlMonoid m : MONOIDS )
+		{
+			t.setMonoid( m );
+			check( t, ref, r, 20000, "after setMonoid" );
+		}
+
+		t.setMonoid( null );
+
+		try
+		{
+			t.aggregate( null, null );
+		}
+		catch ( IllegalStateException e )
+		{
+			return;
+		}
+
+		fail( "aggregate without a monoid" );
+	}
+
+	/* ================================================================
+		check(t, ref, r, range, what): stored aggregates, then
+		aggregate() of random ranges
+	================================================================ */
+	static void check(ADT_BY_AVL t, TreeMap<String,Integer> ref, Random r, int range, String what)
+	{
+		AvlMonoid m = t.getMonoid();
+
+		aggs( t, t.root, what );
+
+		if ( t.aggregate( null, null ) != fold( m, ref ) )
+			fail( what + ": aggregate of all" );
+
+		for ( int q = 0; q < 20; q++ )
+		{
+			String a = ( r.nextInt( 8 ) == 0 ) ? null : "k" + r.nextInt( range + 3 );
+			String b = ( r.nextInt( 8 ) == 0 ) ? null : "k" + r.nextInt( range + 3 );
+			SortedMap<String,Integer> sub;
+
+			if ( a == null )
+				sub = ( b == null ) ? ref : ref.headMap( b );
+			else if ( b == null )
+				sub = ref.tailMap( a );
+			else
+				sub = ( a.compareTo( b ) <= 0 ) ? ref.subMap( a, b ) : new TreeMap<String,Integer>();
+
+			long got = t.aggregate( a, b );
+			long want = fold( m, sub );
+
+			if ( got != want )
+				fail( what + ": aggregate(" + a + ", " + b + ") = " + got + ", not " + want );
+		}
+	}
+
+	static long fold(AvlMonoid m, SortedMap<String,Integer> sub)
+	{
+		long r = m.identity();
+
+		for ( Integer v : sub.values() )
+			r = m.combine( r, m.lift( v ) );
+
+		return r;
+	}
+
+	/* ---------------------------------------
+		aggs(t, x, what): check AggNode.agg in
+		subtree x (and the AVL shape)
+	--------------------------------------- */
+	static void aggs(ADT_BY_AVL t, Node x, String what)
+	{
+		if ( x == null )
+			return;
+
+		aggs( t, x.left, what );
+		aggs( t, x.right, what );
+
+		if ( ((AggNode) x).agg != t.aggOf( x ) )
+			fail( what + ": agg at " + x.key );
+		if ( x.height != ADT_BY_AVL.getMaxHeight( x.left, x.right ) + 1
+		     || Math.abs( ADT_BY_AVL.height( x.left ) - ADT_BY_AVL.height( x.right ) ) > 1 )
+			fail( what + ": not AVL at " + x.key );
+	}
+
+	static void fail(String msg)
+	{
+		throw new IllegalStateException( msg );
+	}
+}
@@ -0,0 +1,232 @@
+import java.util.*;
+
+/* ================================================================
+   Test_ArrayAvlMap: ArrayAvlMap (all nodes in parallel arrays)
+
+	random	SEEDS runs of put/get/containsKey/remove of random
+		keys, from capacity 1 (so the arrays grow), against
+		a TreeMap. Every CHECK ops the tree is checked: order,
+		heights, balance, parent links, size, and every slot
+		below next is either in the tree or on the free list
+		(once, with its key dropped)
+	reuse	remove/put at a steady size: freed slots are taken
+		again, the arrays do not grow
+	edges	empty map, missingValue stored as a real value,
+		emptied map (root NIL, all slots free)
+
+   Run:   java Test_ArrayAvlMap
+	  (prints "ok", or throws at the first error)
+   ================================================================ */
+
+public class Test_ArrayAvlMap
+{
+	static final int SEEDS = 40;
+	static final int OPS = 20000;		// Per seed
+	static final int CHECK = 499;
+
+	public static void main(String[] args)
+	{
+		for ( int seed = 0; seed < SEEDS; seed++ )
+			random( seed );
+
+		reuse();
+		edges();
+
+		System.out.println( "ok" );
+	}
+
+	/* ================================================================
+		random(seed): random changes against a TreeMap
+	================================================================ */
+	static void random(int seed)
+	{
+		Random r = new Random( seed );
+		ArrayAvlMap m = new ArrayAvlMap( 1, -1 );
+		TreeMap<String,Integer> ref = new TreeMap<String,Integer>();
+		int range = 1 + r.nextInt( 3000 );
+		String what = "seed " + seed;
+
+		for ( int i = 0; i < OPS; i++ )
+		{
+			String k = "k" + r.nextInt( range );
+			int op = r.nextInt( 10 );
+
+			if ( op < 4 )
+			{
+				m.put( k, i );
+				ref.put( k, i );
+			}
+			else if ( op < 7 )
+			{
+				Integer v = ref.get( k );
+
+				if ( m.get( k ) != ( ( v == null ) ? -1 : v ) )
+					fail( what + ": get(" + k + ")" );
+				if ( m.containsKey( k ) != ( v != null ) )
+					fail( what + ": containsKey(" + k + ")" );
+			}
+			else
+			{
+				m.remove( k );
+				ref.remove( k );
+			}
+
+			if ( i % CHECK == 0 )
+				check( m, ref, what + ", op " + i );
+		}
+
+		check( m, ref, what );
+	}
+
+	/* ================================================================
+		reuse(): 1000 keys, then remove 1 / put 1 new: next and
+		the array length stay where they are
+	================================================================ */
+	static void reuse()
+	{
+		Random r = new Random( 7 );
+		ArrayAvlMap m = new ArrayAvlMap( 1000, -1 );
+		TreeMap<String,Integer> ref = new TreeMap<String,Integer>();
+
+		for ( int i = 0; i < 1000; i++ )
+		{
+			m.put( "r" + i, i );
+			ref.put( "r" + i, i );
+		}
+
+		int next = m.next;
+		int length = m.keys.length;
+
+		for ( int i = 1000; i < 100000; i++ )
+		{
+			String gone = ref.firstKey();
+
+			if ( r.nextBoolean() )
+				gone = ref.ceilingKey( "r" + r.nextInt( i ) );
+			if ( gone == null )
+				gone = ref.lastKey();
+
+			m.remove( gone );
+			ref.remove( gone );
+			m.put( "r" + i, i );
+			ref.put( "r" + i, i );
+		}
+
+		check( m, ref, "reuse" );
+
+		if ( m.next != next || m.keys.length != length )
+			fail( "reuse: next " + next + " -> " + m.next + ", length " + length + " -> " + m.keys.length );
+	}
+
+	/* ================================================================
+		edges(): empty, missingValue as a value, emptied
+	================================================================ */
+	static void edges()
+	{
+		ArrayAvlMap m = new ArrayAvlMap( 0, 7 );
+		TreeMap<String,Integer> ref = new TreeMap<String,Integer>();
+
+		if ( m.get( "a" ) != 7 || m.containsKey( "a" ) || m.root != ArrayAvlMap.NIL )
+			fail( "empty map" );
+
+		m.remove( "a" );			// Nothing to remove
+
+		for ( int i = 0; i < 100; i++ )
+		{
+			m.put( "e" + i, 7 );		// missingValue as a value
+			ref.put( "e" + i, 7 );
+		}
+
+		for ( int i = 0; i < 100; i++ )
+			if ( ! m.containsKey( "e" + i ) || m.get( "e" + i ) != 7 )
+				fail( "missingValue as a value: e" + i );
+
+		check( m, ref, "edges" );
+
+		for ( int i = 99; i >= 0; i -= 2 )
+			m.remove( "e" + i );
+		for ( int i = 0; i < 100; i += 2 )
+			m.remove( "e" + i );
+
+		ref.clear();
+		check( m, ref, "emptied" );
+
+		if ( m.root != ArrayAvlMap.NIL )
+			fail( "emptied: root " + m.root );
+	}
+
+	/* ================================================================
+		check(m, ref, what): same pairs, valid tree, every slot
+		accounted for
+	================================================================ */
+	static void check(ArrayAvlMap m, TreeMap<String,Integer> ref, String what)
+	{
+		List<String> keys = new ArrayList<String>();
+		List<Integer> vals = new ArrayList<Integer>();
+		boolean[] used = new boolean[m.next];
+
+		if ( m.height[ArrayAvlMap.NIL] != 0 )
+			fail( what + ": NIL has height " + m.height[ArrayAvlMap.NIL] );
+
+		checkAvl( m, m.root, ArrayAvlMap.NIL, keys, vals, used, what );
+
+		if ( ! keys.equals( new ArrayList<String>( ref.keySet() ) ) )
+			fail( what + ": keys differ" );
+		if ( ! vals.equals( new ArrayList<Integer>( ref.values() ) ) )
+			fail( what + ": values differ" );
+		if ( m.size() != ref.size() )
+			fail( what + ": size() " + m.size() + " != " + ref.size() );
+
+		for ( int s = m.freeList; s != ArrayAvlMap.NIL; s = m.left[s] )
+		{
+			if ( s >= m.next || used[s] )
+				fail( what + ": free slot " + s + " is in use (or twice on the list)" );
+			if ( m.keys[s] != null )
+				fail( what + ": free slot " + s + " still holds " + m.keys[s] );
+
+			used[s] = true;
+		}
+
+		for ( int s = 1; s < m.next; s++ )
+			if ( ! used[s] )
+				fail( what + ": slot " + s + " is lost" );
+	}
+
+	/* ---------------------------------------
+		checkAvl(m, x, parent, keys, vals,
+		used, what): subtree x, its pairs
+		appended in order. Return: its height
+	--------------------------------------- */
+	static int checkAvl(ArrayAvlMap m, int x, int parent, List<String> keys, List<Integer> vals,
+			    boolean[] used, String what)
+	{
+		if ( x == ArrayAvlMap.NIL )
+			return 0;
+		if ( x >= m.next || used[x] )
+			fail( what + ": slot " + x + " in the tree twice (or never handed out)" );
+		if ( m.parent[x] != parent )
+			fail( what + ": bad parent link at " + m.keys[x] );
+
+		used[x] = true;
+
+		int hl = checkAvl( m, m.left[x], x, keys, vals, used, what );
+
+		if ( ! keys.isEmpty() && keys.get( keys.size() - 1 ).compareTo( m.keys[x] ) >= 0 )
+			fail( what + ": keys out of order at " + m.keys[x] );
+
+		keys.add( m.keys[x] );
+		vals.add( m.vals[x] );
+
+		int hr = checkAvl( m, m.right[x], x, keys, vals, used, what );
+
+		if ( m.height[x] != Math.max( hl, hr ) + 1 || Math.abs( hl - hr ) > 1 )
+			fail( what + ": not AVL at " + m.keys[x] );
+
+		return m.height[x];
+	}
+
+	static void fail(String msg)
+	{
+		throw new IllegalStateException( msg );
+	}
+}
@@ -0,0 +1,187 @@
+import java.util.*;
+
+/* ================================================================
+   Test_ConcurrentAvlMap: ConcurrentAvlMap under concurrent use
+
+	writers	THREADS threads put/remove/get random keys. Each
+		thread owns the keys with key % THREADS == its number
+		(spread over the whole tree, so the threads rotate
+		the same nodes) and keeps its own TreeMap of them:
+		every return value must match that TreeMap.
+	reader	meanwhile looks up STABLE keys that are never
+		changed: a lock-free get() must always find them,
+		also while rotations move their nodes.
+
+   At the end (no thread running) the tree must hold exactly the
+   pairs of the TreeMaps plus the stable keys, and be a valid AVL
+   tree: keys in order, parent links, heights, balance, and no
+   routing node (value null) with fewer than 2 children.
+
+   Run:   java Test_ConcurrentAvlMap
+	  (prints "ok", or throws at the first error)
+   ================================================================ */
+
+public class Test_ConcurrentAvlMap
+{
+	static final int THREADS = 4;
+	static final int OPS = 300000;		// Per writer thread
+	static final int KEYS = 2000;		// Per writer thread
+	static final int STABLE = 1000;
+
+	static volatile Throwable error;	// First error of any thread
+	static volatile boolean done;
+
+	public static void main(String[] args) throws Exception
+	{
+		final ConcurrentAvlMap m = new ConcurrentAvlMap();
+		final List<TreeMap<String,Integer>> refs = new ArrayList<TreeMap<String,Integer>>();
+
+		for ( int i = 0; i < STABLE; i++ )
+			m.put( "s" + key( i ), i );
+
+		for ( int i = 0; i < THREADS; i++ )
+			refs.add( new TreeMap<String,Integer>() );
+
+		Thread[] th = new Thread[THREADS];
+
+		for ( int id = 0; id < THREADS; id++ )
+		{
+			final int me = id;
+
+			th[id] = new Thread()
+			{
+				public void run()
+				{
+					try
+					{
+						Random r = new Random( me );
+						TreeMap<String,Integer> ref = refs.get( me );
+
+						for ( int i = 0; i < OPS; i++ )
+						{
+							String k = key( r.nextInt( KEYS ) * THREADS + me );
+							int op = r.nextInt( 3 );
+
+							if ( op == 0 )
+								same( "put(" + k + ")", m.put( k, i ), ref.put( k, i ) );
+							else if ( op == 1 )
+								same( "remove(" + k + ")", m.remove( k ), ref.remove( k ) );
+							else
+								same( "get(" + k + ")", m.get( k ), ref.get( k ) );
+						}
+					}
+					catch ( Throwable e )
+					{
+						error = e;
+					}
+				}
+			};
+		}
+
+		Thread reader = new Thread()
+		{
+			public void run()
+			{
+				try
+				{
+					Random r = new Random( THREADS );
+
+					while ( ! done )
+					{
+						int i = r.nextInt( STABLE );
+
+						same( "stable get", m.get( "s" + key( i ) ), i );
+					}
+				}
+				catch ( Throwable e )
+				{
+					error = e;
+				}
+			}
+		};
+
+		reader.start();
+
+		for ( Thread t : th )
+			t.start();
+		for ( Thread t : th )
+			t.join();
+
+		done = true;
+		reader.join();
+
+		if ( error != null )
+			throw new RuntimeException( error );
+
+		/* -------------------------------------------
+			Final contents and shape
+		------------------------------------------- */
+		int expect = STABLE;
+
+		for ( TreeMap<String,Integer> ref : refs )
+		{
+			expect += ref.size();
+
+			for ( Map.Entry<String,Integer> e : ref.entrySet() )
+				same( "final get(" + e.getKey() + ")", m.get( e.getKey() ), e.getValue() );
+		}
+
+		int[] count = { 0 };
+
+		check( m.rootHolder.right, m.rootHolder, null, null, count );
+
+		if ( count[0] != expect )
+			fail( count[0] + " values in the tree, expected " + expect );
+
+		System.out.println( "ok" );
+	}
+
+	/* ================================================================
+		check(n, parent, lo, hi, count): subtree n is a valid AVL
+		tree with keys in (lo, hi); count the values in count[0].
+		Return its height
+	================================================================ */
+	static int check(ConcurrentNode n, ConcurrentNode parent, String lo, String hi, int[] count)
+	{
+		if ( n == null )
+			return 0;
+
+		if ( n.parent != parent )
+			fail( "bad parent link at " + n.key );
+		if ( ( lo != null && n.key.compareTo( lo ) <= 0 ) || ( hi != null && n.key.compareTo( hi ) >= 0 ) )
+			fail( "key " + n.key + " out of order" );
+		if ( n.value == null && ( n.left == null || n.right == null ) )
+			fail( "routing node " + n.key + " with < 2 children" );
+
+		if ( n.value != null )
+			count[0]++;
+
+		int hl = check( n.left, n, lo, n.key, count );
+		int hr = check( n.right, n, n.key, hi, count );
+
+		if ( n.height != Math.max( hl, hr ) + 1 )
+			fail( "bad height at " + n.key );
+		if ( Math.abs( hl - hr ) > 1 )
+			fail( "not balanced at " + n.key );
+
+		return n.height;
+	}
+
+	static void same(String what, Integer got, Integer expect)
+	{
+		if ( ! Objects.equals( got, expect ) )
+			fail( what + " = " + got + ", expected " + expect );
+	}
+
+	static void fail(String msg)
+	{
+		throw new IllegalStateException( msg );
+	}
+
+	static String key(int i)
+	{
+		String s = Integer.toString( i );
+
+		return "0000000".substring( Math.min( s.length(), 7 ) ) + s;
+	}
+}
@@ -0,0 +1,324 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.*;
+
+/* ================================================================
+   Test_DurableAvlMap: recovery of DurableAvlMap after a crash
+
+	torn	FRAMES commits, 1 wal frame each. Then, for every
+		frame boundary and for a cut inside every frame,
+		the map is opened from a copy of the wal cut there:
+		it must hold exactly the pairs of the frames before
+		the cut.
+	crash	a checkpoint that "crashes" after the new checkpoint
+		file is in place but before the wal is truncated
+		(forceDir throws), with a remove still buffered:
+		the removed key must stay removed.
+	threads	THREADS threads put/remove (and commit) while small
+		checkpointBytes makes checkpoints run in between;
+		after a reopen the map must equal the TreeMaps of
+		the threads.
+
+   Files go to a new temp directory, deleted at the end.
+
+   Run:   java Test_DurableAvlMap
+	  (prints "ok", or throws at the first error)
+   ================================================================ */
+
+public class Test_DurableAvlMap
+{
+	static final int FRAMES = 60;
+	static final int THREADS = 4;
+	static final int OPS = 20000;		// Per thread
+
+	static volatile Throwable error;	// First error of any thread
+
+	public static void main(String[] args) throws Exception
+	{
+		Path tmp = Files.createTempDirectory( "avl-durable" );
+
+		try
+		{
+			torn( tmp );
+			crash( tmp );
+			threads( tmp );
+		}
+		finally
+		{
+			delete( tmp );
+		}
+
+		System.out.println( "ok" );
+	}
+
+	/* ================================================================
+		torn(tmp): recover from the wal cut at every frame
+	================================================================ */
+	static void torn(Path tmp) throws IOException
+	{
+		Path dir = tmp.resolve( "torn" );
+		DurableAvlMap m = new DurableAvlMap( dir.toString() );
+		TreeMap<String,Integer> ref = new TreeMap<String,Integer>();
+		Random r = new Random( 1 );
+
+		m.checkpointBytes = Long.MAX_VALUE;	// Only the wal
+
+		List<TreeMap<String,Integer>> states = new ArrayList<TreeMap<String,Integer>>();
+		List<Long> ends = new ArrayList<Long>();	// wal size after each frame
+
+		states.add( new TreeMap<String,Integer>() );
+		ends.add( Files.size( dir.resolve( "wal" ) ) );
+
+		for ( int f = 0; f < FRAMES; f++ )
+		{
+			int ops = 1 + r.nextInt( 20 );
+
+			for ( int i = 0; i < ops; i++ )
+			{
+				String k = "k" + r.nextInt( 50 );
+
+				if ( r.nextInt( 3 ) > 0 )
+				{
+					m.put( k, f * 100 + i );
+					ref.put( k, f * 100 + i );
+				}
+				else
+				{
+					m.remove( k );
+					ref.remove( k );
+				}
+			}
+
+			m.commit();
+			states.add( new TreeMap<String,Integer>( ref ) );
+			ends.add( Files.size( dir.resolve( "wal" ) ) );
+		}
+
+		m.close();
+
+		byte[] wal = Files.readAllBytes( dir.resolve( "wal" ) );
+
+		for ( int f = 0; f <= FRAMES; f++ )
+		{
+			int end = (int) (long) ends.get( f );
+
+			recover( tmp, wal, end, states.get( f ) );		// At the boundary
+
+			if ( f < FRAMES )
+			{
+				int next = (int) (long) ends.get( f + 1 );
+
+				recover( tmp, wal, end + 3, states.get( f ) );		// Torn header
+				recover( tmp, wal, (end + next) / 2, states.get( f ) );	// Torn records
+				recover( tmp, wal, next - 1, states.get( f ) );		// 1 byte short
+			}
+		}
+
+		recover( tmp, wal, 5, states.get( 0 ) );		// Torn magic
+	}
+
+	/* ---------------------------------------
+		recover(tmp, wal, len, expect): open
+		a map whose wal is wal[0..len-1]
+	--------------------------------------- */
+	static void recover(Path tmp, byte[] wal, int len, TreeMap<String,Integer> expect) throws IOException
+	{
+		Path dir = tmp.resolve( "cut" );
+
+		delete( dir );
+		Files.createDirectories( dir );
+		Files.write( dir.resolve( "wal" ), Arrays.copyOf( wal, len ) );
+
+		DurableAvlMap m = new DurableAvlMap( dir.toString() );
+
+		same( "wal cut at " + len, m, expect );
+
+		/* -------------------------------------------
+			Writing on after the cut must work too
+		------------------------------------------- */
+		m.put( "after", len );
+		m.close();
+
+		TreeMap<String,Integer> more = new TreeMap<String,Integer>( expect );
+		more.put( "after", len );
+
+		m = new DurableAvlMap( dir.toString() );
+		same( "reopen after cut at " + len, m, more );
+		m.close();
+	}
+
+	/* ================================================================
+		crash(tmp): crash after the checkpoint rename, before the
+		wal truncate
+	================================================================ */
+	static class CrashingMap extends DurableAvlMap
+	{
+		CrashingMap(String dir) throws IOException
+		{
+			super( dir );
+		}
+
+		void forceDir()
+		{
+			throw new IllegalStateException( "crash" );
+		}
+	}
+
+	static void crash(Path tmp) throws IOException
+	{
+		Path dir = tmp.resolve( "crash" );
+		CrashingMap m = new CrashingMap( dir.toString() );
+		TreeMap<String,Integer> ref = new TreeMap<String,Integer>();
+
+		for ( int i = 0; i < 100; i++ )
+		{
+			m.put( "k" + i, i );
+			ref.put( "k" + i, i );
+		}
+
+		m.commit();
+
+		m.remove( "k7" );		// Only in buf
+		ref.remove( "k7" );
+		m.put( "k8", -8 );
+		ref.put( "k8", -8 );
+
+		try
+		{
+			m.checkpoint();
+			fail( "no crash" );
+		}
+		catch ( IllegalStateException e )
+		{
+			if ( ! e.getMessage().equals( "crash" ) )
+				throw e;
+		}
+
+		m.wal.close();			// Gone without close()
+
+		DurableAvlMap back = new DurableAvlMap( dir.toString() );
+
+		same( "crash during checkpoint", back, ref );
+		back.close();
+	}
+
+	/* ================================================================
+		threads(tmp): concurrent put/remove/commit with checkpoints
+	================================================================ */
+	static void threads(Path tmp) throws Exception
+	{
+		Path dir = tmp.resolve( "threads" );
+		final DurableAvlMap m = new DurableAvlMap( dir.toString() );
+		final List<TreeMap<String,Integer>> refs = new ArrayList<TreeMap<String,Integer>>();
+
+		m.checkpointBytes = 1 << 14;		// Many checkpoints
+		m.autoCommitBytes = 1 << 10;
+
+		for ( int i = 0; i < THREADS; i++ )
+			refs.add( new TreeMap<String,Integer>() );
+
+		Thread[] th = new Thread[THREADS];
+
+		for ( int id = 0; id < THREADS; id++ )
+		{
+			final int me = id;
+
+			th[id] = new Thread()
+			{
+				public void run()
+				{
+					try
+					{
+						Random r = new Random( me );
+						TreeMap<String,Integer> ref = refs.get( me );
+
+						for ( int i = 0; i < OPS; i++ )
+						{
+							String k = "t" + me + "-" + r.nextInt( 500 );
+							long op;
+
+							if ( r.nextInt( 3 ) > 0 )
+							{
+								op = m.put( k, i );
+								ref.put( k, i );
+							}
+							else
+							{
+								op = m.remove( k );
+								ref.remove( k );
+							}
+
+							if ( ! Objects.equals( m.get( k ), ref.get( k ) ) )
+								fail( "get(" + k + ")" );
+							if ( r.nextInt( 50 ) == 0 )
+								m.commit( op );
+						}
+					}
+					catch ( Throwable e )
+					{
+						error = e;
+					}
+				}
+			};
+		}
+
+		for ( Thread t : th )
+			t.start();
+		for ( Thread t : th )
+			t.join();
+
+		if ( error != null )
+			throw new RuntimeException( error );
+
+		TreeMap<String,Integer> all = new TreeMap<String,Integer>();
+
+		for ( TreeMap<String,Integer> ref : refs )
+			all.putAll( ref );
+
+		same( "after threads", m, all );
+		m.close();
+
+		DurableAvlMap back = new DurableAvlMap( dir.toString() );
+
+		same( "reopen after threads", back, all );
+		back.close();
+	}
+
+	/* ================================================================
+		same(what, m, expect): m holds exactly the pairs of expect
+	================================================================ */
+	static void same(String what, DurableAvlMap m, TreeMap<String,Integer> expect)
+	{
+		final TreeMap<String,Integer> got = new TreeMap<String,Integer>();
+
+		m.forEach( new BiConsumer<String,Integer>()
+		{
+			public void accept(String k, Integer v)
+			{
+				got.put( k, v );
+			}
+		} );
+
+		if ( ! got.equals( expect ) || m.size() != expect.size() )
+			fail( what + ": " + got.size() + " pairs, expected " + expect.size() );
+	}
+
+	static void fail(String msg)
+	{
+		throw new IllegalStateException( msg );
+	}
+
+	static void delete(Path p) throws IOException
+	{
+		if ( Files.isDirectory( p ) )
+		{
+			File[] files = p.toFile().listFiles();
+
+			for ( File f : files )
+				delete( f.toPath() );
+		}
+
+		Files.deleteIfExists( p );
+	}
+}
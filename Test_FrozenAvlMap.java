@@ -0,0 +1,270 @@
+import java.util.*;
+import java.util.function.*;
+
+/* ================================================================
+   Test_FrozenAvlMap: ADT_BY_AVL.freeze() (FrozenAvlMap)
+
+	sizes	every n = 0 .. 130 (all shapes of the last Eytzinger
+		level), and some big n: next/prev walk all slots in
+		key order, first/last at both ends
+	random	SEEDS maps of random keys of one of the KINDS below,
+		frozen and compared with a TreeMap: get, containsKey,
+		ceilingKey, floorKey, firstKey, lastKey, rangeScan,
+		forEach, size, for keys in the map, next to them, and
+		outside the common prefix; 16 bit prefixes just when
+		needed
+	copy	a frozen map does not see later changes
+
+   Key kinds (see key()): a long common prefix, keys that are
+   prefixes of other keys, chars > 0xFF (16 bit prefixes), and
+   queries with chars > 0xFF in an 8 bit map (pack() saturates).
+
+   Run:   java Test_FrozenAvlMap
+	  (prints "ok", or throws at the first error)
+   ================================================================ */
+
+public class Test_FrozenAvlMap
+{
+	static final int SEEDS = 400;
+	static final int QUERIES = 300;		// Per seed
+	static final int KINDS = 5;
+
+	public static void main(String[] args)
+	{
+		for ( int n = 0; n <= 130; n++ )
+			sizes( n );
+
+		for ( int n : new int[] { 1000, 1023, 1024, 1025, 65537 } )
+			sizes( n );
+
+		for ( int seed = 0; seed < SEEDS; seed++ )
+			random( seed );
+
+		copy();
+
+		System.out.println( "ok" );
+	}
+
+	/* ================================================================
+		sizes(n): n keys; next(), prev(), first(), last()
+	================================================================ */
+	static void sizes(int n)
+	{
+		ADT_BY_AVL t = new ADT_BY_AVL();
+
+		for ( int i = 0; i < n; i++ )
+			t.put( String.format( "s%06d", i ), i );
+
+		FrozenAvlMap f = t.freeze();
+		String what = "n = " + n;
+		boolean[] seen = new boolean[n + 1];
+		int count = 0;
+
+		if ( f.size() != n )
+			fail( what + ": size() " + f.size() );
+
+		for ( int i = f.first(); i != 0; i = f.next( i ) )
+		{
+			if ( i > n || seen[i] )
+				fail( what + ": next() gave slot " + i + " again (or out of range)" );
+			if ( f.vals[i] != count )
+				fail( what + ": slot " + i + " holds " + f.keys[i] + " as pair " + count );
+
+			seen[i] = true;
+			count++;
+		}
+
+		if ( count != n )
+			fail( what + ": next() walked " + count + " slots" );
+
+		for ( int i = f.last(); i != 0; i = f.prev( i ) )
+			if ( f.vals[i] != --count )
+				fail( what + ": prev() at slot " + i );
+
+		if ( count != 0 )
+			fail( what + ": prev() walked " + ( n - count ) + " slots" );
+	}
+
+	/* ================================================================
+		random(seed): a frozen map of random keys against a TreeMap
+	================================================================ */
+	static void random(int seed)
+	{
+		Random r = new Random( seed );
+		int kind = seed % KINDS;
+		int n = ( seed % 7 == 0 ) ? r.nextInt( 4 ) : r.nextInt( 2000 );
+		ADT_BY_AVL t = new ADT_BY_AVL();
+		TreeMap<String,Integer> ref = new TreeMap<String,Integer>();
+		List<String> queries = new ArrayList<String>();
+		String what = "seed " + seed + ", kind " + kind;
+
+		for ( int i = 0; i < n; i++ )
+		{
+			String k = key( r, kind );
+			Integer v = ( r.nextInt( 20 ) == 0 ) ? null : Integer.valueOf( i );
+
+			t.put( k, v );
+			ref.put( k, v );
+		}
+
+		FrozenAvlMap f = t.freeze();
+
+		if ( f.bits != bits( ref.keySet(), f.common ) )
+			fail( what + ": " + f.bits + " bit prefixes" );
+
+		for ( String k : ref.keySet() )
+			queries.add( k );
+
+		for ( int q = 0; q < QUERIES; q++ )
+		{
+			String k = key( r, ( kind == 3 ) ? 4 : kind );
+
+			queries.add( k );
+			queries.add( k.substring( 0, r.nextInt( k.length() + 1 ) ) );
+			queries.add( k + (char) r.nextInt( 0x300 ) );
+		}
+
+		queries.add( "" );
+		queries.add( String.valueOf( (char) 0xFFFF ) );
+
+		for ( String k : queries )
+			query( f, ref, k, what );
+
+		if ( f.size() != ref.size() || ! Objects.equals( f.firstKey(), first( ref ) )
+		     || ! Objects.equals( f.lastKey(), last( ref ) ) )
+			fail( what + ": size, firstKey or lastKey" );
+
+		if ( ! pairs( f, null, null ).equals( new ArrayList<Object>( ref.entrySet() ) ) )
+			fail( what + ": forEach" );
+
+		for ( int q = 0; q < 50; q++ )
+		{
+			String a = ( r.nextInt( 6 ) == 0 ) ? null : queries.get( r.nextInt( queries.size() ) );
+			String b = ( r.nextInt( 6 ) == 0 ) ? null : queries.get( r.nextInt( queries.size() ) );
+			SortedMap<String,Integer> sub;
+
+			if ( a == null )
+				sub = ( b == null ) ? ref : ref.headMap( b );
+			else if ( b == null )
+				sub = ref.tailMap( a );
+			else
+				sub = ( a.compareTo( b ) <= 0 ) ? ref.subMap( a, b ) : new TreeMap<String,Integer>();
+
+			if ( ! pairs( f, a, b ).equals( new ArrayList<Object>( sub.entrySet() ) ) )
+				fail( what + ": rangeScan(" + a + ", " + b + ")" );
+		}
+	}
+
+	/* ---------------------------------------
+		key(r, kind): a random key
+	--------------------------------------- */
+	static String key(Random r, int kind)
+	{
+		switch ( kind )
+		{
+		case 0:					// Common prefix, fixed length
+			return String.format( "user/%06d", r.nextInt( 5000 ) );
+
+		case 1:					// Prefixes of each other
+			return "p" + Integer.toString( r.nextInt( 3000 ), 3 ).replace( '0', ' ' );
+
+		case 2:					// Long equal parts past 8 chars
+			return "abcdefghij".substring( 0, r.nextInt( 11 ) ) + r.nextInt( 30 );
+
+		default:				// 3: 8 bit chars, 4: > 0xFF too
+			char[] c = new char[1 + r.nextInt( 12 )];
+
+			for ( int i = 0; i < c.length; i++ )
+				c[i] = (char) ( ( kind == 4 && r.nextInt( 4 ) == 0 ) ? 0xF0 + r.nextInt( 0x200 )
+										    : 0xF8 + r.nextInt( 8 ) );
+
+			return new String( c );
+		}
+	}
+
+	/* ---------------------------------------
+		query(f, ref, k, what): all lookups of
+		key k
+	--------------------------------------- */
+	static void query(FrozenAvlMap f, TreeMap<String,Integer> ref, String k, String what)
+	{
+		if ( ! Objects.equals( f.get( k ), ref.get( k ) ) || f.containsKey( k ) != ref.containsKey( k ) )
+			fail( what + ": get(" + k + ")" );
+		if ( ! Objects.equals( f.ceilingKey( k ), ref.ceilingKey( k ) ) )
+			fail( what + ": ceilingKey(" + k + ") = " + f.ceilingKey( k ) + ", not " + ref.ceilingKey( k ) );
+		if ( ! Objects.equals( f.floorKey( k ), ref.floorKey( k ) ) )
+			fail( what + ": floorKey(" + k + ") = " + f.floorKey( k ) + ", not " + ref.floorKey( k ) );
+	}
+
+	/* ---------------------------------------
+		bits(keys, common): 16 if a key has a
+		char > 0xFF in the 8 chars after common
+	--------------------------------------- */
+	static int bits(Set<String> keys, String common)
+	{
+		for ( String k : keys )
+			for ( int j = common.length(); j < Math.min( k.length(), common.length() + 8 ); j++ )
+				if ( k.charAt( j ) > 0xFF )
+					return 16;
+
+		return 8;
+	}
+
+	static String first(TreeMap<String,Integer> ref)
+	{
+		return ref.isEmpty() ? null : ref.firstKey();
+	}
+
+	static String last(TreeMap<String,Integer> ref)
+	{
+		return ref.isEmpty() ? null : ref.lastKey();
+	}
+
+	/* ---------------------------------------
+		pairs(f, a, b): rangeScan(a, b) (forEach
+		if both null) as a list of entries
+	--------------------------------------- */
+	static List<Object> pairs(FrozenAvlMap f, String a, String b)
+	{
+		final List<Object> out = new ArrayList<Object>();
+		BiConsumer<String,Integer> add = new BiConsumer<String,Integer>()
+		{
+			public void accept(String k, Integer v)
+			{
+				out.add( new AbstractMap.SimpleEntry<String,Integer>( k, v ) );
+			}
+		};
+
+		if ( a == null && b == null )
+			f.forEach( add );
+		else
+			f.rangeScan( a, b, add );
+
+		return out;
+	}
+
+	/* ================================================================
+		copy(): changes after freeze() are not seen
+	================================================================ */
+	static void copy()
+	{
+		ADT_BY_AVL t = new ADT_BY_AVL();
+
+		for ( int i = 0; i < 100; i++ )
+			t.put( "c" + i, i );
+
+		FrozenAvlMap f = t.freeze();
+
+		t.put( "c5", -5 );
+		t.put( "new", 1 );
+		t.remove( "c7" );
+
+		if ( f.get( "c5" ) != 5 || f.containsKey( "new" ) || f.get( "c7" ) != 7 || f.size() != 100 )
+			fail( "frozen map changed with the tree" );
+	}
+
+	static void fail(String msg)
+	{
+		throw new IllegalStateException( msg );
+	}
+}
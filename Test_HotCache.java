@@ -0,0 +1,230 @@
+import java.util.*;
+
+/* ================================================================
+   Test_HotCache: the hot key cache of ADT_BY_AVL (setHotCache)
+
+	random	put/get/remove on 80 keys with 1 .. 1024 slots, with
+		and without prefixKeys and LRU mode, against a
+		TreeMap. 1 op in 5 removes a node with 2 children:
+		its successor's pair moves into it, so the successor
+		key must then be found in its new node (get, and a
+		put that changes the value).
+	rebuild	the nodes are replaced or moved (setOrderStats,
+		bulkLoad, split, union) while the cache holds them
+
+   After every op the cache is checked: every cached node is in
+   the BST and holds the key of its slot's hash.
+
+   Run:   java Test_HotCache
+	  (prints "ok", or throws at the first error)
+   ================================================================ */
+
+public class Test_HotCache
+{
+	static final int OPS = 100000;		// Per run
+	static final int KEYS = 80;
+
+	public static void main(String[] args)
+	{
+		for ( int slots : new int[] { 1, 8, 64, 1024 } )
+			for ( int mode = 0; mode < 3; mode++ )
+				random( slots, mode );
+
+		rebuild();
+
+		System.out.println( "ok" );
+	}
+
+	/* ================================================================
+		random(slots, mode): mode 0 = plain, 1 = prefixKeys,
+		2 = LRU mode (capacity KEYS / 2)
+	================================================================ */
+	static void random(int slots, int mode)
+	{
+		Random r = new Random( slots * 3 + mode );
+		ADT_BY_AVL t = new ADT_BY_AVL( mode == 1 );
+		TreeMap<String,Integer> ref = new TreeMap<String,Integer>();
+		String what = slots + " slots, mode " + mode;
+		int twoChildren = 0;
+
+		t.setHotCache( slots );
+
+		if ( mode == 2 )
+			t.setCapacity( KEYS / 2, 0 );
+
+		for ( int i = 0; i < OPS; i++ )
+		{
+			String k = "k" + r.nextInt( KEYS );
+			int op = r.nextInt( 10 );
+
+			if ( op < 3 )
+			{
+				t.put( k, i );
+				ref.put( k, i );
+			}
+			else if ( op < 6 )
+			{
+				Integer v = t.get( k );
+
+				if ( ! Objects.equals( v, ref.get( k ) ) )
+					fail( what + ": get(" + k + ") = " + v + ", not " + ref.get( k ) );
+			}
+			else if ( op < 8 )
+			{
+				t.remove( k );
+				ref.remove( k );
+			}
+			else
+			{
+				Node p = twoChildren( t.root, r );
+
+				if ( p != null )
+				{
+					String k2 = p.key;
+					Node s = ADT_BY_AVL.successor( p );
+					String sk = s.key;
+
+					t.get( sk );		// Cache both
+					t.get( k2 );
+					t.remove( k2 );
+					ref.remove( k2 );
+					twoChildren++;
+
+					if ( ! Objects.equals( t.get( sk ), ref.get( sk ) ) )
+						fail( what + ": successor " + sk + " lost after removing " + k2 );
+
+					t.put( sk, -i );
+					ref.put( sk, -i );
+
+					if ( t.get( sk ) != -i || t.findNode( sk ).value != -i )
+						fail( what + ": put(" + sk + ") went to a stale node" );
+				}
+			}
+
+			if ( mode == 2 )
+				ref.keySet().retainAll( keys( t ) );	// Evicted
+
+			checkCache( t, what + ", op " + i );
+		}
+
+		if ( ! keys( t ).equals( ref.keySet() ) )
+			fail( what + ": keys differ" );
+		if ( twoChildren == 0 || t.hotHits == 0 )
+			fail( what + ": cache not used" );
+	}
+
+	/* ---------------------------------------
+		twoChildren(x, r): a random node with 2
+		children in subtree x (null if none)
+	--------------------------------------- */
+	static Node twoChildren(Node x, Random r)
+	{
+		Node found = null;
+
+		while ( x != null )
+		{
+			if ( x.left != null && x.right != null )
+				found = x;
+
+			if ( found != null && r.nextInt( 3 ) == 0 )
+				break;
+
+			x = r.nextBoolean() ? x.left : x.right;
+		}
+
+		return found;
+	}
+
+	/* ================================================================
+		rebuild(): nodes replaced or moved to another tree
+	================================================================ */
+	static void rebuild()
+	{
+		ADT_BY_AVL t = new ADT_BY_AVL();
+
+		t.setHotCache( 64 );
+
+		for ( int i = 0; i < 1000; i++ )
+			t.put( "a" + i, i );
+
+		touch( t );
+		t.setOrderStats( true );		// New nodes
+		checkCache( t, "setOrderStats" );
+		touch( t );
+
+		List<Map.Entry<String,Integer>> pairs = new ArrayList<Map.Entry<String,Integer>>();
+		pairs.add( new AbstractMap.SimpleEntry<String,Integer>( "a5", -1 ) );
+		t.bulkLoad( pairs.iterator() );
+		checkCache( t, "bulkLoad" );
+
+		if ( t.get( "a5" ) != -1 )
+			fail( "bulkLoad: old value of a5" );
+
+		touch( t );
+		ADT_BY_AVL right = t.split( "a5" );	// Cached nodes go to right
+		checkCache( t, "split" );
+
+		if ( t.get( "a50" ) != null || t.get( "a40" ) != 40 )
+			fail( "split: lookup found the other tree" );
+
+		touch( t );
+		right.setHotCache( 64 );
+		touch( right );
+		t.union( right );
+		checkCache( t, "union" );
+		checkCache( right, "union (other)" );
+
+		if ( t.get( "a50" ) != 50 || right.get( "a50" ) != null )
+			fail( "union: lookups" );
+	}
+
+	static void touch(ADT_BY_AVL t)
+	{
+		for ( int i = 0; i < 1000; i += 7 )
+			t.get( "a" + i );
+	}
+
+	/* ================================================================
+		checkCache(t, what): every cached node is in t, under the
+		hash of its key
+	================================================================ */
+	static void checkCache(ADT_BY_AVL t, String what)
+	{
+		if ( t.hotNodes == null )
+			return;
+
+		for ( int j = 0; j < t.hotNodes.length; j++ )
+		{
+			Node x = t.hotNodes[j];
+
+			if ( x == null )
+				continue;
+
+			if ( t.hotHash[j] != x.key.hashCode() )
+				fail( what + ": slot " + j + " has the hash of another key than " + x.key );
+
+			Node y = t.root;
+
+			while ( y != null && y != x )
+				y = ( x.key.compareTo( y.key ) < 0 ) ? y.left : y.right;
+
+			if ( y != x )
+				fail( what + ": cached node " + x.key + " is not in the tree" );
+		}
+	}
+
+	static Set<String> keys(ADT_BY_AVL t)
+	{
+		Set<String> s = new HashSet<String>();
+
+		for ( Node x = ADT_BY_AVL.first( t.root ); x != null; x = ADT_BY_AVL.successor( x ) )
+			s.add( x.key );
+
+		return s;
+	}
+
+	static void fail(String msg)
+	{
+		throw new IllegalStateException( msg );
+	}
+}
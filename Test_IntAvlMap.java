@@ -0,0 +1,236 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+/* ================================================================
+   Test_IntAvlMap: IntAvlMap and LongIntAvlMap
+
+	random	put/get/containsKey/remove of random keys on both
+		maps at once (the long keys far outside the int
+		range, so a key cut to 32 bits would collide),
+		against a TreeMap; every CHECK ops both trees are
+		checked: order, heights, balance, parent links
+	edges	MIN_VALUE / MAX_VALUE keys, missingValue stored as
+		a real value, empty map
+	generated LongIntAvlMap.java and LongIntNode.java are what
+		Gen_LongIntAvlMap makes of the int files now
+
+   Run:   java Test_IntAvlMap [directory of the sources]
+	  (prints "ok", or throws at the first error)
+   ================================================================ */
+
+public class Test_IntAvlMap
+{
+	static final int OPS = 300000;
+	static final int KEYS = 5000;
+	static final int CHECK = 997;
+	static final long SPREAD = 1L << 33;	// Long key = int key * SPREAD
+
+	public static void main(String[] args) throws IOException
+	{
+		random();
+		edges();
+		generated( Paths.get( (args.length > 0) ? args[0] : "." ) );
+
+		System.out.println( "ok" );
+	}
+
+	/* ================================================================
+		random(): both maps against 1 TreeMap
+	================================================================ */
+	static void random()
+	{
+		Random r = new Random( 1 );
+		IntAvlMap m = new IntAvlMap( -1 );
+		LongIntAvlMap lm = new LongIntAvlMap( -1 );
+		TreeMap<Integer,Integer> ref = new TreeMap<Integer,Integer>();
+
+		for ( int i = 0; i < OPS; i++ )
+		{
+			int k = r.nextInt( KEYS ) - KEYS / 2;
+			int op = r.nextInt( 10 );
+
+			if ( op < 4 )
+			{
+				m.put( k, i );
+				lm.put( k * SPREAD, i );
+				ref.put( k, i );
+			}
+			else if ( op < 7 )
+			{
+				Integer v = ref.get( k );
+				int want = ( v == null ) ? -1 : v;
+
+				if ( m.get( k ) != want || lm.get( k * SPREAD ) != want )
+					fail( "get(" + k + ")" );
+				if ( m.containsKey( k ) != ( v != null ) || lm.containsKey( k * SPREAD ) != ( v != null ) )
+					fail( "containsKey(" + k + ")" );
+			}
+			else
+			{
+				m.remove( k );
+				lm.remove( k * SPREAD );
+				ref.remove( k );
+			}
+
+			if ( i % CHECK == 0 )
+				check( m, lm, ref, "op " + i );
+		}
+
+		check( m, lm, ref, "end" );
+
+		for ( int k : new ArrayList<Integer>( ref.keySet() ) )
+		{
+			m.remove( k );
+			lm.remove( k * SPREAD );
+		}
+
+		if ( m.root != null || lm.root != null )
+			fail( "not empty after removing all keys" );
+	}
+
+	/* ================================================================
+		edges(): extreme keys, missingValue
+	================================================================ */
+	static void edges()
+	{
+		IntAvlMap m = new IntAvlMap( 7 );
+		LongIntAvlMap lm = new LongIntAvlMap( 7 );
+
+		if ( m.get( 0 ) != 7 || lm.get( 0 ) != 7 || m.containsKey( 0 ) || lm.containsKey( 0 ) )
+			fail( "empty map" );
+
+		int[] keys = { Integer.MIN_VALUE, -1, 0, 1, Integer.MAX_VALUE };
+
+		for ( int i = 0; i < keys.length; i++ )
+		{
+			m.put( keys[i], 7 );			// missingValue as a value
+			lm.put( keys[i], i );
+		}
+
+		lm.put( Long.MIN_VALUE, 100 );
+		lm.put( Long.MAX_VALUE, 101 );
+
+		for ( int i = 0; i < keys.length; i++ )
+			if ( ! m.containsKey( keys[i] ) || m.get( keys[i] ) != 7 || lm.get( keys[i] ) != i )
+				fail( "edge key " + keys[i] );
+
+		if ( lm.get( Long.MIN_VALUE ) != 100 || lm.get( Long.MAX_VALUE ) != 101
+		     || lm.get( (long) Integer.MAX_VALUE + 1 ) != 7 )
+			fail( "long edge keys" );
+
+		checkInt( m.root, null, null, null );
+		checkLong( lm.root, null, null, null );
+	}
+
+	/* ================================================================
+		generated(dir): run the generator on a copy of the int
+		files, compare with the long files in dir
+	================================================================ */
+	static void generated(Path dir) throws IOException
+	{
+		Path tmp = Files.createTempDirectory( "avl-gen" );
+		String[] files = { "IntNode.java", "IntAvlMap.java", "LongIntNode.java", "LongIntAvlMap.java" };
+
+		try
+		{
+			Files.copy( dir.resolve( files[0] ), tmp.resolve( files[0] ) );
+			Files.copy( dir.resolve( files[1] ), tmp.resolve( files[1] ) );
+
+			Gen_LongIntAvlMap.generate( tmp, "IntNode", Gen_LongIntAvlMap.NODE_NOTE_IN, Gen_LongIntAvlMap.NODE_NOTE_OUT );
+			Gen_LongIntAvlMap.generate( tmp, "IntAvlMap", Gen_LongIntAvlMap.NOTE_IN, Gen_LongIntAvlMap.NOTE_OUT );
+
+			for ( int i = 2; i < files.length; i++ )
+				if ( ! Arrays.equals( Files.readAllBytes( tmp.resolve( files[i] ) ), Files.readAllBytes( dir.resolve( files[i] ) ) ) )
+					fail( files[i] + " is not up to date: run \"java Gen_LongIntAvlMap\"" );
+		}
+		finally
+		{
+			for ( String f : files )
+				Files.deleteIfExists( tmp.resolve( f ) );
+
+			Files.delete( tmp );
+		}
+	}
+
+	/* ================================================================
+		check(m, lm, ref, what): same keys in order, valid trees
+	================================================================ */
+	static void check(IntAvlMap m, LongIntAvlMap lm, TreeMap<Integer,Integer> ref, String what)
+	{
+		List<Integer> keys = new ArrayList<Integer>();
+		List<Long> lkeys = new ArrayList<Long>();
+
+		checkInt( m.root, null, keys, what );
+		checkLong( lm.root, null, lkeys, what );
+
+		if ( ! keys.equals( new ArrayList<Integer>( ref.keySet() ) ) )
+			fail( what + ": int keys differ" );
+		if ( lkeys.size() != keys.size() )
+			fail( what + ": long keys differ" );
+
+		for ( int i = 0; i < keys.size(); i++ )
+			if ( lkeys.get( i ) != keys.get( i ) * SPREAD )
+				fail( what + ": long key " + lkeys.get( i ) );
+	}
+
+	/* ---------------------------------------
+		checkInt / checkLong(x, parent, keys,
+		what): subtree x, its keys appended in
+		order. Return: its height
+	--------------------------------------- */
+	static int checkInt(IntNode x, IntNode parent, List<Integer> keys, String what)
+	{
+		if ( x == null )
+			return 0;
+		if ( x.parent != parent )
+			fail( what + ": bad parent link at " + x.key );
+
+		int hl = checkInt( x.left, x, keys, what );
+
+		if ( keys != null )
+		{
+			if ( ! keys.isEmpty() && keys.get( keys.size() - 1 ) >= x.key )
+				fail( what + ": keys out of order at " + x.key );
+
+			keys.add( x.key );
+		}
+
+		int hr = checkInt( x.right, x, keys, what );
+
+		if ( x.height != Math.max( hl, hr ) + 1 || Math.abs( hl - hr ) > 1 )
+			fail( what + ": not AVL at " + x.key );
+
+		return x.height;
+	}
+
+	static int checkLong(LongIntNode x, LongIntNode parent, List<Long> keys, String what)
+	{
+		if ( x == null )
+			return 0;
+		if ( x.parent != parent )
+			fail( what + ": bad parent link at " + x.key );
+
+		int hl = checkLong( x.left, x, keys, what );
+
+		if ( keys != null )
+		{
+			if ( ! keys.isEmpty() && keys.get( keys.size() - 1 ) >= x.key )
+				fail( what + ": keys out of order at " + x.key );
+
+			keys.add( x.key );
+		}
+
+		int hr = checkLong( x.right, x, keys, what );
+
+		if ( x.height != Math.max( hl, hr ) + 1 || Math.abs( hl - hr ) > 1 )
+			fail( what + ": not AVL at " + x.key );
+
+		return x.height;
+	}
+
+	static void fail(String msg)
+	{
+		throw new IllegalStateException( msg );
+	}
+}
@@ -0,0 +1,233 @@
+import java.util.*;
+
+/* ================================================================
+   Test_Lru: LRU mode of ADT_BY_AVL (setCapacity)
+
+	random	put/get/remove of random keys with maxEntries = 1, 2,
+		3, 10 and 100, against an access-ordered
+		LinkedHashMap that drops its eldest entry when full.
+		Every CHECK ops: the access-order list (both links,
+		oldest to newest) must equal the LinkedHashMap, and
+		the BST must be a valid AVL tree with the right
+		sizes and sums (orderStats and SUM are on). At the
+		end hits, misses and evictions must match.
+	bytes	maxBytes only: the newest pairs that fit stay
+	switch	LRU mode switched on for a full tree (evicts at
+		once), putAll in LRU mode, then switched off (no
+		more evictions)
+
+   Run:   java Test_Lru
+	  (prints "ok", or throws at the first error)
+   ================================================================ */
+
+public class Test_Lru
+{
+	static final int OPS = 200000;		// Per capacity
+	static final int CHECK = 97;
+
+	public static void main(String[] args)
+	{
+		for ( int cap : new int[] { 1, 2, 3, 10, 100 } )
+			random( cap );
+
+		bytes();
+		switchOnOff();
+
+		System.out.println( "ok" );
+	}
+
+	/* ================================================================
+		Lru: LinkedHashMap in access order, with at most cap
+		entries
+	================================================================ */
+	@SuppressWarnings("serial")
+	static class Lru extends LinkedHashMap<String,Integer>
+	{
+		final int cap;
+
+		Lru(int cap)
+		{
+			super( 16, 0.75f, true );
+			this.cap = cap;
+		}
+
+		protected boolean removeEldestEntry(Map.Entry<String,Integer> e)
+		{
+			return size() > cap;
+		}
+	}
+
+	/* ================================================================
+		random(cap): random put/get/remove with maxEntries = cap
+	================================================================ */
+	static void random(int cap)
+	{
+		Random r = new Random( cap );
+		Lru ref = new Lru( cap );
+		ADT_BY_AVL t = new ADT_BY_AVL();
+		long hits = 0, misses = 0, evictions = 0;
+
+		t.setOrderStats( true );
+		t.setMonoid( AvlMonoid.SUM );
+		t.setCapacity( cap, 0 );
+
+		for ( int i = 0; i < OPS; i++ )
+		{
+			String k = "k" + r.nextInt( 3 * cap + 5 );
+			int op = r.nextInt( 10 );
+
+			if ( op < 4 )
+			{
+				int v = r.nextInt( 100 );
+
+				if ( ! ref.containsKey( k ) && ref.size() == cap )
+					evictions++;
+
+				ref.put( k, v );
+				t.put( k, v );
+			}
+			else if ( op < 8 )
+			{
+				Integer v = ref.get( k );
+
+				if ( v == null )
+					misses++;
+				else
+					hits++;
+
+				if ( ! Objects.equals( v, t.get( k ) ) )
+					fail( "cap " + cap + ": get(" + k + ")" );
+			}
+			else
+			{
+				ref.remove( k );
+				t.remove( k );
+			}
+
+			if ( i % CHECK == 0 )
+				check( t, ref, "cap " + cap + ", op " + i );
+		}
+
+		check( t, ref, "cap " + cap );
+
+		if ( t.hits != hits || t.misses != misses || t.evictions != evictions )
+			fail( "cap " + cap + ": hits " + t.hits + "/" + hits + ", misses " + t.misses + "/" + misses
+			      + ", evictions " + t.evictions + "/" + evictions );
+	}
+
+	/* ================================================================
+		bytes(): maxBytes for 10 pairs
+	================================================================ */
+	static void bytes()
+	{
+		ADT_BY_AVL t = new ADT_BY_AVL();
+		long max = 10 * ADT_BY_AVL.entryBytes( "k00" );
+
+		t.setCapacity( 0, max );
+
+		for ( int i = 0; i < 100; i++ )
+			t.put( String.format( "k%02d", i ), i );
+
+		if ( t.entries != 10 || t.bytes != max || ! t.oldest.key.equals( "k90" ) )
+			fail( "maxBytes: " + t.entries + " entries, " + t.bytes + " bytes" );
+
+		checkAvl( t, t.root, "maxBytes" );
+	}
+
+	/* ================================================================
+		switchOnOff(): LRU mode on a full tree, then off
+	================================================================ */
+	static void switchOnOff()
+	{
+		ADT_BY_AVL t = new ADT_BY_AVL();
+
+		for ( int i = 0; i < 1000; i++ )
+			t.put( "x" + i, i );
+
+		t.setCapacity( 100, 0 );
+		checkAvl( t, t.root, "switched on" );
+
+		if ( t.entries != 100 || ADT_BY_AVL.size( t.root ) != 100 )
+			fail( "switched on: " + t.entries + " entries" );
+
+		t.putAll( new String[] { "a", "b" }, new Integer[] { 1, 2 }, 2 );
+
+		if ( t.entries != 100 || ! t.newest.key.equals( "b" ) )
+			fail( "putAll in LRU mode" );
+
+		t.setCapacity( 0, 0 );
+
+		for ( int i = 0; i < 1000; i++ )
+			t.put( "y" + i, i );
+
+		checkAvl( t, t.root, "switched off" );
+
+		if ( ADT_BY_AVL.size( t.root ) != 1100 || t.evictions != 902 )
+			fail( "switched off: " + ADT_BY_AVL.size( t.root ) + " keys, " + t.evictions + " evictions" );
+	}
+
+	/* ================================================================
+		check(t, ref, what): the access-order list equals ref,
+		and the BST is valid
+	================================================================ */
+	static void check(ADT_BY_AVL t, Lru ref, String what)
+	{
+		Iterator<Map.Entry<String,Integer>> it = ref.entrySet().iterator();
+		LruNode prev = null;
+		long sum = 0;
+
+		for ( LruNode x = t.oldest; x != null; x = x.newer )
+		{
+			if ( ! it.hasNext() )
+				fail( what + ": extra pair " + x.key );
+
+			Map.Entry<String,Integer> e = it.next();
+
+			if ( ! x.key.equals( e.getKey() ) || ! Objects.equals( x.value, e.getValue() ) )
+				fail( what + ": " + x.key + " in the list where " + e.getKey() + " should be" );
+			if ( x.older != prev )
+				fail( what + ": bad older link at " + x.key );
+
+			sum += x.value;
+			prev = x;
+		}
+
+		if ( prev != t.newest )
+			fail( what + ": newest is not the end of the list" );
+		if ( it.hasNext() || t.entries != ref.size() )
+			fail( what + ": " + t.entries + " entries, " + ref.size() + " expected" );
+
+		if ( checkAvl( t, t.root, what ) != ref.size() )
+			fail( what + ": BST has other keys than the list" );
+		if ( t.aggregate( null, null ) != sum )
+			fail( what + ": sum" );
+	}
+
+	/* ---------------------------------------
+		checkAvl(t, x, what): heights, balance,
+		parent links, sizes (if kept). Return:
+		the number of nodes
+	--------------------------------------- */
+	static int checkAvl(ADT_BY_AVL t, Node x, String what)
+	{
+		if ( x == null )
+			return 0;
+
+		int n = checkAvl( t, x.left, what ) + checkAvl( t, x.right, what ) + 1;
+
+		if ( x.height != ADT_BY_AVL.getMaxHeight( x.left, x.right ) + 1
+		     || Math.abs( ADT_BY_AVL.height( x.left ) - ADT_BY_AVL.height( x.right ) ) > 1 )
+			fail( what + ": not AVL at " + x.key );
+		if ( ( x.left != null && x.left.parent != x ) || ( x.right != null && x.right.parent != x ) )
+			fail( what + ": bad parent link at " + x.key );
+		if ( t.hasOrderStats() && ((SizedNode) x).size != n )
+			fail( what + ": bad size at " + x.key );
+
+		return n;
+	}
+
+	static void fail(String msg)
+	{
+		throw new IllegalStateException( msg );
+	}
+}
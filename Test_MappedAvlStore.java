@@ -0,0 +1,273 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+/* ================================================================
+   Test_MappedAvlStore: MappedAvlStore (AVL map in mapped files)
+
+	random	put/get/containsKey/remove of random keys (1 to 80
+		chars, some of them 0x100 .. 0x1ff or 0xd800 ..
+		0xffff, so the char compare must give the order of
+		String.compareTo) against a TreeMap; both files have
+		to grow (remap). Every CHECK ops the tree is checked:
+		order, heights, balance, parent links, size, free
+		list. Every ROUND ops the store is closed and opened
+		again, and must still hold the same pairs; now and
+		then compactKeys() is run first.
+	compact	after compactKeys() the key region holds just the
+		live keys (keyBytes() = 2 * their chars)
+	reject	a file that is not a store is refused
+
+   Run:   java Test_MappedAvlStore
+	  (prints "ok", or throws at the first error)
+   ================================================================ */
+
+public class Test_MappedAvlStore
+{
+	static final int OPS = 60000;
+	static final int ROUND = 7500;		// Reopen every ROUND ops
+	static final int CHECK = 997;
+	static final int KEYS = 6000;
+
+	public static void main(String[] args) throws IOException
+	{
+		Path dir = Files.createTempDirectory( "avl-mapped" );
+
+		try
+		{
+			random( dir.resolve( "random" ).toString() );
+			compact( dir.resolve( "compact" ).toString() );
+			reject( dir.resolve( "reject" ).toString() );
+		}
+		finally
+		{
+			for ( String f : new String[] { "random", "compact", "reject" } )
+			{
+				Files.deleteIfExists( dir.resolve( f ) );
+				Files.deleteIfExists( dir.resolve( f + ".keys" ) );
+			}
+
+			Files.delete( dir );
+		}
+
+		System.out.println( "ok" );
+	}
+
+	/* ================================================================
+		random(file): random changes, closed and opened again
+		every ROUND ops
+	================================================================ */
+	static void random(String file) throws IOException
+	{
+		Random r = new Random( 1 );
+		String[] pool = new String[KEYS];
+		TreeMap<String,Integer> ref = new TreeMap<String,Integer>();
+		MappedAvlStore m = new MappedAvlStore( file, -1 );
+
+		for ( int i = 0; i < KEYS; i++ )
+			pool[i] = key( r );
+
+		for ( int i = 1; i <= OPS; i++ )
+		{
+			String k = pool[r.nextInt( KEYS )];
+			int op = r.nextInt( 10 );
+
+			if ( op < 5 )
+			{
+				m.put( k, i );
+				ref.put( k, i );
+			}
+			else if ( op < 8 )
+			{
+				Integer v = ref.get( k );
+
+				if ( m.get( k ) != ( ( v == null ) ? -1 : v ) )
+					fail( "op " + i + ": get(" + k + ")" );
+				if ( m.containsKey( k ) != ( v != null ) )
+					fail( "op " + i + ": containsKey(" + k + ")" );
+			}
+			else
+			{
+				m.remove( k );
+				ref.remove( k );
+			}
+
+			if ( i % CHECK == 0 )
+				check( m, ref, "op " + i );
+
+			if ( i % ROUND == 0 )
+			{
+				if ( i % (3 * ROUND) == 0 )
+					m.compactKeys();
+
+				m.close();
+				m = new MappedAvlStore( file, -1 );
+				check( m, ref, "reopened at op " + i );
+			}
+		}
+
+		if ( m.nodes.capacity() <= MappedAvlStore.HEADER_SIZE + MappedAvlStore.INITIAL_NODES * MappedAvlStore.NODE_SIZE
+		     || m.keys.capacity() <= MappedAvlStore.INITIAL_KEY_BYTES )
+			fail( "the files did not grow" );
+
+		m.close();
+	}
+
+	/* ---------------------------------------
+		key(r): 1 to 80 chars, mostly ASCII
+	--------------------------------------- */
+	static String key(Random r)
+	{
+		char[] c = new char[1 + r.nextInt( 80 )];
+
+		for ( int i = 0; i < c.length; i++ )
+		{
+			int t = r.nextInt( 20 );
+
+			if ( t == 0 )
+				c[i] = (char) ( 0x100 + r.nextInt( 0x100 ) );
+			else if ( t == 1 )
+				c[i] = (char) ( 0xd800 + r.nextInt( 0x2800 ) );
+			else
+				c[i] = (char) ( 'a' + r.nextInt( 4 ) );	// Long common prefixes
+		}
+
+		return new String( c );
+	}
+
+	/* ================================================================
+		compact(file): keyBytes() before and after compactKeys()
+	================================================================ */
+	static void compact(String file) throws IOException
+	{
+		TreeMap<String,Integer> ref = new TreeMap<String,Integer>();
+		MappedAvlStore m = new MappedAvlStore( file );
+
+		for ( int i = 0; i < 5000; i++ )
+		{
+			m.put( "c" + i, i );
+			ref.put( "c" + i, i );
+		}
+
+		int before = m.keyBytes();
+
+		for ( int i = 0; i < 5000; i += 3 )
+		{
+			m.remove( "c" + i );
+			ref.remove( "c" + i );
+		}
+
+		if ( m.keyBytes() != before )
+			fail( "remove changed keyBytes()" );
+
+		m.compactKeys();
+		check( m, ref, "compacted" );
+
+		long chars = 0;
+
+		for ( String k : ref.keySet() )
+			chars += k.length();
+
+		if ( m.keyBytes() != 2 * chars )
+			fail( "compacted: keyBytes() " + m.keyBytes() + ", live keys " + 2 * chars );
+
+		m.put( "new", 1 );			// Goes after the live keys
+		ref.put( "new", 1 );
+		m.close();
+
+		m = new MappedAvlStore( file );
+		check( m, ref, "compacted, reopened" );
+		m.close();
+	}
+
+	/* ================================================================
+		reject(file): not a store
+	================================================================ */
+	static void reject(String file) throws IOException
+	{
+		Files.write( Paths.get( file ), new byte[4096] );
+
+		try
+		{
+			new MappedAvlStore( file ).close();
+		}
+		catch ( IOException e )
+		{
+			return;
+		}
+
+		fail( "opened a file that is not a store" );
+	}
+
+	/* ================================================================
+		check(m, ref, what): same pairs, valid tree, free list
+		and tree together hold every node below NEXT
+	================================================================ */
+	static void check(MappedAvlStore m, TreeMap<String,Integer> ref, String what)
+	{
+		List<String> keys = new ArrayList<String>();
+		List<Integer> vals = new ArrayList<Integer>();
+		int next = m.nodes.getInt( MappedAvlStore.H_NEXT );
+		boolean[] used = new boolean[next];
+
+		checkAvl( m, m.root(), MappedAvlStore.NIL, keys, vals, used, what );
+
+		if ( ! keys.equals( new ArrayList<String>( ref.keySet() ) ) )
+			fail( what + ": keys differ" );
+		if ( ! vals.equals( new ArrayList<Integer>( ref.values() ) ) )
+			fail( what + ": values differ" );
+		if ( m.size() != ref.size() )
+			fail( what + ": size() " + m.size() + " != " + ref.size() );
+
+		for ( int n = m.nodes.getInt( MappedAvlStore.H_FREE ); n != MappedAvlStore.NIL; n = m.left( n ) )
+		{
+			if ( n >= next || used[n] )
+				fail( what + ": free node " + n + " is in use (or twice on the list)" );
+
+			used[n] = true;
+		}
+
+		for ( int n = 1; n < next; n++ )
+			if ( ! used[n] )
+				fail( what + ": node " + n + " is lost" );
+	}
+
+	/* ---------------------------------------
+		checkAvl(m, x, parent, keys, vals,
+		used, what): subtree x, its pairs
+		appended in order. Return: its height
+	--------------------------------------- */
+	static int checkAvl(MappedAvlStore m, int x, int parent, List<String> keys, List<Integer> vals,
+			    boolean[] used, String what)
+	{
+		if ( x == MappedAvlStore.NIL )
+			return 0;
+		if ( x >= used.length || used[x] )
+			fail( what + ": node " + x + " in the tree twice (or never handed out)" );
+		if ( m.parent( x ) != parent )
+			fail( what + ": bad parent link at node " + x );
+
+		used[x] = true;
+
+		int hl = checkAvl( m, m.left( x ), x, keys, vals, used, what );
+		String k = m.keyOf( x );
+
+		if ( ! keys.isEmpty() && keys.get( keys.size() - 1 ).compareTo( k ) >= 0 )
+			fail( what + ": keys out of order at node " + x );
+
+		keys.add( k );
+		vals.add( m.value( x ) );
+
+		int hr = checkAvl( m, m.right( x ), x, keys, vals, used, what );
+
+		if ( m.height( x ) != Math.max( hl, hr ) + 1 || Math.abs( hl - hr ) > 1 )
+			fail( what + ": not AVL at node " + x );
+
+		return m.height( x );
+	}
+
+	static void fail(String msg)
+	{
+		throw new IllegalStateException( msg );
+	}
+}
@@ -0,0 +1,260 @@
+import java.util.*;
+
+/* ================================================================
+   Test_OrderStats: rank, select and countInRange of ADT_BY_AVL
+
+	random	SEEDS runs of put, remove, putAll and bulkLoad on
+		small key sets, with and without prefixKeys. Some
+		runs start with orderStats off and switch it on
+		half-way (the nodes are replaced, see retype).
+		Every CHECK ops the sizes are checked, and rank,
+		select and countInRange compared with a TreeMap at
+		random keys, present or not, and at both ends.
+	sorted	fromSorted and split: sizes set without put
+	off	rank/select/countInRange refuse to run when
+		orderStats is off, also after switching it off
+
+   Run:   java Test_OrderStats
+	  (prints "ok", or throws at the first error)
+   ================================================================ */
+
+public class Test_OrderStats
+{
+	static final int SEEDS = 100;
+	static final int OPS = 3000;		// Per seed
+	static final int CHECK = 50;
+
+	public static void main(String[] args)
+	{
+		for ( int seed = 0; seed < SEEDS; seed++ )
+			random( seed );
+
+		sorted();
+		off();
+
+		System.out.println( "ok" );
+	}
+
+	/* ================================================================
+		random(seed): random changes, queries checked against a
+		TreeMap
+	================================================================ */
+	static void random(int seed)
+	{
+		Random r = new Random( seed );
+		ADT_BY_AVL t = new ADT_BY_AVL( seed % 2 == 1 );
+		TreeMap<String,Integer> ref = new TreeMap<String,Integer>();
+		int range = 1 + r.nextInt( 600 );
+
+		if ( seed % 3 != 0 )
+			t.setOrderStats( true );
+
+		for ( int i = 0; i < OPS; i++ )
+		{
+			int op = r.nextInt( 20 );
+			String k = "k" + r.nextInt( range );
+
+			if ( op < 9 )
+			{
+				t.put( k, i );
+				ref.put( k, i );
+			}
+			else if ( op < 17 )
+			{
+				t.remove( k );
+				ref.remove( k );
+			}
+			else if ( op == 17 )
+			{
+				int n = r.nextInt( 50 );
+				String[] keys = new String[n];
+				Integer[] vals = new Integer[n];
+
+				for ( int j = 0; j < n; j++ )
+				{
+					keys[j] = "k" + r.nextInt( range );
+					vals[j] = j;
+					ref.put( keys[j], j );
+				}
+
+				t.putAll( keys, vals, n );
+			}
+			else if ( op == 18 )
+			{
+				List<Map.Entry<String,Integer>> pairs = new ArrayList<Map.Entry<String,Integer>>();
+
+				for ( int j = r.nextInt( 20 ); j > 0; j-- )
+				{
+					String kk = "k" + r.nextInt( range );
+
+					pairs.add( new AbstractMap.SimpleEntry<String,Integer>( kk, j ) );
+					ref.put( kk, j );
+				}
+
+				t.bulkLoad( pairs.iterator() );
+			}
+			else if ( ! t.hasOrderStats() && i > OPS / 2 )
+				t.setOrderStats( true );
+
+			if ( t.hasOrderStats() && i % CHECK == 0 )
+				check( t, ref, r, range, "seed " + seed + ", op " + i );
+		}
+
+		if ( ! t.hasOrderStats() )
+			t.setOrderStats( true );
+
+		check( t, ref, r, range, "seed " + seed );
+	}
+
+	/* ================================================================
+		sorted(): trees built by fromSorted and split
+	================================================================ */
+	static void sorted()
+	{
+		Random r = new Random( 1 );
+
+		for ( int n : new int[] { 0, 1, 2, 3, 100, 10000 } )
+		{
+			String[] keys = new String[n];
+			Integer[] vals = new Integer[n];
+			TreeMap<String,Integer> ref = new TreeMap<String,Integer>();
+
+			for ( int i = 0; i < n; i++ )
+			{
+				keys[i] = "k" + (100000 + 2 * i);
+				vals[i] = i;
+				ref.put( keys[i], i );
+			}
+
+			ADT_BY_AVL t = ADT_BY_AVL.fromSorted( keys, vals, n );
+
+			t.setOrderStats( true );
+			check( t, ref, r, 2 * n + 200000, "fromSorted " + n );
+
+			String k = "k" + (100000 + r.nextInt( 2 * n + 1 ));
+			ADT_BY_AVL right = t.split( k );
+
+			check( t, new TreeMap<String,Integer>( ref.headMap( k ) ), r, 2 * n + 200000, "split left " + n );
+			check( right, new TreeMap<String,Integer>( ref.tailMap( k ) ), r, 2 * n + 200000, "split right " + n );
+		}
+	}
+
+	/* ================================================================
+		off(): queries without orderStats throw
+	================================================================ */
+	static void off()
+	{
+		ADT_BY_AVL t = new ADT_BY_AVL();
+
+		t.put( "a", 1 );
+		refused( t );
+
+		t.setOrderStats( true );
+
+		if ( t.rank( "b" ) != 1 || ! t.select( 0 ).key.equals( "a" ) )
+			fail( "rank/select after switching on" );
+
+		t.setOrderStats( false );
+		refused( t );
+	}
+
+	static void refused(ADT_BY_AVL t)
+	{
+		int refused = 0;
+
+		try
+		{
+			t.rank( "a" );
+		}
+		catch ( IllegalStateException e )
+		{
+			refused++;
+		}
+
+		try
+		{
+			t.select( 0 );
+		}
+		catch ( IllegalStateException e )
+		{
+			refused++;
+		}
+
+		try
+		{
+			t.countInRange( null, null );
+		}
+		catch ( IllegalStateException e )
+		{
+			refused++;
+		}
+
+		if ( refused != 3 )
+			fail( "order statistics without orderStats" );
+	}
+
+	/* ================================================================
+		check(t, ref, r, range, what): sizes, then rank, select
+		and countInRange at random keys ("k0" .. "k<range+2>")
+	================================================================ */
+	static void check(ADT_BY_AVL t, TreeMap<String,Integer> ref, Random r, int range, String what)
+	{
+		if ( sizes( t.root, what ) != ref.size() )
+			fail( what + ": size " + ADT_BY_AVL.subtreeSize( t.root ) + " != " + ref.size() );
+
+		List<String> keys = new ArrayList<String>( ref.keySet() );
+
+		for ( int i = -1; i <= keys.size(); i++ )		// All of select
+		{
+			Node x = t.select( i );
+			String want = ( i >= 0 && i < keys.size() ) ? keys.get( i ) : null;
+
+			if ( ! Objects.equals( x == null ? null : x.key, want ) )
+				fail( what + ": select(" + i + ") = " + ( x == null ? null : x.key ) + ", not " + want );
+			if ( x != null && t.rank( x.key ) != i )
+				fail( what + ": rank(select(" + i + "))" );
+		}
+
+		for ( int q = 0; q < 20; q++ )
+		{
+			String a = "k" + r.nextInt( range + 3 );
+			String b = "k" + r.nextInt( range + 3 );
+
+			if ( t.rank( a ) != ref.headMap( a ).size() )
+				fail( what + ": rank(" + a + ")" );
+
+			int want = ( a.compareTo( b ) <= 0 ) ? ref.subMap( a, b ).size() : 0;
+
+			if ( t.countInRange( a, b ) != want )
+				fail( what + ": countInRange(" + a + ", " + b + ")" );
+			if ( t.countInRange( null, b ) != ref.headMap( b ).size()
+			     || t.countInRange( a, null ) != ref.tailMap( a ).size() )
+				fail( what + ": countInRange with an open end" );
+		}
+
+		if ( t.countInRange( null, null ) != ref.size() )
+			fail( what + ": countInRange(null, null)" );
+	}
+
+	/* ---------------------------------------
+		sizes(x, what): check SizedNode.size
+		in subtree x. Return: its size
+	--------------------------------------- */
+	static int sizes(Node x, String what)
+	{
+		if ( x == null )
+			return 0;
+
+		int n = sizes( x.left, what ) + sizes( x.right, what ) + 1;
+
+		if ( ((SizedNode) x).size != n )
+			fail( what + ": size " + ((SizedNode) x).size + " at " + x.key + ", is " + n );
+
+		return n;
+	}
+
+	static void fail(String msg)
+	{
+		throw new IllegalStateException( msg );
+	}
+}
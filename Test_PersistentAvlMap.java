@@ -0,0 +1,319 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.*;
+
+/* ================================================================
+   Test_PersistentAvlMap: path copying and snapshots
+
+	random	SEEDS runs of random put/remove against a TreeMap.
+		Every SNAP ops the map is kept as a snapshot, with a
+		copy of the TreeMap; at the end every snapshot must
+		still have its old pairs. Each put/remove must make
+		at most NEW_NODES(height) new nodes (the rest is
+		shared), and none for a put of the same value or a
+		remove of a missing key (same map returned).
+	readers	READERS threads scan the current version while 1
+		writer changes it: every version they see must be a
+		consistent state (sum of values = 0, see readers())
+	files	fromSorted, then AvlSnapshot.write and
+		loadPersistent give the same pairs back
+
+   Run:   java Test_PersistentAvlMap
+	  (prints "ok", or throws at the first error)
+   ================================================================ */
+
+public class Test_PersistentAvlMap
+{
+	static final int SEEDS = 100;
+	static final int OPS = 3000;		// Per seed
+	static final int SNAP = 300;
+	static final int READERS = 3;
+
+	static volatile PersistentAvlMap current;
+	static volatile boolean done;
+	static volatile Throwable error;	// First error of any thread
+
+	public static void main(String[] args) throws Exception
+	{
+		for ( int seed = 0; seed < SEEDS; seed++ )
+			random( seed );
+
+		readers();
+		files();
+
+		System.out.println( "ok" );
+	}
+
+	/* ================================================================
+		random(seed): random changes, old versions checked at
+		the end
+	================================================================ */
+	static void random(int seed)
+	{
+		Random r = new Random( seed );
+		PersistentAvlMap m = PersistentAvlMap.EMPTY;
+		TreeMap<String,Integer> ref = new TreeMap<String,Integer>();
+		List<PersistentAvlMap> snaps = new ArrayList<PersistentAvlMap>();
+		List<TreeMap<String,Integer>> refs = new ArrayList<TreeMap<String,Integer>>();
+		int range = 1 + r.nextInt( 500 );
+
+		for ( int i = 0; i < OPS; i++ )
+		{
+			String k = "k" + r.nextInt( range );
+			PersistentAvlMap old = m;
+
+			if ( r.nextInt( 5 ) < 3 )
+			{
+				Integer v = ref.get( k );
+
+				if ( v == null || r.nextInt( 4 ) != 0 )
+					v = i;			// Else: same value again
+
+				m = m.put( k, v );
+
+				if ( v.equals( ref.put( k, v ) ) && m != old )
+					fail( "seed " + seed + ": put of the same value made a new map" );
+			}
+			else
+			{
+				m = m.remove( k );
+
+				if ( ref.remove( k ) == null && m != old )
+					fail( "seed " + seed + ": remove of a missing key made a new map" );
+			}
+
+			int fresh = newNodes( old.root, m.root );
+			int h = Math.max( PersistentAvlMap.height( old.root ), PersistentAvlMap.height( m.root ) );
+
+			if ( fresh > 2 * h + 2 )
+				fail( "seed " + seed + ": " + fresh + " new nodes for height " + h );
+
+			if ( i % SNAP == 0 )
+			{
+				check( m, ref, "seed " + seed + ", op " + i );
+				snaps.add( m );
+				refs.add( new TreeMap<String,Integer>( ref ) );
+			}
+		}
+
+		check( m, ref, "seed " + seed );
+
+		for ( int j = 0; j < snaps.size(); j++ )
+			check( snaps.get( j ), refs.get( j ), "seed " + seed + ", snapshot " + j );
+	}
+
+	/* ---------------------------------------
+		newNodes(a, b): nodes of b that are not
+		in a (b's shared subtrees are skipped)
+	--------------------------------------- */
+	static int newNodes(PersistentNode a, PersistentNode b)
+	{
+		Set<PersistentNode> old = Collections.newSetFromMap( new IdentityHashMap<PersistentNode,Boolean>() );
+
+		collect( a, old );
+
+		return count( b, old );
+	}
+
+	static void collect(PersistentNode x, Set<PersistentNode> s)
+	{
+		if ( x != null )
+		{
+			s.add( x );
+			collect( x.left, s );
+			collect( x.right, s );
+		}
+	}
+
+	static int count(PersistentNode x, Set<PersistentNode> old)
+	{
+		if ( x == null || old.contains( x ) )
+			return 0;
+
+		return 1 + count( x.left, old ) + count( x.right, old );
+	}
+
+	/* ================================================================
+		readers(): the writer moves 1 unit of value between 2
+		keys per version (2 puts, only the second published), so
+		every published version has a sum of 0
+	================================================================ */
+	static void readers() throws Exception
+	{
+		PersistentAvlMap m = PersistentAvlMap.EMPTY;
+
+		for ( int i = 0; i < 1000; i++ )
+			m = m.put( "k" + i, 0 );
+
+		current = m;
+		done = false;
+
+		Thread[] th = new Thread[READERS];
+
+		for ( int t = 0; t < READERS; t++ )
+		{
+			th[t] = new Thread()
+			{
+				public void run()
+				{
+					try
+					{
+						while ( ! done )
+						{
+							PersistentAvlMap snap = current;
+							final long[] sum = { 0, 0 };
+
+							snap.forEach( new BiConsumer<String,Integer>()
+							{
+								public void accept(String k, Integer v)
+								{
+									sum[0] += v;
+									sum[1]++;
+								}
+							} );
+
+							if ( sum[0] != 0 || sum[1] != snap.size() )
+								fail( "reader saw sum " + sum[0] + ", " + sum[1] + " pairs" );
+						}
+					}
+					catch ( Throwable e )
+					{
+						error = e;
+					}
+				}
+			};
+
+			th[t].start();
+		}
+
+		Random r = new Random( 5 );
+
+		for ( int i = 0; i < 200000 && error == null; i++ )
+		{
+			String a = "k" + r.nextInt( 1000 );
+			String b = "k" + r.nextInt( 1000 );
+
+			if ( a.equals( b ) )
+				continue;
+
+			m = m.put( a, m.get( a ) - 1 );
+			m = m.put( b, m.get( b ) + 1 );
+			current = m;
+		}
+
+		done = true;
+
+		for ( Thread t : th )
+			t.join();
+
+		if ( error != null )
+			throw new RuntimeException( error );
+	}
+
+	/* ================================================================
+		files(): fromSorted, write, loadPersistent
+	================================================================ */
+	static void files() throws IOException
+	{
+		Path tmp = Files.createTempFile( "avl-persistent", ".snap" );
+
+		try
+		{
+			for ( int n : new int[] { 0, 1, 2, 1000, 100000 } )
+			{
+				String[] keys = new String[n];
+				Integer[] vals = new Integer[n];
+				TreeMap<String,Integer> ref = new TreeMap<String,Integer>();
+
+				for ( int i = 0; i < n; i++ )
+				{
+					keys[i] = String.format( "k%07d", i );
+					vals[i] = ( i % 10 == 3 ) ? null : Integer.valueOf( i - 500 );
+					ref.put( keys[i], vals[i] );
+				}
+
+				PersistentAvlMap m = PersistentAvlMap.fromSorted( keys, vals, n );
+
+				check( m, ref, "fromSorted " + n );
+
+				AvlSnapshot.write( m, tmp.toString() );
+				check( AvlSnapshot.loadPersistent( tmp.toString() ), ref, "loadPersistent " + n );
+			}
+		}
+		finally
+		{
+			Files.delete( tmp );
+		}
+
+		try
+		{
+			PersistentAvlMap.fromSorted( new String[] { "b", "a" }, new Integer[] { 1, 2 }, 2 );
+		}
+		catch ( IllegalArgumentException e )
+		{
+			return;
+		}
+
+		fail( "fromSorted of unsorted keys" );
+	}
+
+	/* ================================================================
+		check(m, ref, what): m has exactly the pairs of ref (scan,
+		get, size), and is a valid AVL tree
+	================================================================ */
+	static void check(PersistentAvlMap m, TreeMap<String,Integer> ref, String what)
+	{
+		final List<String> keys = new ArrayList<String>();
+		final List<Integer> vals = new ArrayList<Integer>();
+
+		m.forEach( new BiConsumer<String,Integer>()
+		{
+			public void accept(String k, Integer v)
+			{
+				keys.add( k );
+				vals.add( v );
+			}
+		} );
+
+		if ( ! keys.equals( new ArrayList<String>( ref.keySet() ) ) )
+			fail( what + ": keys differ" );
+		if ( ! vals.equals( new ArrayList<Integer>( ref.values() ) ) )
+			fail( what + ": values differ" );
+		if ( m.size() != ref.size() )
+			fail( what + ": size() " + m.size() + " != " + ref.size() );
+
+		for ( Map.Entry<String,Integer> e : ref.entrySet() )
+			if ( ! Objects.equals( m.get( e.getKey() ), e.getValue() ) || ! m.containsKey( e.getKey() ) )
+				fail( what + ": get(" + e.getKey() + ")" );
+
+		if ( m.containsKey( "~" ) )
+			fail( what + ": containsKey of a missing key" );
+
+		checkAvl( m.root, what );
+	}
+
+	static int checkAvl(PersistentNode x, String what)
+	{
+		if ( x == null )
+			return 0;
+
+		int hl = checkAvl( x.left, what );
+		int hr = checkAvl( x.right, what );
+
+		if ( x.height != Math.max( hl, hr ) + 1 || Math.abs( hl - hr ) > 1 )
+			fail( what + ": not AVL at " + x.key );
+		if ( x.size != PersistentAvlMap.size( x.left ) + 1 + PersistentAvlMap.size( x.right ) )
+			fail( what + ": bad size at " + x.key );
+		if ( ( x.left != null && x.left.key.compareTo( x.key ) >= 0 )
+		     || ( x.right != null && x.right.key.compareTo( x.key ) <= 0 ) )
+			fail( what + ": keys out of order at " + x.key );
+
+		return x.height;
+	}
+
+	static void fail(String msg)
+	{
+		throw new IllegalStateException( msg );
+	}
+}
@@ -0,0 +1,227 @@
+import java.util.*;
+
+/* ================================================================
+   Test_Remove: remove() of ADT_BY_AVL (iterative delete and
+   fixAfterRemove)
+
+	random	SEEDS runs of random put/remove (and removes of the
+		root, a node with 2 children most of the time) on
+		key sets of 1 .. 400 keys, with and without
+		prefixKeys, checked against a TreeMap; then every
+		key is removed
+	ordered	a big tree emptied in key order, then in reverse:
+		the worst case for rebalancing on 1 side
+	listener the random runs again with a RebalanceListener:
+		it must be called with REMOVE during removes, and
+		see up-to-date heights in beforeRestructure and
+		onRestructure
+
+   After the changes the tree is checked as an AVL tree: order,
+   heights, balance, parent links.
+
+   Run:   java Test_Remove
+	  (prints "ok", or throws at the first error)
+   ================================================================ */
+
+public class Test_Remove
+{
+	static final int SEEDS = 200;
+	static final int OPS = 3000;		// Per seed
+	static final int BIG = 1 << 16;
+
+	public static void main(String[] args)
+	{
+		for ( int seed = 0; seed < SEEDS; seed++ )
+			random( seed, null );
+
+		ordered();
+
+		CheckingListener l = new CheckingListener();
+
+		for ( int seed = 0; seed < SEEDS / 4; seed++ )
+			random( seed, l );
+
+		if ( l.removes == 0 )
+			fail( "listener never called on remove" );
+
+		System.out.println( "ok" );
+	}
+
+	/* ================================================================
+		random(seed, l): random put/remove, l as the listener
+	================================================================ */
+	static void random(int seed, CheckingListener l)
+	{
+		Random r = new Random( seed );
+		ADT_BY_AVL t = new ADT_BY_AVL( seed % 2 == 0 );
+		TreeMap<String,Integer> ref = new TreeMap<String,Integer>();
+		int range = 1 + r.nextInt( 400 );
+
+		t.listener = l;
+
+		for ( int i = 0; i < OPS; i++ )
+		{
+			String k = "k" + r.nextInt( range );
+			int op = r.nextInt( 10 );
+
+			if ( l != null )
+				l.op = ( op < 5 ) ? RebalanceListener.INSERT : RebalanceListener.REMOVE;
+
+			if ( op < 5 )
+			{
+				t.put( k, i );
+				ref.put( k, i );
+			}
+			else if ( op < 9 )
+			{
+				t.remove( k );		// Present or not
+				ref.remove( k );
+			}
+			else if ( t.root != null )
+			{
+				k = t.root.key;
+				t.remove( k );
+				ref.remove( k );
+			}
+
+			if ( i % 37 == 0 )
+				check( t, ref, "seed " + seed + ", op " + i );
+		}
+
+		check( t, ref, "seed " + seed );
+
+		if ( l != null )
+			l.op = RebalanceListener.REMOVE;
+
+		for ( String k : new ArrayList<String>( ref.keySet() ) )
+			t.remove( k );
+
+		if ( t.root != null )
+			fail( "seed " + seed + ": not empty after removing all keys" );
+	}
+
+	/* ================================================================
+		ordered(): remove all keys in ascending, then descending
+		order
+	================================================================ */
+	static void ordered()
+	{
+		for ( int desc = 0; desc < 2; desc++ )
+		{
+			ADT_BY_AVL t = new ADT_BY_AVL();
+			TreeMap<String,Integer> ref = new TreeMap<String,Integer>();
+
+			for ( int i = 0; i < BIG; i++ )
+			{
+				t.put( key( i ), i );
+				ref.put( key( i ), i );
+			}
+
+			for ( int i = 0; i < BIG - 1000; i++ )
+			{
+				String k = key( desc == 0 ? i : BIG - 1 - i );
+
+				t.remove( k );
+				ref.remove( k );
+			}
+
+			check( t, ref, desc == 0 ? "ascending" : "descending" );
+
+			if ( t.root.height > 14 )	// AVL bound: 1.44 log2(1000 + 2)
+				fail( "height " + t.root.height + " for 1000 keys" );
+		}
+	}
+
+	/* ================================================================
+		CheckingListener: checks the heights of the whole tree
+		before and after each restructure
+	================================================================ */
+	static class CheckingListener implements RebalanceListener
+	{
+		int op;			// Operation being done
+		int removes;		// Restructures seen during removes
+
+		public void beforeRestructure( ADT_BY_AVL tree, int op )
+		{
+			if ( op != this.op )
+				fail( "listener: op " + op + " during op " + this.op );
+			if ( op == REMOVE )
+				removes++;
+
+			heights( tree.root );
+		}
+
+		public void onRestructure( ADT_BY_AVL tree, int config, String rootKey, int depth )
+		{
+			if ( config < 1 || config > 4 )
+				fail( "listener: config " + config );
+
+			heights( tree.root );
+		}
+
+		static int heights(Node x)
+		{
+			if ( x == null )
+				return 0;
+
+			int h = Math.max( heights( x.left ), heights( x.right ) ) + 1;
+
+			if ( x.height != h )
+				fail( "listener: height " + x.height + " at " + x.key + ", is " + h );
+
+			return h;
+		}
+	}
+
+	/* ================================================================
+		check(t, ref, what): t has exactly the pairs of ref, and
+		is a valid AVL tree
+	================================================================ */
+	static void check(ADT_BY_AVL t, TreeMap<String,Integer> ref, String what)
+	{
+		Node x = ADT_BY_AVL.first( t.root );
+
+		for ( Map.Entry<String,Integer> e : ref.entrySet() )
+		{
+			if ( x == null || ! x.key.equals( e.getKey() ) || ! x.value.equals( e.getValue() ) )
+				fail( what + ": expected " + e.getKey() + ", found " + ( x == null ? null : x.key ) );
+
+			x = ADT_BY_AVL.successor( x );
+		}
+
+		if ( x != null )
+			fail( what + ": extra key " + x.key );
+		if ( t.root != null && t.root.parent != null )
+			fail( what + ": root has a parent" );
+
+		checkAvl( t.root, what );
+	}
+
+	static int checkAvl(Node x, String what)
+	{
+		if ( x == null )
+			return 0;
+
+		int hl = checkAvl( x.left, what );
+		int hr = checkAvl( x.right, what );
+
+		if ( x.height != Math.max( hl, hr ) + 1 || Math.abs( hl - hr ) > 1 )
+			fail( what + ": not AVL at " + x.key );
+		if ( ( x.left != null && x.left.parent != x ) || ( x.right != null && x.right.parent != x ) )
+			fail( what + ": bad parent link at " + x.key );
+
+		return x.height;
+	}
+
+	static void fail(String msg)
+	{
+		throw new IllegalStateException( msg );
+	}
+
+	static String key(int i)
+	{
+		String s = Integer.toString( i );
+
+		return "0000000".substring( Math.min( s.length(), 7 ) ) + s;
+	}
+}
@@ -0,0 +1,339 @@
+import java.util.*;
+import java.util.concurrent.*;
+
+/* ================================================================
+   Test_SetOps: split/join/union/intersect/difference of ADT_BY_AVL
+
+	small	union, intersect and difference of random trees of
+		0 .. 5000 keys (below PARALLEL_HEIGHT: 1 thread),
+		from disjoint to nearly equal key sets
+	parallel the same on trees of BIG keys, higher than
+		PARALLEL_HEIGHT, on a pool of THREADS threads: the
+		work is split into SetOpTasks
+	split	split(k) at random keys (present or not, first,
+		last), then join(k, v, right) puts it back together
+	errors	join out of order, trees with other extras, LRU
+		mode, a tree with itself
+
+   Each part runs without and with extras (orderStats and a SUM
+   monoid). Every result is compared with a TreeMap, then checked
+   as an AVL tree: heights, balance, parent links, and sizes and
+   sums when kept. The other tree must be empty after a set op.
+
+   Run:   java Test_SetOps
+	  (prints "ok", or throws at the first error)
+   ================================================================ */
+
+public class Test_SetOps
+{
+	static final int THREADS = 4;
+	static final int BIG = 80000;
+
+	static final Random r = new Random( 7 );
+
+	public static void main(String[] args)
+	{
+		ForkJoinPool pool = new ForkJoinPool( THREADS );
+
+		try
+		{
+			for ( int e = 0; e < 2; e++ )
+			{
+				small( e == 1 );
+				parallel( e == 1, pool );
+				split( e == 1 );
+			}
+
+			errors();
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+
+		System.out.println( "ok" );
+	}
+
+	/* ================================================================
+		small(ext): all 3 set ops on small trees
+	================================================================ */
+	static void small(boolean ext)
+	{
+		int[][] sizes = { {0, 0}, {0, 50}, {50, 0}, {1, 1}, {100, 100},
+				  {1000, 10}, {10, 1000}, {5000, 5000} };
+
+		for ( int[] n : sizes )
+			for ( int op = ADT_BY_AVL.UNION; op <= ADT_BY_AVL.DIFFERENCE; op++ )
+			{
+				int range = r.nextBoolean() ? 2 * (n[0] + n[1]) + 1 : 1000000000;
+
+				setOp( op, ext, n[0], n[1], range, null );
+			}
+	}
+
+	/* ================================================================
+		parallel(ext, pool): all 3 set ops on trees higher than
+		PARALLEL_HEIGHT
+	================================================================ */
+	static void parallel(boolean ext, ForkJoinPool pool)
+	{
+		for ( int op = ADT_BY_AVL.UNION; op <= ADT_BY_AVL.DIFFERENCE; op++ )
+		{
+			setOp( op, ext, BIG, BIG, 3 * BIG, pool );	// Overlapping keys
+			setOp( op, ext, BIG, BIG / 4, 1000000000, pool );	// Nearly disjoint
+		}
+	}
+
+	/* ---------------------------------------
+		setOp(op, ext, na, nb, range, pool):
+		a op= b with na and nb random keys in
+		[0, range), checked against TreeMaps
+	--------------------------------------- */
+	static void setOp(int op, boolean ext, int na, int nb, int range, ForkJoinPool pool)
+	{
+		TreeMap<String,Integer> ra = new TreeMap<String,Integer>();
+		TreeMap<String,Integer> rb = new TreeMap<String,Integer>();
+		ADT_BY_AVL a = tree( ra, na, range, ext );
+		ADT_BY_AVL b = tree( rb, nb, range, ext );
+
+		a.pool = pool;
+
+		if ( pool != null && Math.min( ADT_BY_AVL.height( a.root ), ADT_BY_AVL.height( b.root ) ) < ADT_BY_AVL.PARALLEL_HEIGHT )
+			fail( "trees not high enough to fork" );
+
+		switch ( op )
+		{
+			case ADT_BY_AVL.UNION:
+				a.union( b );
+				ra.putAll( rb );
+				break;
+			case ADT_BY_AVL.INTERSECT:
+				a.intersect( b );
+				ra.keySet().retainAll( rb.keySet() );
+				break;
+			default:
+				a.difference( b );
+				ra.keySet().removeAll( rb.keySet() );
+		}
+
+		String what = "op " + op + " on " + na + " and " + nb + " keys";
+
+		check( a, ra, what );
+
+		if ( b.root != null )
+			fail( what + ": other tree not empty" );
+
+		/* --------------------------------------------
+			The result is a normal tree afterwards
+		-------------------------------------------- */
+		for ( int i = 0; i < 2000; i++ )
+		{
+			String k = key( r.nextInt( Math.max( range, 1 ) ) );
+
+			if ( r.nextBoolean() )
+			{
+				a.put( k, i );
+				ra.put( k, i );
+			}
+			else
+			{
+				a.remove( k );
+				ra.remove( k );
+			}
+		}
+
+		check( a, ra, what + ", then put/remove" );
+	}
+
+	/* ================================================================
+		split(ext): split at k, join back with a new pair at k
+	================================================================ */
+	static void split(boolean ext)
+	{
+		for ( int n : new int[] { 0, 1, 2, 10, 1000, BIG } )
+			for ( int trial = 0; trial < 4; trial++ )
+			{
+				TreeMap<String,Integer> ref = new TreeMap<String,Integer>();
+				ADT_BY_AVL t = tree( ref, n, 3 * n + 1, ext );
+				String k;
+
+				if ( n > 0 && trial == 1 )
+					k = ref.firstKey();
+				else if ( n > 0 && trial == 2 )
+					k = ref.lastKey();
+				else
+					k = key( r.nextInt( 3 * n + 1 ) );
+
+				ADT_BY_AVL right = t.split( k );
+
+				check( t, new TreeMap<String,Integer>( ref.headMap( k ) ), "split left of " + n );
+				check( right, new TreeMap<String,Integer>( ref.tailMap( k ) ), "split right of " + n );
+
+				/* --------------------------------------------
+					Drop k from right (split just past
+					it), then join with (k, -1)
+				-------------------------------------------- */
+				ADT_BY_AVL rest = right.split( k + "\0" );
+
+				t.join( k, -1, rest );
+
+				TreeMap<String,Integer> joined = new TreeMap<String,Integer>( ref );
+				joined.put( k, -1 );
+
+				check( t, joined, "join of " + n );
+
+				if ( rest.root != null )
+					fail( "join: right tree not empty" );
+			}
+	}
+
+	/* ================================================================
+		errors(): what set ops must refuse
+	================================================================ */
+	static void errors()
+	{
+		TreeMap<String,Integer> ra = new TreeMap<String,Integer>();
+		TreeMap<String,Integer> rb = new TreeMap<String,Integer>();
+		ADT_BY_AVL a = tree( ra, 100, 1000, false );
+		ADT_BY_AVL b = tree( rb, 100, 1000, false );
+
+		try
+		{
+			a.join( key( 0 ), 1, b );		// Keys on both sides of k
+			fail( "join out of order" );
+		}
+		catch ( IllegalArgumentException e )
+		{
+		}
+
+		ADT_BY_AVL sized = tree( new TreeMap<String,Integer>(), 100, 1000, true );
+
+		try
+		{
+			a.union( sized );
+			fail( "union with other extras" );
+		}
+		catch ( IllegalArgumentException e )
+		{
+		}
+
+		try
+		{
+			a.union( a );
+			fail( "union with itself" );
+		}
+		catch ( IllegalArgumentException e )
+		{
+		}
+
+		ADT_BY_AVL lru = new ADT_BY_AVL();
+		boolean refused = false;
+
+		lru.setCapacity( 10, 0 );
+
+		try
+		{
+			lru.intersect( new ADT_BY_AVL() );
+		}
+		catch ( IllegalStateException e )
+		{
+			refused = true;
+		}
+
+		if ( ! refused )
+			fail( "set op in LRU mode" );
+		check( a, ra, "after refused ops" );
+		check( b, rb, "after refused ops" );
+	}
+
+	/* ================================================================
+		tree(ref, n, range, ext): n random puts of keys in [0,
+		range), also done to ref
+	================================================================ */
+	static ADT_BY_AVL tree(TreeMap<String,Integer> ref, int n, int range, boolean ext)
+	{
+		ADT_BY_AVL t = new ADT_BY_AVL();
+
+		if ( ext )
+		{
+			t.setOrderStats( true );
+			t.setMonoid( AvlMonoid.SUM );
+		}
+
+		for ( int i = 0; i < n; i++ )
+		{
+			String k = key( r.nextInt( range ) );
+			int v = r.nextInt( 1000 );
+
+			t.put( k, v );
+			ref.put( k, v );
+		}
+
+		return t;
+	}
+
+	/* ================================================================
+		check(t, ref, what): t has exactly the pairs of ref, and
+		is a valid AVL tree
+	================================================================ */
+	static void check(ADT_BY_AVL t, TreeMap<String,Integer> ref, String what)
+	{
+		Node x = ADT_BY_AVL.first( t.root );
+
+		for ( Map.Entry<String,Integer> e : ref.entrySet() )
+		{
+			if ( x == null || ! x.key.equals( e.getKey() ) || ! x.value.equals( e.getValue() ) )
+				fail( what + ": expected " + e.getKey() + ", found " + ( x == null ? null : x.key ) );
+
+			x = ADT_BY_AVL.successor( x );
+		}
+
+		if ( x != null )
+			fail( what + ": extra key " + x.key );
+		if ( t.root != null && t.root.parent != null )
+			fail( what + ": root has a parent" );
+
+		checkAvl( t, t.root, what );
+	}
+
+	/* ---------------------------------------
+		checkAvl(t, x, what): heights, balance,
+		parent links, sizes and sums of
+		subtree x. Return: its height
+	--------------------------------------- */
+	static int checkAvl(ADT_BY_AVL t, Node x, String what)
+	{
+		if ( x == null )
+			return 0;
+
+		int hl = checkAvl( t, x.left, what );
+		int hr = checkAvl( t, x.right, what );
+
+		if ( x.height != Math.max( hl, hr ) + 1 || Math.abs( hl - hr ) > 1 )
+			fail( what + ": not AVL at " + x.key );
+		if ( ( x.left != null && x.left.parent != x ) || ( x.right != null && x.right.parent != x ) )
+			fail( what + ": bad parent link at " + x.key );
+
+		if ( t.hasOrderStats()
+		     && ((SizedNode) x).size != ADT_BY_AVL.subtreeSize( x.left ) + 1 + ADT_BY_AVL.subtreeSize( x.right ) )
+			fail( what + ": bad size at " + x.key );
+
+		if ( t.getMonoid() != null
+		     && ((AggNode) x).agg != t.aggOf( x ) )
+			fail( what + ": bad sum at " + x.key );
+
+		return x.height;
+	}
+
+	static void fail(String msg)
+	{
+		throw new IllegalStateException( msg );
+	}
+
+	static String key(int i)
+	{
+		String s = Integer.toString( i );
+
+		return "000000000".substring( Math.min( s.length(), 9 ) ) + s;
+	}
+}
@@ -0,0 +1,332 @@
+import java.util.*;
+import java.util.function.*;
+
+/* ================================================================
+   Test_ShardedAvlMap: ShardedAvlMap under concurrent use
+
+	writers	THREADS threads put/remove/get random keys while a
+		scanner checks that range scans stay in order. Each
+		thread owns the keys with key % THREADS == its number
+		and keeps its own TreeMap of them, so the map must
+		equal the union of the TreeMaps at the end.
+	rescan	1 thread splits and merges shards at random while
+		another calls size() and forEach(): the contents do
+		not change, so both must always see all KEYS pairs.
+
+   After each part the shards are checked: no gaps between the
+   ranges, every key in the range of its shard, AVL trees valid.
+
+   Run:   java Test_ShardedAvlMap
+	  (prints "ok", or throws at the first error)
+   ================================================================ */
+
+public class Test_ShardedAvlMap
+{
+	static final int THREADS = 4;
+	static final int OPS = 200000;		// Per writer thread
+	static final int KEYS = 20000;
+
+	static volatile Throwable error;	// First error of any thread
+	static volatile boolean done;
+
+	public static void main(String[] args) throws Exception
+	{
+		writers();
+		rescan();
+		System.out.println( "ok" );
+	}
+
+	/* ================================================================
+		writers(): put/remove/get from THREADS threads, checked
+		against 1 TreeMap per thread
+	================================================================ */
+	static void writers() throws Exception
+	{
+		final ShardedAvlMap m = new ShardedAvlMap();
+		final List<TreeMap<String,Integer>> refs = new ArrayList<TreeMap<String,Integer>>();
+
+		m.maxShardSize = 2000;			// Many splits
+
+		for ( int i = 0; i < THREADS; i++ )
+			refs.add( new TreeMap<String,Integer>() );
+
+		Thread[] th = new Thread[THREADS];
+
+		for ( int id = 0; id < THREADS; id++ )
+		{
+			final int me = id;
+
+			th[id] = new Thread()
+			{
+				public void run()
+				{
+					try
+					{
+						Random r = new Random( me );
+						TreeMap<String,Integer> ref = refs.get( me );
+
+						for ( int i = 0; i < OPS; i++ )
+						{
+							String k = key( r.nextInt( 50000 ) * THREADS + me );
+							int op = r.nextInt( 10 );
+
+							if ( op < 5 )
+							{
+								m.put( k, i );
+								ref.put( k, i );
+							}
+							else if ( op < 7 )
+							{
+								m.remove( k );
+								ref.remove( k );
+							}
+							else if ( ! Objects.equals( m.get( k ), ref.get( k ) ) )
+								fail( "get(" + k + ")" );
+						}
+					}
+					catch ( Throwable e )
+					{
+						error = e;
+					}
+				}
+			};
+		}
+
+		Thread scanner = new Thread()
+		{
+			public void run()
+			{
+				try
+				{
+					while ( ! done )
+						checkScan( m, key( 40000 ), key( 160000 ) );
+				}
+				catch ( Throwable e )
+				{
+					error = e;
+				}
+			}
+		};
+
+		done = false;
+		scanner.start();
+		join( th );
+		done = true;
+		scanner.join();
+		checkError();
+
+		TreeMap<String,Integer> all = new TreeMap<String,Integer>();
+
+		for ( TreeMap<String,Integer> ref : refs )
+			all.putAll( ref );
+
+		checkShards( m );
+		checkContents( m, all );
+
+		if ( m.splits == 0 )
+			fail( "no splits" );
+	}
+
+	/* ================================================================
+		rescan(): split and merge while size() and forEach() run
+	================================================================ */
+	static void rescan() throws Exception
+	{
+		final ShardedAvlMap m = new ShardedAvlMap();
+		final TreeMap<String,Integer> all = new TreeMap<String,Integer>();
+
+		for ( int i = 0; i < KEYS; i++ )
+		{
+			m.put( key( i ), i );
+			all.put( key( i ), i );
+		}
+
+		Thread changer = new Thread()
+		{
+			public void run()
+			{
+				try
+				{
+					Random r = new Random( 1 );
+
+					for ( int i = 0; i < 20000; i++ )
+					{
+						AvlShard s = m.lock( key( r.nextInt( KEYS ) ) );
+
+						try
+						{
+							if ( r.nextInt( 3 ) != 0 )	// More splits than merges
+								m.split( s );
+							else
+								m.mergeRight( s );
+						}
+						finally
+						{
+							s.lock.unlock();
+						}
+					}
+				}
+				catch ( Throwable e )
+				{
+					error = e;
+				}
+			}
+		};
+
+		Thread reader = new Thread()
+		{
+			public void run()
+			{
+				try
+				{
+					while ( ! done )
+					{
+						if ( m.size() != KEYS )
+							fail( "size() " + m.size() + " != " + KEYS );
+
+						checkScan( m, null, null );
+					}
+				}
+				catch ( Throwable e )
+				{
+					error = e;
+				}
+			}
+		};
+
+		done = false;
+		reader.start();
+		join( new Thread[] { changer } );
+		done = true;
+		reader.join();
+		checkError();
+
+		checkShards( m );
+		checkContents( m, all );
+
+		if ( m.splits == 0 || m.merges == 0 )
+			fail( "splits " + m.splits + ", merges " + m.merges );
+	}
+
+	/* ================================================================
+		checkScan(m, from, to): rangeScan gives keys in order and
+		in [from, to)
+	================================================================ */
+	static void checkScan(ShardedAvlMap m, final String from, final String to)
+	{
+		final String[] last = { null };
+
+		m.rangeScan( from, to, new BiConsumer<String,Integer>()
+		{
+			public void accept(String k, Integer v)
+			{
+				if ( last[0] != null && last[0].compareTo( k ) >= 0 )
+					fail( "scan: " + k + " after " + last[0] );
+				if ( ( from != null && k.compareTo( from ) < 0 ) || ( to != null && k.compareTo( to ) >= 0 ) )
+					fail( "scan: " + k + " not in range" );
+
+				last[0] = k;
+			}
+		} );
+	}
+
+	/* ================================================================
+		checkContents(m, ref): m has exactly the pairs of ref
+	================================================================ */
+	static void checkContents(ShardedAvlMap m, TreeMap<String,Integer> ref)
+	{
+		final List<String> keys = new ArrayList<String>();
+		final List<Integer> vals = new ArrayList<Integer>();
+
+		m.forEach( new BiConsumer<String,Integer>()
+		{
+			public void accept(String k, Integer v)
+			{
+				keys.add( k );
+				vals.add( v );
+			}
+		} );
+
+		if ( ! keys.equals( new ArrayList<String>( ref.keySet() ) ) )
+			fail( "keys differ" );
+		if ( ! vals.equals( new ArrayList<Integer>( ref.values() ) ) )
+			fail( "values differ" );
+		if ( m.size() != ref.size() )
+			fail( "size() " + m.size() + " != " + ref.size() );
+	}
+
+	/* ================================================================
+		checkShards(m): the table covers all keys without gaps,
+		every key is in its shard, every tree is a valid AVL tree
+		(no other thread may use m)
+	================================================================ */
+	static void checkShards(ShardedAvlMap m)
+	{
+		AvlShard[] a = m.table.shards;
+
+		if ( ! a[0].lo.equals( "" ) || a[a.length - 1].hi != null )
+			fail( "table does not cover all keys" );
+
+		for ( int i = 0; i < a.length; i++ )
+		{
+			if ( a[i].retired )
+				fail( "retired shard in the table" );
+			if ( i > 0 && ! a[i].lo.equals( a[i - 1].hi ) )
+				fail( "gap before shard " + i );
+
+			for ( Node x = ADT_BY_AVL.first( a[i].tree.root ); x != null; x = ADT_BY_AVL.successor( x ) )
+				if ( ! a[i].covers( x.key ) )
+					fail( "key " + x.key + " in shard " + i );
+
+			checkAvl( a[i].tree.root );
+		}
+	}
+
+	/* ---------------------------------------
+		checkAvl(t): heights, balance, sizes
+		and parent links of subtree t
+	--------------------------------------- */
+	static int checkAvl(Node t)
+	{
+		if ( t == null )
+			return 0;
+
+		int hl = checkAvl( t.left );
+		int hr = checkAvl( t.right );
+
+		if ( t.height != Math.max( hl, hr ) + 1 || Math.abs( hl - hr ) > 1 )
+			fail( "not AVL at " + t.key );
+		if ( ((SizedNode) t).size != ADT_BY_AVL.subtreeSize( t.left ) + 1 + ADT_BY_AVL.subtreeSize( t.right ) )
+			fail( "bad size at " + t.key );
+		if ( ( t.left != null && t.left.parent != t ) || ( t.right != null && t.right.parent != t ) )
+			fail( "bad parent link at " + t.key );
+
+		return t.height;
+	}
+
+	static void join(Thread[] th) throws InterruptedException
+	{
+		for ( Thread t : th )
+			t.start();
+		for ( Thread t : th )
+			t.join();
+	}
+
+	static void checkError()
+	{
+		if ( error != null )
+			throw new RuntimeException( error );
+	}
+
+	static void fail(String msg)
+	{
+		throw new IllegalStateException( msg );
+	}
+
+	static String key(int i)
+	{
+		String s = Integer.toString( i );
+
+		return "0000000".substring( Math.min( s.length(), 7 ) ) + s;
+	}
+}